@@ -1,134 +1,677 @@
-import java.io.FileWriter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
 import java.io.IOException;
 import java.io.File;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Map;
-import java.util.Scanner;
 import java.util.HashMap;
 import java.util.Set;
-import java.util.HashSet;
 import java.util.Objects;
-import java.io.FileNotFoundException;
 import java.util.Collections;
 import java.util.*;
+import java.io.InterruptedIOException;
+import java.io.Closeable;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
 /**
  * The main class for the insect simulation program.
  * It reads input data, initializes the game board, processes insect and food data,
  * and writes the results to an output file.
  */
 public class Main {
-    private static Board gameBoard;
+    private Board gameBoard;
     private static final int MIN_BOARD_SIZE = 4;
-    private static final int MAX_BOARD_SIZE_1 = 1000;
-    private static final int MAX_BOARD_SIZE_2 = 16;
-    private static final int MAX_BOARD_SIZE_3 = 200;
+    // Scenario limits, raised with -Dinsects.maxBoardSize, -Dinsects.maxInsects and -Dinsects.maxFoodPoints
+    private static final int MAX_BOARD_SIZE_1 = Integer.getInteger("insects.maxBoardSize", 1000);
+    private static final int MAX_BOARD_SIZE_2 = Integer.getInteger("insects.maxInsects", 16);
+    private static final int MAX_BOARD_SIZE_3 = Integer.getInteger("insects.maxFoodPoints", 200);
     private static final int BOARD_SIZE = 3;
+    private static final String SCENARIO_DELIMITER = "---";
     /**
      * Insect data from the text document  is entered into the corresponding collection in the main class
-     * @param args
+     * @param args Empty to simulate input.txt into output.txt, the batch options of {@link #runBatch(String[])},
+     *             the options of {@link #convert(String[])}, the options of {@link #serve(String[])}, or the
+     *             options of {@link #generate(String[])}
      */
     public static void main(String[] args) {
-        String output = "output.txt";
-        try (FileWriter writer = new FileWriter(output)) {
+        if (MAX_BOARD_SIZE_1 > Board.MAX_SIZE) {
+            System.out.println("insects.maxBoardSize must be at most " + Board.MAX_SIZE);
+            return;
+        }
+        if (Checkpoint.isEnabled()) {
             try {
-                List<String> inputData = readFileData();
+                Files.createDirectories(Checkpoint.getDirectory());
+            } catch (IOException e) {
+                System.out.println("Cannot create checkpoint directory " + Checkpoint.getDirectory() + ": " + e);
+                return;
+            }
+        }
+        if (args.length > 0 && "--convert".equals(args[0])) {
+            convert(args);
+            return;
+        }
+        if (args.length > 0 && "--serve".equals(args[0])) {
+            serve(args);
+            return;
+        }
+        if (args.length > 0 && "--generate".equals(args[0])) {
+            generate(args);
+            return;
+        }
+        if (args.length > 0) {
+            runBatch(args);
+            return;
+        }
+        Path output = Paths.get("output.txt");
+        try (ResultWriter writer = ResultWriter.open(output)) {
+            runScenario(ScenarioSource.of(Paths.get("input.txt")), writer);
+        }  catch (IOException e) {
+            System.out.println("Failed to read data file");
+        }
+    }
+    /**
+     * Reads, simulates and writes the result of a single scenario. Every scenario gets its own
+     * {@code Main} instance and board, so scenarios can run concurrently without sharing state.
+     *
+     * @param source The source of the scenario lines.
+     * @param writer The writer receiving the result.
+     * @throws IOException if the scenario cannot be read or the result cannot be written.
+     */
+    static void runScenario(ScenarioSource source, ResultWriter writer) throws IOException {
+        new Main().run(source, writer);
+    }
+    /**
+     * Reads, simulates and writes the result of the scenario of this instance.
+     * Validation errors are written in place of the result.
+     *
+     * @param source The source of the scenario lines.
+     * @param writer The writer receiving the result.
+     * @throws IOException if the scenario cannot be read or the result cannot be written.
+     */
+    private void run(ScenarioSource source, ResultWriter writer) throws IOException {
+        try (ScenarioReader reader = open(source)) {
+            List<Insect> insects = load(reader);
+            if (writer.isBinary() && !BinaryFormat.canEncode(insects)) {
+                writer.writeError("Configured species have no binary form");
+                return;
+            }
+            int boardSize = gameBoard.getSize();
+            int scenario = MoveEvents.isEnabled() ? MoveEvents.nextScenario() : 0;
+            Move[] moves = null;
+            if (RoundEngine.isEnabled()) {
+                moves = new RoundEngine(gameBoard, insects, RoundEngine.configuredRounds(), scenario).run();
+            } else if (MoveScheduler.isEnabled()) {
+                moves = new MoveScheduler(gameBoard, insects, scenario).resolve();
+            }
+            writer.beginResults(insects.size());
+            for (int i = 0; i < insects.size(); i++) {
+                Insect insect = insects.get(i);
+                if (moves != null) {
+                    writer.writeResult(insect, moves[i].getDirection(), moves[i].getFoodCollected());
+                } else {
+                    InsectMoveEvent event = FlightEvents.beginMove();
+                    int x = insect.getEntityPosition().getX();
+                    int y = insect.getEntityPosition().getY();
+                    long start = Metrics.start();
+                    Direction bestDirection = insect.getBestDirection(gameBoard.getBoardData(), boardSize);
+                    Metrics.stop(Metrics.Phase.SCORING, start);
+                    int cells = 0;
+                    boolean blocked = false;
+                    if (MoveEvents.isEnabled()) {
+                        cells = gameBoard.pathLength(x, y, bestDirection, insect.step, insect.getBlockers());
+                        blocked = gameBoard.isBlocked(x, y, bestDirection, insect.step, cells);
+                    }
+                    start = Metrics.start();
+                    int foodCollected = insect.travelDirection(bestDirection, gameBoard.getBoardData(), boardSize);
+                    Metrics.stop(Metrics.Phase.TRAVEL, start);
+                    FlightEvents.endMove(event, insect, x, y, bestDirection, foodCollected);
+                    MoveEvents.emit(scenario, 1, insect, x, y, bestDirection, cells, foodCollected, blocked);
+                    writer.writeResult(insect, bestDirection, foodCollected);
+                }
+            }
+
+        } catch (InvalidBoardSizeException e) {
+            writer.writeError(e.getMessage());
+        } catch (InvalidNumberOfInsectsException e) {
+            writer.writeError(e.getMessage());
+        } catch (InvalidInsectColorException e) {
+            writer.writeError(e.getMessage());
+        } catch (InvalidInsectTypeException e) {
+            writer.writeError(e.getMessage());
+        } catch (DuplicateInsectException e) {
+            writer.writeError(e.getMessage());
+        } catch (TwoEntitiesOnSamePositionException e) {
+            writer.writeError(e.getMessage());
+        } catch (InvalidNumberOfFoodPointsException e) {
+            writer.writeError(e.getMessage());
+        } catch (InvalidEntityPositionException e) {
+            writer.writeError(e.getMessage());
+        } finally {
+            writer.endScenario();
+        }
+    }
+    /**
+     * Opens the input of a scenario, timing it as the read phase.
+     *
+     * @param source The source of the scenario lines.
+     * @return The reader over the scenario.
+     * @throws IOException if the scenario cannot be opened.
+     */
+    private static ScenarioReader open(ScenarioSource source) throws IOException {
+        long start = Metrics.start();
+        ScenarioReader reader = source.open();
+        Metrics.stop(Metrics.Phase.READ, start);
+        return reader;
+    }
+    /**
+     * Gets the board of the scenario loaded by this instance.
+     *
+     * @return The game board, or null if nothing was loaded yet.
+     */
+    Board getGameBoard() {
+        return gameBoard;
+    }
+    /**
+     * Validates the input of a scenario and places its insects and food on a new board while it is read.
+     * Errors are reported with the same precedence as when the whole input is read first:
+     * a missing insect line or a wrong number of food lines wins over an error on an earlier line.
+     *
+     * @param reader The reader positioned at the start of the scenario.
+     * @return The insects of the scenario in input order.
+     * @throws IOException                        if the input cannot be read.
+     * @throws InvalidBoardSizeException          if the board size is invalid.
+     * @throws InvalidNumberOfInsectsException    if the number of insects is invalid.
+     * @throws InvalidNumberOfFoodPointsException if the number of food points is invalid.
+     * @throws InvalidInsectColorException        if an insect color is invalid.
+     * @throws InvalidInsectTypeException         if an insect type is invalid.
+     * @throws DuplicateInsectException           if duplicate insects are found.
+     * @throws InvalidEntityPositionException     if an entity position is invalid.
+     * @throws TwoEntitiesOnSamePositionException if two entities are on the same position.
+     */
+    List<Insect> load(ScenarioReader reader) throws IOException, InvalidBoardSizeException,
+            InvalidNumberOfInsectsException, InvalidNumberOfFoodPointsException, InvalidInsectColorException,
+            InvalidInsectTypeException, DuplicateInsectException, InvalidEntityPositionException,
+            TwoEntitiesOnSamePositionException {
+        ByteBuffer binary = reader.binaryInput();
+        if (binary != null) {
+            return loadBinary(binary);
+        }
+        int boardSize = reader.nextHeaderValue();
+        if (boardSize < MIN_BOARD_SIZE || boardSize > MAX_BOARD_SIZE_1) {
+            throw new InvalidBoardSizeException();
+        }
+        int numberOfInsects = reader.nextHeaderValue();
+        if (numberOfInsects < 1 || numberOfInsects > MAX_BOARD_SIZE_2) {
+            throw new InvalidNumberOfInsectsException();
+        }
+        int numberOfFoodPoints = reader.nextHeaderValue();
+        if (numberOfFoodPoints < 1 || numberOfFoodPoints > MAX_BOARD_SIZE_3) {
+            throw new InvalidNumberOfFoodPointsException();
+        }
+        // Initialize the game board
+        gameBoard = new Board(boardSize);
+
+        // Process insect data starting from the fourth line
+        long start = Metrics.start();
+        List<Insect> insects = createInsectCollectionAndAddToBoard(reader, numberOfInsects);
+        Metrics.stop(Metrics.Phase.INSECTS, start);
 
-                int boardSize = Integer.parseInt(inputData.get(0));
-                if (boardSize < MIN_BOARD_SIZE || boardSize > MAX_BOARD_SIZE_1) {
-                    throw new InvalidBoardSizeException();
+        // Process food data starting from the line after insect data
+        start = Metrics.start();
+        addFoodToBoard(reader, numberOfFoodPoints);
+        Metrics.stop(Metrics.Phase.FOOD, start);
+        return insects;
+    }
+    /**
+     * Loads a scenario in the {@link BinaryFormat} straight from its buffer. The records are checked
+     * like text lines are, and record counts that do not match the input size are reported like missing lines.
+     *
+     * @param input The binary scenario, positioned at its magic number.
+     * @return The insects in input order.
+     * @throws IOException                        if the header is cut short or has an unknown version.
+     * @throws InvalidBoardSizeException          if the board size is invalid.
+     * @throws InvalidNumberOfInsectsException    if the number of insects is invalid or the records are cut short.
+     * @throws InvalidNumberOfFoodPointsException if the number of food points does not match the records.
+     * @throws InvalidInsectTypeException         if an insect cannot be created.
+     * @throws DuplicateInsectException           if an insect of the same type and color exists.
+     * @throws InvalidEntityPositionException     if a position is outside the board.
+     * @throws TwoEntitiesOnSamePositionException if two entities are on the same position.
+     */
+    private List<Insect> loadBinary(ByteBuffer input) throws IOException, InvalidBoardSizeException,
+            InvalidNumberOfInsectsException, InvalidNumberOfFoodPointsException, InvalidInsectTypeException,
+            DuplicateInsectException, InvalidEntityPositionException, TwoEntitiesOnSamePositionException {
+        BinaryFormat.readVersion(input, BinaryFormat.SCENARIO_HEADER);
+        int boardSize = input.getInt();
+        if (boardSize < MIN_BOARD_SIZE || boardSize > MAX_BOARD_SIZE_1) {
+            throw new InvalidBoardSizeException();
+        }
+        int numberOfInsects = input.getInt();
+        if (numberOfInsects < 1 || numberOfInsects > MAX_BOARD_SIZE_2) {
+            throw new InvalidNumberOfInsectsException();
+        }
+        int numberOfFoodPoints = input.getInt();
+        if (numberOfFoodPoints < 1 || numberOfFoodPoints > MAX_BOARD_SIZE_3) {
+            throw new InvalidNumberOfFoodPointsException();
+        }
+        if (input.remaining() < (long) numberOfInsects * BinaryFormat.INSECT_RECORD) {
+            throw new InvalidNumberOfInsectsException();
+        }
+        if (input.remaining() != (long) numberOfInsects * BinaryFormat.INSECT_RECORD
+                + (long) numberOfFoodPoints * BinaryFormat.FOOD_RECORD) {
+            throw new InvalidNumberOfFoodPointsException();
+        }
+        gameBoard = new Board(boardSize);
+        long start = Metrics.start();
+        List<Insect> insects = new ArrayList<>(numberOfInsects);
+        for (int i = 0; i < numberOfInsects; i++) {
+            int packed = input.getInt();
+            int x = BinaryFormat.xOf(packed);
+            int y = BinaryFormat.yOf(packed);
+            if (!gameBoard.contains(x, y)) {
+                throw new InvalidEntityPositionException();
+            }
+            Insect insect = BinaryFormat.createInsect(BinaryFormat.typeOf(packed), new EntityPosition(x, y),
+                    BinaryFormat.colorOf(packed));
+            for (Insect ins : insects) {
+                if (ins.getSpecies() == insect.getSpecies() && insect.getColor() == ins.getColor()) {
+                    throw new DuplicateInsectException();
                 }
-                int numberOfInsects = Integer.parseInt(inputData.get(1));
-                if (numberOfInsects < 1 || numberOfInsects > MAX_BOARD_SIZE_2) {
-                    throw new InvalidNumberOfInsectsException();
+            }
+            insects.add(insect);
+            gameBoard.addEntity(insect);
+        }
+        Metrics.stop(Metrics.Phase.INSECTS, start);
+        start = Metrics.start();
+        for (int i = 0; i < numberOfFoodPoints; i++) {
+            int amount = input.getInt();
+            int x = Short.toUnsignedInt(input.getShort());
+            int y = Short.toUnsignedInt(input.getShort());
+            if (!gameBoard.contains(x, y)) {
+                throw new InvalidEntityPositionException();
+            }
+            gameBoard.addFood(x, y, amount);
+        }
+        Metrics.stop(Metrics.Phase.FOOD, start);
+        return insects;
+    }
+    /**
+     * Converts between the text and binary formats. A binary scenario or binary results are written as text;
+     * a text scenario is validated like a simulation run and written as a binary scenario.
+     *
+     * @param args The command line: {@code --convert <input> <output>}.
+     */
+    private static void convert(String[] args) {
+        if (args.length != 3) {
+            System.out.println("Usage: java Main --convert <input> <output>");
+            return;
+        }
+        Path output = Paths.get(args[2]);
+        try {
+            ByteBuffer input = ScenarioReader.readAll(Paths.get(args[1]));
+            if (BinaryFormat.isScenario(input)) {
+                try (ResultWriter writer = ResultWriter.open(output)) {
+                    BinaryFormat.writeScenarioText(input, writer);
                 }
-                int numberOfFoodPoints = Integer.parseInt(inputData.get(2));
-                if (numberOfFoodPoints < 1 || numberOfFoodPoints > MAX_BOARD_SIZE_3) {
-                    throw new InvalidNumberOfFoodPointsException();
+            } else if (BinaryFormat.isResult(input)) {
+                try (ResultWriter writer = ResultWriter.open(output)) {
+                    BinaryFormat.writeResultText(input, writer);
+                    while (input.hasRemaining()) {
+                        writer.write(SCENARIO_DELIMITER);
+                        writer.writeLineSeparator();
+                        BinaryFormat.writeResultText(input, writer);
+                    }
                 }
-                // Initialize the game board
-                gameBoard = new Board(boardSize);
-
-                int endIndexOfLineWithInsect = BOARD_SIZE + numberOfInsects;
-                if (endIndexOfLineWithInsect > inputData.size()) {
-                    throw new InvalidNumberOfInsectsException();
+            } else {
+                Main main = new Main();
+                List<Insect> insects = main.load(new ScenarioReader(input));
+                ByteBuffer scenario = BinaryFormat.encodeScenario(main.getGameBoard(), insects);
+                try (FileChannel file = FileChannel.open(output, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                    while (scenario.hasRemaining()) {
+                        file.write(scenario);
+                    }
                 }
-                // Process insect data starting from the fourth line
-                List<String> insectData = inputData.subList(BOARD_SIZE, BOARD_SIZE + numberOfInsects);
-                List<Insect> insects = createInsectCollectionAndAddToBoard(insectData, numberOfInsects);
-
-                int startIndexOfLineWithFood = BOARD_SIZE + numberOfInsects;
-                int endIndexOfLineWithFood = startIndexOfLineWithFood + numberOfFoodPoints;
-                if ((endIndexOfLineWithFood) != inputData.size()) {
-                    throw new InvalidNumberOfFoodPointsException();
+            }
+        } catch (InvalidBoardSizeException | InvalidNumberOfInsectsException | InvalidInsectColorException
+                 | InvalidInsectTypeException | DuplicateInsectException | TwoEntitiesOnSamePositionException
+                 | InvalidNumberOfFoodPointsException | InvalidEntityPositionException
+                 | IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+        } catch (IOException e) {
+            System.out.println("Failed to read data file");
+        }
+    }
+    /**
+     * Writes a seeded synthetic scenario with {@link ScenarioGenerator}. Scenarios beyond the default limits
+     * load once they are raised with {@code -Dinsects.maxBoardSize} and {@code -Dinsects.maxFoodPoints}.
+     *
+     * @param args The command line: {@code --generate <output> [--seed <n>] [--size <n>] [--insects <n>]
+     *             [--food <n>] [--max-amount <n>] [--amounts uniform|skewed] [--clusters <n>] [--spread <cells>]}.
+     */
+    private static void generate(String[] args) {
+        String output = null;
+        long seed = 1;
+        int size = 1000;
+        int insects = ScenarioGenerator.MAX_INSECTS;
+        int foodPoints = MAX_BOARD_SIZE_3;
+        int maxAmount = 100;
+        boolean skewed = false;
+        int clusters = 0;
+        double spread = -1;
+        for (int i = 0; i < args.length; i++) {
+            if ("--generate".equals(args[i]) && i + 1 < args.length) {
+                output = args[++i];
+            } else if ("--seed".equals(args[i]) && i + 1 < args.length) {
+                seed = Long.parseLong(args[++i]);
+            } else if ("--size".equals(args[i]) && i + 1 < args.length) {
+                size = Integer.parseInt(args[++i]);
+            } else if ("--insects".equals(args[i]) && i + 1 < args.length) {
+                insects = Integer.parseInt(args[++i]);
+            } else if ("--food".equals(args[i]) && i + 1 < args.length) {
+                foodPoints = Integer.parseInt(args[++i]);
+            } else if ("--max-amount".equals(args[i]) && i + 1 < args.length) {
+                maxAmount = Integer.parseInt(args[++i]);
+            } else if ("--amounts".equals(args[i]) && i + 1 < args.length
+                    && ("uniform".equals(args[i + 1]) || "skewed".equals(args[i + 1]))) {
+                skewed = "skewed".equals(args[++i]);
+            } else if ("--clusters".equals(args[i]) && i + 1 < args.length) {
+                clusters = Integer.parseInt(args[++i]);
+            } else if ("--spread".equals(args[i]) && i + 1 < args.length) {
+                spread = Double.parseDouble(args[++i]);
+            } else {
+                System.out.println("Unknown argument: " + args[i]);
+                return;
+            }
+        }
+        if (output == null) {
+            System.out.println("Usage: java Main --generate <output> [--seed <n>] [--size <n>] [--insects <n>]"
+                    + " [--food <n>] [--max-amount <n>] [--amounts uniform|skewed] [--clusters <n>]"
+                    + " [--spread <cells>]");
+            return;
+        }
+        ScenarioGenerator generator;
+        try {
+            generator = new ScenarioGenerator(seed, size, insects, foodPoints, maxAmount, skewed, clusters,
+                    spread > 0 ? spread : Math.max(1, size / 20.0));
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            return;
+        }
+        try (ResultWriter writer = ResultWriter.open(Paths.get(output))) {
+            generator.write(writer);
+        } catch (IOException e) {
+            System.out.println("Failed to write data file");
+        }
+    }
+    /**
+     * Keeps the simulation running as a local HTTP service, so JVM startup and JIT warm-up are paid once
+     * for every request that follows. Runs until the process is stopped.
+     *
+     * @param args The command line: {@code --serve <port> [--parallelism <n>] [--result-format text|binary]}.
+     */
+    private static void serve(String[] args) {
+        int port = -1;
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        boolean binaryResults = false;
+        for (int i = 0; i < args.length; i++) {
+            if ("--serve".equals(args[i]) && i + 1 < args.length) {
+                port = Integer.parseInt(args[++i]);
+            } else if ("--parallelism".equals(args[i]) && i + 1 < args.length) {
+                parallelism = Integer.parseInt(args[++i]);
+            } else if ("--result-format".equals(args[i]) && i + 1 < args.length
+                    && ("text".equals(args[i + 1]) || "binary".equals(args[i + 1]))) {
+                binaryResults = "binary".equals(args[++i]);
+            } else {
+                System.out.println("Unknown argument: " + args[i]);
+                return;
+            }
+        }
+        if (port < 0 || port > 65535 || parallelism < 1) {
+            System.out.println("Usage: java Main --serve <port> [--parallelism <n>] [--result-format text|binary]");
+            return;
+        }
+        try {
+            SimulationServer server = SimulationServer.start(port, parallelism, binaryResults);
+            Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+            System.out.println("Listening on http://" + server.getAddress().getHostString() + ":"
+                    + server.getAddress().getPort() + SimulationServer.PATH);
+        } catch (IOException e) {
+            System.out.println("Failed to start server: " + e.getMessage());
+        }
+    }
+    /**
+     * Runs many scenarios in one invocation, so JVM startup and JIT warm-up are paid once.
+     * The input is a directory, a glob of input files, or a single file holding several scenarios
+     * separated by {@value #SCENARIO_DELIMITER} lines. Files get one result file each in the output directory;
+     * a multi-scenario file gets its results in one output file, separated the same way. A scenario that
+     * cannot be read or parsed gets a read error in place of its result, and the others still run.
+     *
+     * @param args The command line: {@code --batch <directory|glob|file> [--output <path>] [--parallelism <n>]
+     *             [--result-format text|binary]}.
+     */
+    private static void runBatch(String[] args) {
+        String input = null;
+        String output = null;
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        boolean binaryResults = false;
+        for (int i = 0; i < args.length; i++) {
+            if ("--batch".equals(args[i]) && i + 1 < args.length) {
+                input = args[++i];
+            } else if ("--output".equals(args[i]) && i + 1 < args.length) {
+                output = args[++i];
+            } else if ("--parallelism".equals(args[i]) && i + 1 < args.length) {
+                parallelism = Integer.parseInt(args[++i]);
+            } else if ("--result-format".equals(args[i]) && i + 1 < args.length
+                    && ("text".equals(args[i + 1]) || "binary".equals(args[i + 1]))) {
+                binaryResults = "binary".equals(args[++i]);
+            } else {
+                System.out.println("Unknown argument: " + args[i]);
+                return;
+            }
+        }
+        if (input == null || parallelism < 1) {
+            System.out.println("Usage: java Main [--batch <directory|glob|file> [--output <path>] [--parallelism <n>]"
+                    + " [--result-format text|binary]]");
+            return;
+        }
+        long start = System.nanoTime();
+        int scenarios;
+        try (ScenarioExecutor executor = new ScenarioExecutor(parallelism, binaryResults)) {
+            Path inputPath = isGlob(input) ? null : Paths.get(input);
+            if (inputPath != null && Files.isRegularFile(inputPath)) {
+                scenarios = runScenarioFile(inputPath, Paths.get(output == null ? "output.txt" : output), executor);
+            } else {
+                List<Path> inputFiles = listInputFiles(input);
+                Path outputDirectory = Paths.get(output == null ? "output" : output);
+                Files.createDirectories(outputDirectory);
+                List<Future<?>> results = new ArrayList<>();
+                List<Path> outputFiles = new ArrayList<>();
+                for (Path inputFile : inputFiles) {
+                    Path outputFile = outputDirectory.resolve(inputFile.getFileName() + ".out");
+                    results.add(executor.submit(() -> ScenarioReader.open(inputFile), outputFile));
+                    outputFiles.add(outputFile);
                 }
-
-                // Process food data starting from the line after insect data
-                List<String> foodData = inputData.subList(startIndexOfLineWithFood, endIndexOfLineWithFood);
-                addFoodToBoard(foodData);
-
-
-                for (int i = 0; i < insects.size(); i++) {
-                    Insect insect = insects.get(i);
-                    writer.write(InsectColor.toString(insect.color) + " ");
-                    writer.write(insect.getClass().getName() + " ");
-                    Direction bestDirection = insect.getBestDirection(gameBoard.getBoardData(), boardSize);
-                    writer.write(bestDirection.getTextRepresentation() + " ");
-                    writer.write(String.valueOf(insect.travelDirection(bestDirection,
-                            gameBoard.getBoardData(), boardSize)));
-                    if (i != insects.size() - 1) {
-                        writer.write(System.lineSeparator());
+                for (int i = 0; i < results.size(); i++) {
+                    try {
+                        ScenarioExecutor.await(results.get(i));
+                    } catch (IOException | RuntimeException e) {
+                        try (ResultWriter writer = ResultWriter.open(outputFiles.get(i),
+                                executor.isBinaryResults())) {
+                            writer.writeError("Failed to read data file");
+                            writer.endScenario();
+                        }
                     }
                 }
-
-            } catch (InvalidBoardSizeException e) {
-                writer.write(e.getMessage());
-            } catch (InvalidNumberOfInsectsException e) {
-                writer.write(e.getMessage());
-            } catch (InvalidInsectColorException e) {
-                writer.write(e.getMessage());
-            } catch (InvalidInsectTypeException e) {
-                writer.write(e.getMessage());
-            } catch (DuplicateInsectException e) {
-                writer.write(e.getMessage());
-            } catch (TwoEntitiesOnSamePositionException e) {
-                writer.write(e.getMessage());
-            } catch (InvalidNumberOfFoodPointsException e) {
-                writer.write(e.getMessage());
-            } catch (InvalidEntityPositionException e) {
-                writer.write(e.getMessage());
-            } finally {
-                writer.write(System.lineSeparator());
+                scenarios = inputFiles.size();
             }
-        }  catch (IOException e) {
+        } catch (IOException e) {
             System.out.println("Failed to read data file");
+            return;
         }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf(Locale.ROOT, "Processed %d scenarios in %.3f s (%.1f scenarios/s)%n",
+                scenarios, seconds, scenarios / Math.max(seconds, 1e-9));
     }
     /**
-     * Reads data from the input file and returns it as a list of strings.
+     * Runs every scenario of a multi-scenario file, writing the results to one file in input order.
+     * Text results are separated by delimiter lines; binary results need no separator.
      *
-     * @return A list of strings representing the data read from the input file.
-     * @throws FileNotFoundException if the input file is not found.
+     * @param inputFile  The file holding text scenarios separated by delimiter lines, or one binary scenario.
+     * @param outputFile The file receiving the results.
+     * @param executor   The executor running the scenarios.
+     * @return The number of scenarios run.
+     * @throws IOException if the input cannot be read or the output cannot be written.
      */
-    private static List<String> readFileData() throws FileNotFoundException {
-        List<String> data = new ArrayList<>();
-        File file = new File("input.txt");
-        Scanner scanner = new Scanner(file);
-
-        while (scanner.hasNextLine()) {
-            String line = scanner.nextLine();
-            data.add(line);
+    private static int runScenarioFile(Path inputFile, Path outputFile, ScenarioExecutor executor)
+            throws IOException {
+        List<Future<byte[]>> results = submitScenarios(ScenarioReader.readAll(inputFile), executor);
+        try (ResultWriter writer = ResultWriter.open(outputFile, executor.isBinaryResults())) {
+            writeResults(results, writer);
         }
-
-        scanner.close();
-        return data;
+        return results.size();
+    }
+    /**
+     * Schedules every scenario of an input holding text scenarios separated by delimiter lines, or one binary
+     * scenario.
+     *
+     * @param input    The whole input.
+     * @param executor The executor running the scenarios.
+     * @return The future results of the scenarios, in input order.
+     * @throws IOException if the input cannot be split into scenarios.
+     */
+    static List<Future<byte[]>> submitScenarios(ByteBuffer input, ScenarioExecutor executor) throws IOException {
+        List<Future<byte[]>> results = new ArrayList<>();
+        if (BinaryFormat.isScenario(input)) {
+            results.add(executor.submit(() -> new ScenarioReader(input.duplicate())));
+        } else {
+            int blockStart = 0;
+            try (ScenarioReader lines = new ScenarioReader(input.duplicate())) {
+                while (lines.nextLine()) {
+                    if (lines.lineEquals(SCENARIO_DELIMITER)) {
+                        ByteBuffer scenario = input.slice(blockStart, lines.lineStart() - blockStart);
+                        results.add(executor.submit(() -> new ScenarioReader(scenario.duplicate())));
+                        blockStart = lines.position();
+                    }
+                }
+            }
+            ByteBuffer lastScenario = input.slice(blockStart, input.limit() - blockStart);
+            results.add(executor.submit(() -> new ScenarioReader(lastScenario.duplicate())));
+        }
+        return results;
+    }
+    /**
+     * Waits for scheduled scenarios and writes their results in order. Text results are separated by
+     * delimiter lines; binary results need no separator. A scenario that could not be read or parsed gets
+     * a read error in place of its result, so the other scenarios still get theirs.
+     *
+     * @param results The future results of the scenarios.
+     * @param writer  The writer receiving the results.
+     * @return The number of scenarios that failed.
+     * @throws IOException if the results cannot be written.
+     */
+    static int writeResults(List<Future<byte[]>> results, ResultWriter writer) throws IOException {
+        int failures = 0;
+        for (int i = 0; i < results.size(); i++) {
+            if (i > 0 && !writer.isBinary()) {
+                writer.write(SCENARIO_DELIMITER);
+                writer.writeLineSeparator();
+            }
+            byte[] result;
+            try {
+                result = ScenarioExecutor.await(results.get(i));
+            } catch (IOException | RuntimeException e) {
+                failures++;
+                writer.writeError("Failed to read data file");
+                writer.endScenario();
+                continue;
+            }
+            writer.write(result);
+        }
+        return failures;
+    }
+    /**
+     * Lists the input files of a directory or glob, in name order.
+     *
+     * @param input A directory, or a glob whose last path element holds the pattern.
+     * @return The matching regular files.
+     * @throws IOException if the directory cannot be listed.
+     */
+    private static List<Path> listInputFiles(String input) throws IOException {
+        Path directory;
+        PathMatcher matcher;
+        if (isGlob(input)) {
+            int separator = Math.max(input.lastIndexOf('/'), input.lastIndexOf(File.separatorChar));
+            directory = Paths.get(separator < 0 ? "." : input.substring(0, separator + 1));
+            matcher = FileSystems.getDefault().getPathMatcher("glob:" + input.substring(separator + 1));
+        } else {
+            directory = Paths.get(input);
+            matcher = path -> true;
+        }
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path path : stream) {
+                if (Files.isRegularFile(path) && matcher.matches(path.getFileName())) {
+                    files.add(path);
+                }
+            }
+        }
+        Collections.sort(files);
+        return files;
+    }
+    /**
+     * Checks if a batch input is a glob pattern rather than a plain path.
+     *
+     * @param input The batch input.
+     * @return True if the input contains glob metacharacters.
+     */
+    private static boolean isGlob(String input) {
+        return input.indexOf('*') >= 0 || input.indexOf('?') >= 0 || input.indexOf('[') >= 0
+                || input.indexOf('{') >= 0;
     }
     /**
      * Processes insect data and adds insects to the game board.
+     * Once an insect line is invalid, the remaining insect lines are only counted.
      *
-     * @param insectData      List of strings containing information about insects.
+     * @param reader          The reader positioned at the first insect line.
      * @param numberOfInsects The number of insects to process.
      * @return A list of Insect objects created from the input data.
+     * @throws IOException                      if the input cannot be read.
      * @throws InvalidNumberOfInsectsException  if the number of insects is invalid.
      * @throws InvalidInsectColorException      if the insect color is invalid.
      * @throws InvalidInsectTypeException       if the insect type is invalid.
@@ -136,482 +679,6474 @@ public class Main {
      * @throws InvalidEntityPositionException   if the insect's position is invalid.
      * @throws TwoEntitiesOnSamePositionException if two entities are on the same position.
      */
-    private static List<Insect> createInsectCollectionAndAddToBoard(List<String> insectData, int numberOfInsects)
+    private List<Insect> createInsectCollectionAndAddToBoard(ScenarioReader reader, int numberOfInsects)
             throws
+            IOException,
             InvalidNumberOfInsectsException,
             InvalidInsectColorException,
             InvalidInsectTypeException,
             DuplicateInsectException, InvalidEntityPositionException, TwoEntitiesOnSamePositionException {
         List<Insect> insects = new ArrayList<>();
+        Exception failure = null;
 
-        for (int i = 0; i < insectData.size(); i++) {
-            String[] insectI = insectData.get(i).split(" ");
-            if (insectI.length != MIN_BOARD_SIZE) {
+        for (int i = 0; i < numberOfInsects; i++) {
+            if (!reader.nextLine()) {
                 throw new InvalidNumberOfInsectsException();
             }
-            String color = insectI[0];
-            InsectColor insectColor = InsectColor.toColor(color);
-            String insectType = insectI[1];
-            int y = Integer.parseInt(insectI[2]);
-            int x = Integer.parseInt(insectI[BOARD_SIZE]);
-
-            if ((x < 1) || (y < 1) || (x > gameBoard.getSize()) || (y > gameBoard.getSize())) {
-                throw new InvalidEntityPositionException();
-            }
-
-            EntityPosition position = new EntityPosition(x, y);
-
-            Insect insect;
-            switch (insectType) {
-                case "Ant":
-                    insect = new Ant(position, insectColor);
-                    break;
-                case "Butterfly":
-                    insect = new Butterfly(position, insectColor);
-                    break;
-                case "Spider":
-                    insect = new Spider(position, insectColor);
-                    break;
-                case "Grasshopper":
-                    insect = new Grasshopper(position, insectColor);
-                    break;
-                default:
-                    throw new InvalidInsectTypeException();
+            if (failure != null) {
+                continue;
             }
-            for (Insect ins : insects) {
-                if (ins.getClass() == insect.getClass() && insectColor == ins.getColor()) {
-                    throw new DuplicateInsectException();
-                }
+            try {
+                Insect insect = createInsect(reader, insects);
+                insects.add(insect);
+                gameBoard.addEntity(insect);
+            } catch (InvalidNumberOfInsectsException | InvalidInsectColorException | InvalidInsectTypeException
+                     | DuplicateInsectException | InvalidEntityPositionException
+                     | TwoEntitiesOnSamePositionException | NumberFormatException e) {
+                failure = e;
             }
-            insects.add(insect);
-            gameBoard.addEntity(insect);
+        }
+        if (failure != null) {
+            throwScenarioError(failure);
         }
 
         return insects;
 
     }
     /**
-     * Adds food entities to the game board based on the provided data.
+     * Creates the insect described by the current line.
      *
-     * @param foodData A list of strings representing the data for food entities.
-     *                 Each string should contain information about the amount, y-coordinate, and x-coordinate.
-     * @throws InvalidInsectColorException    If the color of the insect is invalid.
-     * @throws InvalidEntityPositionException If the entity position is invalid.
-     * @throws DuplicateInsectException       If duplicate insects are detected.
+     * @param reader  The reader positioned at an insect line.
+     * @param insects The insects created so far.
+     * @return The new insect.
+     * @throws InvalidNumberOfInsectsException  if the line does not have four fields.
+     * @throws InvalidInsectColorException      if the insect color is invalid.
+     * @throws InvalidInsectTypeException       if the insect type is invalid.
+     * @throws DuplicateInsectException         if an insect of the same type and color exists.
+     * @throws InvalidEntityPositionException   if the insect's position is invalid.
+     */
+    private Insect createInsect(ScenarioReader reader, List<Insect> insects) throws InvalidNumberOfInsectsException,
+            InvalidInsectColorException, InvalidInsectTypeException, DuplicateInsectException,
+            InvalidEntityPositionException {
+        if (reader.tokenCount() != MIN_BOARD_SIZE) {
+            throw new InvalidNumberOfInsectsException();
+        }
+        InsectColor insectColor = InsectColor.toColor(reader.token(0));
+        String insectType = reader.token(1);
+        int y = reader.intToken(2);
+        int x = reader.intToken(BOARD_SIZE);
+
+        if ((x < 1) || (y < 1) || (x > gameBoard.getSize()) || (y > gameBoard.getSize())) {
+            throw new InvalidEntityPositionException();
+        }
+
+        EntityPosition position = new EntityPosition(x, y);
+
+        Species species = Species.forName(insectType);
+        if (species == null) {
+            throw new InvalidInsectTypeException();
+        }
+        Insect insect = species.create(position, insectColor);
+        for (Insect ins : insects) {
+            if (ins.getSpecies() == insect.getSpecies() && insectColor == ins.getColor()) {
+                throw new DuplicateInsectException();
+            }
+        }
+        return insect;
+    }
+    /**
+     * Adds food entities to the game board straight from the input bytes.
+     * Each line should contain the amount, y-coordinate, and x-coordinate. Problems are only reported
+     * once the number of food lines is known to be right; after the first error the rest is only counted.
+     *
+     * @param reader             The reader positioned at the first food line.
+     * @param numberOfFoodPoints The number of food lines expected.
+     * @throws IOException                        If the input cannot be read.
+     * @throws InvalidNumberOfFoodPointsException If there are more or fewer food lines than expected.
+     * @throws InvalidEntityPositionException     If the entity position is invalid.
      * @throws TwoEntitiesOnSamePositionException If two entities are in the same position.
      */
-    private static void addFoodToBoard(List<String> foodData) throws InvalidInsectColorException,
-            InvalidEntityPositionException, DuplicateInsectException, TwoEntitiesOnSamePositionException {
-        for (String line : foodData) {
-            String[] parts = line.split(" ");
-            if (parts.length == BOARD_SIZE) {
-                int amount = Integer.parseInt(parts[0]);
-                int y = Integer.parseInt(parts[1]);
-                int x = Integer.parseInt(parts[2]);
+    private void addFoodToBoard(ScenarioReader reader, int numberOfFoodPoints) throws IOException,
+            InvalidNumberOfFoodPointsException, InvalidEntityPositionException, TwoEntitiesOnSamePositionException {
+        Exception failure = null;
+        int malformedLines = 0;
+        for (int i = 0; i < numberOfFoodPoints; i++) {
+            if (!reader.nextLine()) {
+                throw new InvalidNumberOfFoodPointsException();
+            }
+            if (failure != null) {
+                continue;
+            }
+            if (reader.tokenCount() != BOARD_SIZE) {
+                malformedLines++;
+                continue;
+            }
+            try {
+                int amount = reader.intToken(0);
+                int y = reader.intToken(1);
+                int x = reader.intToken(2);
 
                 if ((x < 1) || (y < 1) || (x > gameBoard.getSize()) || (y > gameBoard.getSize())) {
                     throw new InvalidEntityPositionException();
                 }
-                EntityPosition position = new EntityPosition(x, y);
-                FoodPoint foodPoint = new FoodPoint(position, amount);
-                gameBoard.addEntity(foodPoint);
-            } else {
-                System.out.println("Invalid number of food points");
+                gameBoard.addFood(x, y, amount);
+            } catch (InvalidEntityPositionException | TwoEntitiesOnSamePositionException
+                     | NumberFormatException e) {
+                failure = e;
             }
         }
+        if (reader.nextLine()) {
+            throw new InvalidNumberOfFoodPointsException();
+        }
+        for (int i = 0; i < malformedLines; i++) {
+            System.out.println("Invalid number of food points");
+        }
+        if (failure instanceof InvalidEntityPositionException) {
+            throw (InvalidEntityPositionException) failure;
+        }
+        if (failure instanceof TwoEntitiesOnSamePositionException) {
+            throw (TwoEntitiesOnSamePositionException) failure;
+        }
+        if (failure != null) {
+            throw (RuntimeException) failure;
+        }
+    }
+    /**
+     * Rethrows an error that was held back while the rest of the insect lines were counted.
+     *
+     * @param failure The error to rethrow.
+     * @throws InvalidNumberOfInsectsException    if that is the held back error.
+     * @throws InvalidInsectColorException        if that is the held back error.
+     * @throws InvalidInsectTypeException         if that is the held back error.
+     * @throws DuplicateInsectException           if that is the held back error.
+     * @throws InvalidEntityPositionException     if that is the held back error.
+     * @throws TwoEntitiesOnSamePositionException if that is the held back error.
+     */
+    private static void throwScenarioError(Exception failure) throws InvalidNumberOfInsectsException,
+            InvalidInsectColorException, InvalidInsectTypeException, DuplicateInsectException,
+            InvalidEntityPositionException, TwoEntitiesOnSamePositionException {
+        if (failure instanceof InvalidNumberOfInsectsException) {
+            throw (InvalidNumberOfInsectsException) failure;
+        }
+        if (failure instanceof InvalidInsectColorException) {
+            throw (InvalidInsectColorException) failure;
+        }
+        if (failure instanceof InvalidInsectTypeException) {
+            throw (InvalidInsectTypeException) failure;
+        }
+        if (failure instanceof DuplicateInsectException) {
+            throw (DuplicateInsectException) failure;
+        }
+        if (failure instanceof InvalidEntityPositionException) {
+            throw (InvalidEntityPositionException) failure;
+        }
+        if (failure instanceof TwoEntitiesOnSamePositionException) {
+            throw (TwoEntitiesOnSamePositionException) failure;
+        }
+        throw (RuntimeException) failure;
     }
 }
 /**
- * Enum representing directions on the game board.
- * Each direction has a text representation, priority, and corresponding shifts in the x and y axes.
+ * Opens the input of one scenario.
  */
-enum Direction {
-    N("North", 8, 0, -1),
-    E("East", 7, 1, 0),
-    S("South", 6, 0, 1),
-    W("West", 5, -1, 0),
-    NE("North-East", 4, 1, -1),
-    SE("South-East", 3, 1, 1),
-    SW("South-West", 2, -1, 1),
-    NW("North-West", 1, -1, -1);
-    private final String textRepresentation;
-    private int priority;
-    private int xShift;
-    private int yShift;
+@FunctionalInterface
+interface ScenarioSource {
+    /**
+     * Opens a reader over the scenario.
+     *
+     * @return A reader positioned at the start of the scenario.
+     * @throws IOException if the scenario cannot be opened.
+     */
+    ScenarioReader open() throws IOException;
 
     /**
-     * Constructs a Direction with the given text representation, priority, and shifts.
+     * Gets the source of a scenario file. This is a plain class rather than a lambda so that a one-off run
+     * does not start the lambda machinery.
      *
-     * @param text      The text representation of the direction.
-     * @param priority  The priority of the direction.
-     * @param xShift    The shift in the x-axis.
-     * @param yShift    The shift in the y-axis.
+     * @param path The scenario file.
+     * @return The source opening the file.
      */
-    private Direction(String text, int priority, int xShift, int yShift) {
-        textRepresentation = text;
-        this.priority = priority;
-        this.xShift = xShift;
-        this.yShift = yShift;
+    static ScenarioSource of(Path path) {
+        return new FileSource(path);
     }
 
     /**
-     * Gets the text representation of the direction.
-     *
-     * @return The text representation.
+     * The source of a scenario file.
      */
-    public String getTextRepresentation() {
-        return textRepresentation;
+    final class FileSource implements ScenarioSource {
+        private final Path path;
+
+        /**
+         * Constructs the source of a file.
+         *
+         * @param path The scenario file.
+         */
+        FileSource(Path path) {
+            this.path = path;
+        }
+
+        @Override
+        public ScenarioReader open() throws IOException {
+            return ScenarioReader.open(path);
+        }
     }
+}
+/**
+ * Reads scenario input line by line straight from bytes, either from a buffer holding the whole input
+ * (memory-mapped for large files) or streamed from a channel through a fixed-size buffer.
+ * Lines end like {@link java.util.Scanner#nextLine()} sees them, and fields are split on single spaces
+ * like {@code String.split(" ")}, so the reader accepts and rejects exactly what the line-based parsing did.
+ * The current line is kept in a reused array and numbers are parsed from its bytes, so reading allocates nothing.
+ */
+class ScenarioReader implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int MAX_TOKENS = 5;
+    private static final Charset CHARSET = Charset.defaultCharset();
+    private static final boolean UNICODE_LINE_SEPARATORS = StandardCharsets.UTF_8.equals(CHARSET);
+    private final ByteBuffer buffer;
+    private final ReadableByteChannel channel;
+    private byte[] line = new byte[128];
+    private int length;
+    private int lineStart;
+    private boolean skipLineFeed;
+    private int tokenCount = -1;
+    private final int[] tokenStarts = new int[MAX_TOKENS];
+    private final int[] tokenEnds = new int[MAX_TOKENS];
+
     /**
-     * Gets the priority of the direction.
+     * Constructs a reader over input held in a buffer.
      *
-     * @return The priority.
+     * @param buffer The buffer holding the whole input between its position and limit.
      */
-    public int getPriority() {
-        return priority;
+    ScenarioReader(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.channel = null;
     }
+
     /**
-     * Gets the shift in the x-axis.
+     * Constructs a reader streaming its input from a channel.
      *
-     * @return The x-axis shift.
+     * @param channel The channel to read from; it is closed with the reader.
      */
-    public int getxShift() {
-        return xShift;
+    ScenarioReader(ReadableByteChannel channel) {
+        this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        this.buffer.flip();
+        this.channel = channel;
     }
+
     /**
-     * Gets the shift in the y-axis.
+     * Opens a reader over a file. Files that fit in a buffer are read at once, larger ones are streamed.
+     *
+     * @param path The file to read.
+     * @return The reader.
+     * @throws IOException if the file cannot be opened.
+     */
+    static ScenarioReader open(Path path) throws IOException {
+        FileChannel file = FileChannel.open(path, StandardOpenOption.READ);
+        if (file.size() > Integer.MAX_VALUE) {
+            return new ScenarioReader(file);
+        }
+        try {
+            return new ScenarioReader(readAll(file));
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Reads a whole file into a buffer: small files into the heap, larger ones memory-mapped.
+     *
+     * @param path The file to read.
+     * @return The buffer holding the file.
+     * @throws IOException if the file cannot be read or is larger than a buffer can hold.
+     */
+    static ByteBuffer readAll(Path path) throws IOException {
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (file.size() > Integer.MAX_VALUE) {
+                throw new IOException("File too large to map: " + path);
+            }
+            return readAll(file);
+        }
+    }
+
+    /**
+     * Reads the rest of an open file into a buffer.
+     *
+     * @param file The file to read.
+     * @return The buffer holding the file.
+     * @throws IOException if the file cannot be read.
+     */
+    private static ByteBuffer readAll(FileChannel file) throws IOException {
+        long size = file.size();
+        if (size > BUFFER_SIZE) {
+            return file.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        ByteBuffer content = ByteBuffer.allocate((int) size);
+        while (content.hasRemaining() && file.read(content) >= 0) {
+            // keep reading until the file is consumed
+        }
+        content.flip();
+        return content;
+    }
+
+    /**
+     * Gets the input of a reader over a binary scenario.
+     *
+     * @return The whole input if it is a {@link BinaryFormat} scenario, or null for text and streamed input.
+     */
+    ByteBuffer binaryInput() {
+        if (channel != null || !BinaryFormat.isScenario(buffer)) {
+            return null;
+        }
+        return buffer.slice();
+    }
+
+    /**
+     * Advances to the next line.
+     *
+     * @return True if there was another line; false at the end of the input.
+     * @throws IOException if the input cannot be read.
+     */
+    boolean nextLine() throws IOException {
+        int next = nextByte();
+        if (next == '\n' && skipLineFeed) {
+            next = nextByte();
+        }
+        skipLineFeed = false;
+        if (next < 0) {
+            return false;
+        }
+        lineStart = buffer.position() - 1;
+        length = 0;
+        tokenCount = -1;
+        while (next >= 0 && next != '\n') {
+            if (next == '\r') {
+                if (buffer.hasRemaining()) {
+                    if (buffer.get(buffer.position()) == '\n') {
+                        buffer.get();
+                    }
+                } else {
+                    skipLineFeed = true;
+                }
+                return true;
+            }
+            if (length == line.length) {
+                line = Arrays.copyOf(line, 2 * length);
+            }
+            line[length++] = (byte) next;
+            if (UNICODE_LINE_SEPARATORS && endsWithUnicodeLineSeparator()) {
+                return true;
+            }
+            next = nextByte();
+        }
+        return true;
+    }
+
+    /**
+     * Checks if the line read so far ends with the UTF-8 encoding of U+0085, U+2028 or U+2029,
+     * which end lines too, and drops the separator if so.
+     *
+     * @return True if the line ended.
+     */
+    private boolean endsWithUnicodeLineSeparator() {
+        if (length >= 2 && line[length - 2] == (byte) 0xC2 && line[length - 1] == (byte) 0x85) {
+            length -= 2;
+            return true;
+        }
+        if (length >= 3 && line[length - 3] == (byte) 0xE2 && line[length - 2] == (byte) 0x80
+                && (line[length - 1] == (byte) 0xA8 || line[length - 1] == (byte) 0xA9)) {
+            length -= 3;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Reads the next byte, refilling the buffer from the channel when streaming.
+     *
+     * @return The byte, or -1 at the end of the input.
+     * @throws IOException if the input cannot be read.
+     */
+    private int nextByte() throws IOException {
+        if (!buffer.hasRemaining()) {
+            if (channel == null) {
+                return -1;
+            }
+            buffer.clear();
+            int read = channel.read(buffer);
+            while (read == 0) {
+                read = channel.read(buffer);
+            }
+            buffer.flip();
+            if (read < 0) {
+                return -1;
+            }
+        }
+        return buffer.get() & 0xFF;
+    }
+
+    /**
+     * Reads the next line as a header number.
+     *
+     * @return The number on the line.
+     * @throws IOException               if the input cannot be read.
+     * @throws IndexOutOfBoundsException if there is no further line.
+     * @throws NumberFormatException     if the line is not a number.
+     */
+    int nextHeaderValue() throws IOException {
+        if (!nextLine()) {
+            throw new IndexOutOfBoundsException("Missing header line");
+        }
+        return parseInt(0, length);
+    }
+
+    /**
+     * Gets the offset in the buffer where the current line starts. Only meaningful for buffered input.
+     *
+     * @return The offset of the first byte of the line.
+     */
+    int lineStart() {
+        return lineStart;
+    }
+
+    /**
+     * Gets the offset in the buffer just past the current line and its terminator.
+     *
+     * @return The offset of the next line.
+     */
+    int position() {
+        return buffer.position();
+    }
+
+    /**
+     * Checks if the current line is exactly the given ASCII text.
+     *
+     * @param text The text to compare with.
+     * @return True if the line equals the text.
+     */
+    boolean lineEquals(String text) {
+        if (length != text.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (line[i] != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Counts the fields of the current line as {@code line.split(" ").length} would.
+     *
+     * @return The number of fields.
+     */
+    int tokenCount() {
+        if (tokenCount >= 0) {
+            return tokenCount;
+        }
+        int segments = 0;
+        int lastNonEmpty = -1;
+        int start = 0;
+        for (int i = 0; i <= length; i++) {
+            if (i == length || line[i] == ' ') {
+                if (segments < MAX_TOKENS) {
+                    tokenStarts[segments] = start;
+                    tokenEnds[segments] = i;
+                }
+                if (i > start) {
+                    lastNonEmpty = segments;
+                }
+                segments++;
+                start = i + 1;
+            }
+        }
+        // without any separator split returns the whole line, even an empty one
+        tokenCount = segments == 1 ? 1 : lastNonEmpty + 1;
+        return tokenCount;
+    }
+
+    /**
+     * Splits the current line on runs of whitespace as {@code line.trim().split("\\s+")} means to, except that a
+     * blank line has no fields. Whitespace is what {@code \s} matches: space, tab, line feed, vertical tab, form
+     * feed and carriage return.
+     *
+     * @return The fields of the line.
+     */
+    String[] fields() {
+        int count = 0;
+        for (int i = 0; i < length; i++) {
+            if (!isWhitespace(line[i]) && (i == 0 || isWhitespace(line[i - 1]))) {
+                count++;
+            }
+        }
+        String[] fields = new String[count];
+        int field = 0;
+        for (int i = 0; i < length; i++) {
+            if (isWhitespace(line[i])) {
+                continue;
+            }
+            int start = i;
+            while (i < length && !isWhitespace(line[i])) {
+                i++;
+            }
+            fields[field++] = new String(line, start, i - start, CHARSET);
+        }
+        return fields;
+    }
+
+    /**
+     * Checks if a byte is whitespace for {@link #fields()}.
+     *
+     * @param b The byte.
+     * @return True for a space, tab, line feed, vertical tab, form feed or carriage return.
+     */
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || (b >= '\t' && b <= '\r');
+    }
+
+    /**
+     * Gets the current line as a string, for messages.
+     *
+     * @return The line without its terminator.
+     */
+    String line() {
+        return new String(line, 0, length, CHARSET);
+    }
+
+    /**
+     * Gets a field of the current line as a string.
+     *
+     * @param index The index of the field, below {@link #tokenCount()}.
+     * @return The field.
+     */
+    String token(int index) {
+        tokenCount();
+        return new String(line, tokenStarts[index], tokenEnds[index] - tokenStarts[index], CHARSET);
+    }
+
+    /**
+     * Parses a field of the current line as a number.
+     *
+     * @param index The index of the field, below {@link #tokenCount()}.
+     * @return The number.
+     * @throws NumberFormatException if the field is not a number.
+     */
+    int intToken(int index) {
+        tokenCount();
+        return parseInt(tokenStarts[index], tokenEnds[index]);
+    }
+
+    /**
+     * Parses a range of the current line as {@link Integer#parseInt(String)} does.
+     * Non-ASCII input is decoded and handed to it, so other digit scripts keep working.
+     *
+     * @param start The first byte, inclusive.
+     * @param end   The last byte, exclusive.
+     * @return The number.
+     * @throws NumberFormatException if the range is not a number.
+     */
+    private int parseInt(int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (line[i] == '-' || line[i] == '+')) {
+            negative = line[i] == '-';
+            i++;
+        }
+        if (i == end) {
+            throw invalidNumber(start, end);
+        }
+        int limit = negative ? Integer.MIN_VALUE : -Integer.MAX_VALUE;
+        int result = 0;
+        for (; i < end; i++) {
+            byte b = line[i];
+            if (b < 0) {
+                return Integer.parseInt(new String(line, start, end - start, CHARSET));
+            }
+            if (b < '0' || b > '9' || result < limit / 10) {
+                throw invalidNumber(start, end);
+            }
+            result = result * 10;
+            if (result < limit + (b - '0')) {
+                throw invalidNumber(start, end);
+            }
+            result -= b - '0';
+        }
+        return negative ? result : -result;
+    }
+
+    /**
+     * Creates the error for a range that is not a number.
+     *
+     * @param start The first byte, inclusive.
+     * @param end   The last byte, exclusive.
+     * @return The error.
+     */
+    private NumberFormatException invalidNumber(int start, int end) {
+        return new NumberFormatException("For input string: \"" + new String(line, start, end - start, CHARSET) + "\"");
+    }
+
+    /**
+     * Closes the channel of a streaming reader.
+     *
+     * @throws IOException if the channel cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+}
+
+/**
+ * Encodes scenario results into a reused byte buffer, as text or in the {@link BinaryFormat}.
+ * Colors, insect types and directions are encoded once into byte arrays and copied into the buffer,
+ * and food amounts are written digit by digit, so a result line allocates nothing. A writer over a channel
+ * flushes whenever the buffer cannot hold another record, keeping memory bounded however many results
+ * are written; a writer without a channel grows its buffer and hands the result over with {@link #toByteArray()}.
+ */
+class ResultWriter implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int MAX_RECORD = 64;
+    private static final Charset CHARSET = Charset.defaultCharset();
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(CHARSET);
+    private static final byte[][] COLORS = new byte[InsectColor.values().length][];
+    private static final byte[][] DIRECTIONS = new byte[Direction.values().length][];
+    private final WritableByteChannel channel;
+    private final boolean binary;
+    private ByteBuffer buffer;
+    private boolean scenarioStarted;
+    private int results;
+
+    static {
+        // String.concat rather than +, which would bootstrap the string concatenation factory on every run
+        for (InsectColor color : InsectColor.values()) {
+            COLORS[color.ordinal()] = InsectColor.toString(color).concat(" ").getBytes(CHARSET);
+        }
+        for (Direction direction : Direction.values()) {
+            DIRECTIONS[direction.ordinal()] = direction.getTextRepresentation().concat(" ").getBytes(CHARSET);
+        }
+    }
+
+    /**
+     * Constructs a writer streaming its output to a channel.
+     *
+     * @param channel The channel to write to; it is closed with the writer.
+     * @param binary  True to write results in the binary format; false for text.
+     */
+    ResultWriter(WritableByteChannel channel, boolean binary) {
+        this.channel = channel;
+        this.binary = binary;
+        this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    }
+
+    /**
+     * Constructs a writer keeping its output in memory.
+     *
+     * @param binary True to write results in the binary format; false for text.
+     */
+    ResultWriter(boolean binary) {
+        this.channel = null;
+        this.binary = binary;
+        this.buffer = ByteBuffer.allocate(MAX_RECORD * 4);
+    }
+
+    /**
+     * Opens a text writer replacing the contents of a file.
+     *
+     * @param path The file to write.
+     * @return The writer.
+     * @throws IOException if the file cannot be opened.
+     */
+    static ResultWriter open(Path path) throws IOException {
+        return open(path, false);
+    }
+
+    /**
+     * Opens a writer replacing the contents of a file.
+     *
+     * @param path   The file to write.
+     * @param binary True to write results in the binary format; false for text.
+     * @return The writer.
+     * @throws IOException if the file cannot be opened.
+     */
+    static ResultWriter open(Path path, boolean binary) throws IOException {
+        return new ResultWriter(FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE), binary);
+    }
+
+    /**
+     * Checks if this writer writes results in the binary format.
+     *
+     * @return True for binary results; false for text.
+     */
+    boolean isBinary() {
+        return binary;
+    }
+
+    /**
+     * Starts the results of a scenario that loaded successfully.
+     *
+     * @param count The number of insect results that follow.
+     * @throws IOException if a full buffer cannot be flushed.
+     */
+    void beginResults(int count) throws IOException {
+        scenarioStarted = true;
+        if (binary) {
+            ensureCapacity(BinaryFormat.RESULT_HEADER);
+            buffer.putInt(BinaryFormat.RESULT_MAGIC).put(BinaryFormat.VERSION).putInt(count);
+        }
+    }
+
+    /**
+     * Writes the result of one insect: its color, type, direction and the food it collected.
+     *
+     * @param insect    The insect.
+     * @param direction The direction the insect moved in.
+     * @param food      The amount of food collected.
+     * @throws IOException if a full buffer cannot be flushed.
+     */
+    void writeResult(Insect insect, Direction direction, int food) throws IOException {
+        writeResult(insect.color, insect.getSpecies(), direction, food);
+    }
+
+    /**
+     * Writes the result of one insect given by its color and species.
+     *
+     * @param color     The color of the insect.
+     * @param species   The species of the insect.
+     * @param direction The direction the insect moved in.
+     * @param food      The amount of food collected.
+     * @throws IOException if a full buffer cannot be flushed.
+     */
+    void writeResult(InsectColor color, Species species, Direction direction, int food) throws IOException {
+        if (binary) {
+            ensureCapacity(MAX_RECORD);
+            buffer.put(BinaryFormat.packResult(color, species, direction)).putInt(food);
+            return;
+        }
+        // species from the species file may have names of any length
+        byte[] token = species.getToken();
+        ensureCapacity(MAX_RECORD + token.length);
+        if (results++ > 0) {
+            buffer.put(LINE_SEPARATOR);
+        }
+        buffer.put(COLORS[color.ordinal()]);
+        buffer.put(token);
+        buffer.put(DIRECTIONS[direction.ordinal()]);
+        putInt(food);
+    }
+
+    /**
+     * Writes the error a scenario failed with in place of its results.
+     *
+     * @param message The error message.
+     * @throws IOException if a full buffer cannot be flushed.
+     */
+    void writeError(String message) throws IOException {
+        scenarioStarted = true;
+        byte[] bytes = message.getBytes(CHARSET);
+        if (binary) {
+            ensureCapacity(BinaryFormat.RESULT_HEADER + Integer.BYTES);
+            buffer.putInt(BinaryFormat.RESULT_MAGIC).put(BinaryFormat.VERSION).putInt(BinaryFormat.ERROR)
+                    .putInt(bytes.length);
+        }
+        write(bytes);
+    }
+
+    /**
+     * Ends the output of a scenario. A scenario that failed before writing anything ends as an empty error.
+     *
+     * @throws IOException if a full buffer cannot be flushed.
+     */
+    void endScenario() throws IOException {
+        if (binary && !scenarioStarted) {
+            writeError("");
+        }
+        if (!binary) {
+            writeLineSeparator();
+        }
+        scenarioStarted = false;
+        results = 0;
+    }
+
+    /**
+     * Writes a number in decimal.
+     *
+     * @param value The number to write.
+     * @throws IOException if a full buffer cannot be flushed.
+     */
+    void writeNumber(int value) throws IOException {
+        ensureCapacity(MAX_RECORD);
+        putInt(value);
+    }
+
+    /**
+     * Ends the current line.
+     *
+     * @throws IOException if a full buffer cannot be flushed.
+     */
+    void writeLineSeparator() throws IOException {
+        write(LINE_SEPARATOR);
+    }
+
+    /**
+     * Writes text such as an error message.
+     *
+     * @param text The text to write.
+     * @throws IOException if a full buffer cannot be flushed.
+     */
+    void write(String text) throws IOException {
+        write(text.getBytes(CHARSET));
+    }
+
+    /**
+     * Writes already encoded output, such as the result of another scenario.
+     *
+     * @param bytes The bytes to write.
+     * @throws IOException if a full buffer cannot be flushed.
+     */
+    void write(byte[] bytes) throws IOException {
+        int offset = 0;
+        while (offset < bytes.length) {
+            ensureCapacity(Math.min(bytes.length - offset, BUFFER_SIZE));
+            int count = Math.min(bytes.length - offset, buffer.remaining());
+            buffer.put(bytes, offset, count);
+            offset += count;
+        }
+    }
+
+    /**
+     * Writes a number in decimal without going through a string.
+     *
+     * @param value The number to write.
+     */
+    private void putInt(int value) {
+        if (value < 0) {
+            buffer.put(String.valueOf(value).getBytes(CHARSET));
+            return;
+        }
+        int digits = 1;
+        for (int rest = value; rest >= 10; rest /= 10) {
+            digits++;
+        }
+        int end = buffer.position() + digits;
+        for (int i = end - 1; i >= buffer.position(); i--) {
+            buffer.put(i, (byte) ('0' + value % 10));
+            value /= 10;
+        }
+        buffer.position(end);
+    }
+
+    /**
+     * Makes room for the given number of bytes, flushing to the channel and growing the buffer when that is not enough.
+     *
+     * @param bytes The number of bytes about to be written.
+     * @throws IOException if the buffer cannot be flushed.
+     */
+    private void ensureCapacity(int bytes) throws IOException {
+        if (buffer.remaining() >= bytes) {
+            return;
+        }
+        if (channel != null) {
+            flush();
+            if (buffer.remaining() >= bytes) {
+                return;
+            }
+        }
+        ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+        buffer.flip();
+        grown.put(buffer);
+        buffer = grown;
+    }
+
+    /**
+     * Writes the buffered output to the channel.
+     *
+     * @throws IOException if the channel cannot be written.
+     */
+    void flush() throws IOException {
+        if (channel == null) {
+            return;
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Gets the output of a writer without a channel.
+     *
+     * @return A copy of everything written so far.
+     */
+    byte[] toByteArray() {
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    /**
+     * Flushes the buffered output and closes the channel.
+     *
+     * @throws IOException if the output cannot be written or the channel cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (channel == null) {
+            return;
+        }
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+}
+
+/**
+ * Writes synthetic scenarios in the text input format for load and scaling tests; the same seed and options
+ * always give the same file. Insects get distinct random cells. Every food point is drawn uniformly over the
+ * board or, with clusters, near one of the randomly placed cluster centres, and counts for the square region
+ * of the board it lands in; each region then gets that many distinct random cells. Only the regions that get
+ * food are visited, so the time follows the number of food points rather than the area of the board, and
+ * memory stays at a few bytes a food point plus one region.
+ */
+class ScenarioGenerator {
+    /**
+     * The largest number of insects: one of every type in every color.
+     */
+    static final int MAX_INSECTS = 16;
+    private static final int REGION_BITS = 6;
+    private static final int REGION_SIZE = 1 << REGION_BITS;
+    private static final double BACKGROUND = 1e-6;
+    private static final List<Species> TYPES =
+            List.of(Species.ANT, Species.BUTTERFLY, Species.SPIDER, Species.GRASSHOPPER);
+    private static final InsectColor[] COLORS = InsectColor.values();
+    private final SplittableRandom random;
+    private final int size;
+    private final int insects;
+    private final int foodPoints;
+    private final int maxAmount;
+    private final boolean skewed;
+    private final double[] clusters;
+    private final double spread;
+    private final int regionsPerRow;
+
+    /**
+     * Constructs a generator.
+     *
+     * @param seed       The seed of the random choices.
+     * @param size       The size of the board.
+     * @param insects    The number of insects, one per type and color.
+     * @param foodPoints The number of food points.
+     * @param maxAmount  The largest amount of food in a food point.
+     * @param skewed     True to make small amounts more likely than large ones; false for uniform amounts.
+     * @param clusters   The number of cluster centres, or 0 to spread food evenly.
+     * @param spread     The standard deviation of the distance of clustered food from its centre, in cells.
+     * @throws IllegalArgumentException if an option is out of range or the food does not fit on the board.
+     */
+    ScenarioGenerator(long seed, int size, int insects, int foodPoints, int maxAmount, boolean skewed,
+                      int clusters, double spread) {
+        if (size < 1 || size > Board.MAX_SIZE) {
+            throw new IllegalArgumentException("Board size must be between 1 and " + Board.MAX_SIZE);
+        }
+        if (insects < 1 || insects > MAX_INSECTS || insects > (long) size * size) {
+            throw new IllegalArgumentException("Number of insects must be between 1 and " + MAX_INSECTS);
+        }
+        if (foodPoints < 1 || foodPoints > (long) size * size - insects) {
+            throw new IllegalArgumentException("Food points must be between 1 and the free cells of the board");
+        }
+        if (maxAmount < 1 || clusters < 0 || !(spread > 0)) {
+            throw new IllegalArgumentException("Amounts, clusters and spread must be positive");
+        }
+        this.random = new SplittableRandom(seed);
+        this.size = size;
+        this.insects = insects;
+        this.foodPoints = foodPoints;
+        this.maxAmount = maxAmount;
+        this.skewed = skewed;
+        this.clusters = new double[2 * clusters];
+        for (int i = 0; i < this.clusters.length; i++) {
+            this.clusters[i] = random.nextDouble() * size;
+        }
+        this.spread = spread;
+        this.regionsPerRow = (size + REGION_SIZE - 1) >>> REGION_BITS;
+    }
+
+    /**
+     * Writes the scenario: the header, the insect lines and the food lines region by region.
+     *
+     * @param writer The writer receiving the text.
+     * @throws IOException if the text cannot be written.
+     */
+    void write(ResultWriter writer) throws IOException {
+        writer.writeNumber(size);
+        writer.writeLineSeparator();
+        writer.writeNumber(insects);
+        writer.writeLineSeparator();
+        writer.writeNumber(foodPoints);
+        writer.writeLineSeparator();
+        long[] insectCells = new long[insects];
+        for (int i = 0; i < insects; i++) {
+            insectCells[i] = randomFreeCell(insectCells, i);
+            writer.write(InsectColor.toString(COLORS[i % COLORS.length]) + " "
+                    + TYPES.get(i / COLORS.length).getName() + " ");
+            writer.writeNumber((int) (insectCells[i] / size) + 1);
+            writer.write(" ");
+            writer.writeNumber((int) (insectCells[i] % size) + 1);
+            writer.writeLineSeparator();
+        }
+        BitSet blocked = new BitSet(REGION_SIZE * REGION_SIZE);
+        BitSet picked = new BitSet(REGION_SIZE * REGION_SIZE);
+        for (long entry : planRegions(insectCells)) {
+            int region = (int) (entry >>> 32);
+            int count = (int) entry;
+            int x0 = (region % regionsPerRow) << REGION_BITS;
+            int y0 = (region / regionsPerRow) << REGION_BITS;
+            int width = Math.min(REGION_SIZE, size - x0);
+            int height = Math.min(REGION_SIZE, size - y0);
+            blocked.clear();
+            for (long cell : insectCells) {
+                int dx = (int) (cell % size) - x0;
+                int dy = (int) (cell / size) - y0;
+                if (dx >= 0 && dx < width && dy >= 0 && dy < height) {
+                    blocked.set(dy << REGION_BITS | dx);
+                }
+            }
+            int capacity = width * height - blocked.cardinality();
+            // pick whichever of the food cells and the free cells left empty is the smaller set
+            boolean pickEmpty = count > capacity / 2;
+            picked.clear();
+            for (int i = pickEmpty ? capacity - count : count; i > 0; i--) {
+                int offset;
+                do {
+                    offset = random.nextInt(height) << REGION_BITS | random.nextInt(width);
+                } while (blocked.get(offset) || picked.get(offset));
+                picked.set(offset);
+            }
+            if (!pickEmpty) {
+                for (int offset = picked.nextSetBit(0); offset >= 0; offset = picked.nextSetBit(offset + 1)) {
+                    writeFood(writer, x0 + (offset & REGION_SIZE - 1), y0 + (offset >>> REGION_BITS));
+                }
+                continue;
+            }
+            for (int dy = 0; dy < height; dy++) {
+                for (int dx = 0; dx < width; dx++) {
+                    int offset = dy << REGION_BITS | dx;
+                    if (!blocked.get(offset) && !picked.get(offset)) {
+                        writeFood(writer, x0 + dx, y0 + dy);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the line of a food point with a random amount.
+     *
+     * @param writer The writer receiving the text.
+     * @param x      The zero-based x-coordinate of the food.
+     * @param y      The zero-based y-coordinate of the food.
+     * @throws IOException if the text cannot be written.
+     */
+    private void writeFood(ResultWriter writer, int x, int y) throws IOException {
+        writer.writeNumber(amount());
+        writer.write(" ");
+        writer.writeNumber(y + 1);
+        writer.write(" ");
+        writer.writeNumber(x + 1);
+        writer.writeLineSeparator();
+    }
+
+    /**
+     * Decides how many food points every region gets. Every food point is drawn on its own, uniformly over the
+     * board or near a cluster centre, and counts for the region it lands in. Food that does not fit a region
+     * moves on to the regions after it, and from the last region back to the first.
+     *
+     * @param insectCells The cells of the insects.
+     * @return The regions that get food in region order, each packed with its region index in the high half
+     *         and its number of food points in the low half.
+     */
+    private long[] planRegions(long[] insectCells) {
+        int[] drawn = new int[foodPoints];
+        for (int i = 0; i < foodPoints; i++) {
+            drawn[i] = randomRegion();
+        }
+        Arrays.sort(drawn);
+        long[] plan = new long[foodPoints];
+        int entries = 0;
+        for (int i = 0; i < foodPoints; ) {
+            int end = i;
+            while (end < foodPoints && drawn[end] == drawn[i]) {
+                end++;
+            }
+            plan[entries++] = (long) drawn[i] << 32 | (end - i);
+            i = end;
+        }
+        int regions = regionsPerRow * regionsPerRow;
+        long carry = 0;
+        for (int lap = 0; lap < 2; lap++) {
+            long[] fitted = new long[Math.max(entries, 16)];
+            int fittedEntries = 0;
+            int region = 0;
+            for (int i = 0; i <= entries; i++) {
+                int next = i < entries ? (int) (plan[i] >>> 32) : regions;
+                for (; carry > 0 && region < next; region++) {
+                    int count = (int) Math.min(carry, capacity(region, insectCells));
+                    if (count > 0) {
+                        if (fittedEntries == fitted.length) {
+                            fitted = Arrays.copyOf(fitted, 2 * fittedEntries);
+                        }
+                        fitted[fittedEntries++] = (long) region << 32 | count;
+                        carry -= count;
+                    }
+                }
+                if (i == entries) {
+                    break;
+                }
+                long wanted = (int) plan[i] + carry;
+                int count = (int) Math.min(wanted, capacity(next, insectCells));
+                carry = wanted - count;
+                if (fittedEntries == fitted.length) {
+                    fitted = Arrays.copyOf(fitted, 2 * fittedEntries);
+                }
+                fitted[fittedEntries++] = (long) next << 32 | count;
+                region = next + 1;
+            }
+            plan = fitted;
+            entries = fittedEntries;
+            if (carry == 0) {
+                break;
+            }
+        }
+        return Arrays.copyOf(plan, entries);
+    }
+
+    /**
+     * Draws the region of a food point: with clusters, near a centre at a normally distributed distance, or
+     * anywhere on the board with the small background chance; without clusters, anywhere on the board.
+     * Points drawn off the board are drawn again.
+     *
+     * @return The region index.
+     */
+    private int randomRegion() {
+        int centres = clusters.length / 2;
+        double clusterMass = 2 * Math.PI * spread * spread;
+        double background = BACKGROUND * size * size;
+        while (true) {
+            double x;
+            double y;
+            if (centres == 0 || random.nextDouble() * (background + centres * clusterMass) < background) {
+                x = random.nextDouble() * size;
+                y = random.nextDouble() * size;
+            } else {
+                int centre = 2 * random.nextInt(centres);
+                x = clusters[centre] + random.nextGaussian() * spread;
+                y = clusters[centre + 1] + random.nextGaussian() * spread;
+            }
+            if (x >= 0 && x < size && y >= 0 && y < size) {
+                return ((int) y >>> REGION_BITS) * regionsPerRow + ((int) x >>> REGION_BITS);
+            }
+        }
+    }
+
+    /**
+     * Counts the cells of a region that food can take.
+     *
+     * @param region      The region index.
+     * @param insectCells The cells of the insects.
+     * @return The number of cells of the region not taken by an insect.
+     */
+    private int capacity(int region, long[] insectCells) {
+        int x0 = (region % regionsPerRow) << REGION_BITS;
+        int y0 = (region / regionsPerRow) << REGION_BITS;
+        int width = Math.min(REGION_SIZE, size - x0);
+        int height = Math.min(REGION_SIZE, size - y0);
+        int capacity = width * height;
+        for (long cell : insectCells) {
+            int dx = (int) (cell % size) - x0;
+            int dy = (int) (cell / size) - y0;
+            if (dx >= 0 && dx < width && dy >= 0 && dy < height) {
+                capacity--;
+            }
+        }
+        return capacity;
+    }
+
+    /**
+     * Picks a random cell not taken by an insect placed before.
+     *
+     * @param taken The cells of the insects placed so far.
+     * @param count The number of insects placed so far.
+     * @return The cell index.
+     */
+    private long randomFreeCell(long[] taken, int count) {
+        long cells = (long) size * size;
+        while (true) {
+            // boards numbered by an int keep drawing ints, so their seeds still give the same files
+            long cell = cells <= Integer.MAX_VALUE ? random.nextInt((int) cells) : random.nextLong(cells);
+            boolean free = true;
+            for (int i = 0; i < count && free; i++) {
+                free = taken[i] != cell;
+            }
+            if (free) {
+                return cell;
+            }
+        }
+    }
+
+    /**
+     * Draws the amount of a food point, uniform or log-uniform between 1 and the largest amount.
+     *
+     * @return The amount of food.
+     */
+    private int amount() {
+        if (!skewed) {
+            return 1 + random.nextInt(maxAmount);
+        }
+        return (int) Math.min(maxAmount, Math.max(1, Math.exp(random.nextDouble() * Math.log(maxAmount + 1.0))));
+    }
+}
+
+/**
+ * The compact binary formats of scenarios and results. Numbers are big-endian.
+ * A scenario starts with {@link #SCENARIO_MAGIC}, a version byte, and the board size, number of insects and
+ * number of food points as ints. Then comes one int per insect packing its color, type, x and y, and one
+ * record per food point holding the amount as an int and x and y as unsigned shorts.
+ * A result starts with {@link #RESULT_MAGIC}, a version byte and the number of insects as an int, followed by
+ * one record per insect: a byte packing color, type and direction, and the food collected as an int.
+ * A result whose count is {@link #ERROR} holds the error message as a length-prefixed string instead.
+ * The results of several scenarios are simply concatenated.
+ */
+class BinaryFormat {
+    static final int SCENARIO_MAGIC = 0x89495343;
+    static final int RESULT_MAGIC = 0x89495352;
+    static final byte VERSION = 1;
+    static final int SCENARIO_HEADER = 17;
+    static final int RESULT_HEADER = 9;
+    static final int INSECT_RECORD = 4;
+    static final int FOOD_RECORD = 8;
+    static final int RESULT_RECORD = 5;
+    static final int ERROR = -1;
+    private static final int COORDINATE_BITS = 14;
+    private static final int COORDINATE_MASK = (1 << COORDINATE_BITS) - 1;
+    static final int MAX_SIZE = COORDINATE_MASK;
+    private static final InsectColor[] COLORS = InsectColor.values();
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private BinaryFormat() {
+    }
+
+    /**
+     * Checks if the input starts with a binary scenario.
+     *
+     * @param input The input, read from its position.
+     * @return True if the input is a binary scenario; false otherwise.
+     */
+    static boolean isScenario(ByteBuffer input) {
+        return input.remaining() >= Integer.BYTES && input.getInt(input.position()) == SCENARIO_MAGIC;
+    }
+
+    /**
+     * Checks if the input starts with a binary result.
+     *
+     * @param input The input, read from its position.
+     * @return True if the input is a binary result; false otherwise.
+     */
+    static boolean isResult(ByteBuffer input) {
+        return input.remaining() >= Integer.BYTES && input.getInt(input.position()) == RESULT_MAGIC;
+    }
+
+    /**
+     * Skips the magic number and version of a binary scenario or result.
+     *
+     * @param input  The input, positioned at the magic number.
+     * @param header The size of the whole header, which must be available.
+     * @throws IOException if the header is cut short or has a version this reader does not know.
+     */
+    static void readVersion(ByteBuffer input, int header) throws IOException {
+        if (input.remaining() < header) {
+            throw new IOException("Truncated binary header");
+        }
+        input.getInt();
+        byte version = input.get();
+        if (version != VERSION) {
+            throw new IOException("Unsupported binary format version " + version);
+        }
+    }
+
+    /**
+     * Packs an insect into its scenario record.
+     *
+     * @param insect The insect.
+     * @return The packed color, type, x and y.
+     */
+    static int packInsect(Insect insect) {
+        EntityPosition position = insect.getEntityPosition();
+        return insect.getColor().ordinal() << 30 | typeCode(insect.getSpecies()) << 28
+                | position.getX() << COORDINATE_BITS | position.getY();
+    }
+
+    /**
+     * Gets the color of a packed insect.
+     *
+     * @param insect The packed insect.
+     * @return The color.
+     */
+    static InsectColor colorOf(int insect) {
+        return COLORS[insect >>> 30];
+    }
+
+    /**
+     * Gets the type code of a packed insect.
+     *
+     * @param insect The packed insect.
+     * @return The type code.
+     */
+    static int typeOf(int insect) {
+        return insect >>> 28 & 3;
+    }
+
+    /**
+     * Gets the x-coordinate of a packed insect.
+     *
+     * @param insect The packed insect.
+     * @return The x-coordinate.
+     */
+    static int xOf(int insect) {
+        return insect >>> COORDINATE_BITS & COORDINATE_MASK;
+    }
+
+    /**
+     * Gets the y-coordinate of a packed insect.
+     *
+     * @param insect The packed insect.
+     * @return The y-coordinate.
+     */
+    static int yOf(int insect) {
+        return insect & COORDINATE_MASK;
+    }
+
+    /**
+     * Gets the type code of a species.
+     *
+     * @param species The species.
+     * @return The code of the type.
+     * @throws IllegalArgumentException if the species was read from the species file.
+     */
+    static int typeCode(Species species) {
+        if (species.getCode() < 0) {
+            throw new IllegalArgumentException("Species " + species.getName() + " has no binary form");
+        }
+        return species.getCode();
+    }
+
+    /**
+     * Checks if every insect has a binary type code.
+     *
+     * @param insects The insects.
+     * @return True if none of the insects is of a species read from the species file.
+     */
+    static boolean canEncode(List<Insect> insects) {
+        for (Insect insect : insects) {
+            if (insect.getSpecies().getCode() < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Creates an insect of a type code.
+     *
+     * @param type     The type code.
+     * @param position The position of the insect.
+     * @param color    The color of the insect.
+     * @return The new insect.
+     * @throws InvalidInsectTypeException if the insect cannot be created.
+     */
+    static Insect createInsect(int type, EntityPosition position, InsectColor color)
+            throws InvalidInsectTypeException {
+        return Species.ofCode(type).create(position, color);
+    }
+
+    /**
+     * Packs the result of an insect into its record byte.
+     *
+     * @param color     The color of the insect.
+     * @param species   The species of the insect.
+     * @param direction The direction the insect moved in.
+     * @return The packed color, type and direction.
+     */
+    static byte packResult(InsectColor color, Species species, Direction direction) {
+        return (byte) (color.ordinal() << 5 | typeCode(species) << 3 | direction.ordinal());
+    }
+
+    /**
+     * Encodes a loaded scenario. Food points are written in cell order.
+     *
+     * @param board   The board holding the insects and food.
+     * @param insects The insects in input order.
+     * @return The encoded scenario, ready to be read.
+     * @throws IllegalArgumentException if the board is larger than {@link #MAX_SIZE} or an insect has no type code.
+     */
+    static ByteBuffer encodeScenario(Board board, List<Insect> insects) {
+        if (board.getSize() > MAX_SIZE) {
+            throw new IllegalArgumentException("Boards larger than " + MAX_SIZE + " have no binary form");
+        }
+        int foodPoints = board.getFoodCount();
+        ByteBuffer output = ByteBuffer.allocate(SCENARIO_HEADER + insects.size() * INSECT_RECORD
+                + foodPoints * FOOD_RECORD);
+        output.putInt(SCENARIO_MAGIC).put(VERSION);
+        output.putInt(board.getSize()).putInt(insects.size()).putInt(foodPoints);
+        for (Insect insect : insects) {
+            output.putInt(packInsect(insect));
+        }
+        for (long index = board.nextOccupied(0); index >= 0; index = board.nextOccupied(index + 1)) {
+            if (board.getOccupant(index) == Board.FOOD) {
+                output.putInt(board.getFood(index));
+                output.putShort((short) board.xOf(index));
+                output.putShort((short) board.yOf(index));
+            }
+        }
+        return output.flip();
+    }
+
+    /**
+     * Writes a binary scenario in the text format.
+     *
+     * @param input  The binary scenario, positioned at its magic number.
+     * @param writer The writer receiving the text.
+     * @throws IOException if the scenario is cut short or the text cannot be written.
+     */
+    static void writeScenarioText(ByteBuffer input, ResultWriter writer) throws IOException {
+        readVersion(input, SCENARIO_HEADER);
+        int insects = input.getInt(input.position() + Integer.BYTES);
+        int foodPoints = input.getInt(input.position() + 2 * Integer.BYTES);
+        for (int i = 0; i < 3; i++) {
+            writer.writeNumber(input.getInt());
+            writer.writeLineSeparator();
+        }
+        if (insects < 0 || foodPoints < 0
+                || input.remaining() != (long) insects * INSECT_RECORD + (long) foodPoints * FOOD_RECORD) {
+            throw new IOException("Truncated binary scenario");
+        }
+        for (int i = 0; i < insects; i++) {
+            int insect = input.getInt();
+            writer.write(InsectColor.toString(colorOf(insect)) + " " + Species.ofCode(typeOf(insect)).getName() + " ");
+            writer.writeNumber(yOf(insect));
+            writer.write(" ");
+            writer.writeNumber(xOf(insect));
+            writer.writeLineSeparator();
+        }
+        for (int i = 0; i < foodPoints; i++) {
+            int amount = input.getInt();
+            int x = Short.toUnsignedInt(input.getShort());
+            int y = Short.toUnsignedInt(input.getShort());
+            writer.writeNumber(amount);
+            writer.write(" ");
+            writer.writeNumber(y);
+            writer.write(" ");
+            writer.writeNumber(x);
+            writer.writeLineSeparator();
+        }
+    }
+
+    /**
+     * Writes the next binary scenario result in the text format.
+     *
+     * @param input  The binary results, positioned at the magic number of a result.
+     * @param writer The writer receiving the text.
+     * @throws IOException if the result is cut short or the text cannot be written.
+     */
+    static void writeResultText(ByteBuffer input, ResultWriter writer) throws IOException {
+        if (!isResult(input)) {
+            throw new IOException("Not a binary result");
+        }
+        readVersion(input, RESULT_HEADER);
+        int count = input.getInt();
+        if (count == ERROR) {
+            if (input.remaining() < Integer.BYTES || input.remaining() - Integer.BYTES < input.getInt(input.position())) {
+                throw new IOException("Truncated binary result");
+            }
+            byte[] message = new byte[input.getInt()];
+            input.get(message);
+            writer.write(message);
+        } else {
+            if (count < 0 || input.remaining() < (long) count * RESULT_RECORD) {
+                throw new IOException("Truncated binary result");
+            }
+            for (int i = 0; i < count; i++) {
+                int result = input.get();
+                writer.writeResult(COLORS[result >>> 5 & 3], Species.ofCode(result >>> 3 & 3), DIRECTIONS[result & 7],
+                        input.getInt());
+            }
+        }
+        writer.endScenario();
+    }
+}
+
+/**
+ * Timers for the phases of a run and counters of the work done, summed over all scenarios of the process.
+ * Metrics are switched on by the {@code insects.metrics} system property, set to {@code json} or {@code kv};
+ * they are then printed in that format to standard error when the process exits, and can be read at any time
+ * through {@link #snapshot()}. The switch is a constant, so when it is off the JIT removes every timer and
+ * counter call and the run pays nothing for them.
+ */
+final class Metrics {
+    static final boolean ENABLED = System.getProperty("insects.metrics") != null;
+    private static final LongAdder[] PHASE_NANOS = adders(Phase.values().length);
+    private static final LongAdder[] PHASE_CALLS = adders(Phase.values().length);
+    private static final LongAdder[] COUNTERS = adders(Counter.values().length);
+    private static final ThreadLocal<Tally> CAPTURED = new ThreadLocal<>();
+
+    /**
+     * Metrics recorded by one thread while it {@link #capture() captures}, held back from the totals until
+     * they are {@link #commit(Tally) committed}, so work that may be thrown away is only counted if it is used.
+     */
+    static final class Tally {
+        private final long[] phaseNanos = new long[Phase.values().length];
+        private final long[] phaseCalls = new long[Phase.values().length];
+        private final long[] counters = new long[Counter.values().length];
+    }
+
+    /**
+     * The timed phases of a run.
+     */
+    enum Phase {
+        READ("readFileData"),
+        INSECTS("createInsectCollectionAndAddToBoard"),
+        FOOD("addFoodToBoard"),
+        SCORING("scoring"),
+        TRAVEL("travel");
+
+        private final String key;
+
+        /**
+         * Constructs a phase.
+         *
+         * @param key The name the phase is reported under.
+         */
+        Phase(String key) {
+            this.key = key;
+        }
+
+        /**
+         * Gets the name the phase is reported under.
+         *
+         * @return The name of the phase.
+         */
+        String getKey() {
+            return key;
+        }
+    }
+
+    /**
+     * The counted events of a run.
+     */
+    enum Counter {
+        /** Cells covered by the rays of the board queries, however they are answered. */
+        CELLS_SCANNED("cellsScanned"),
+        /** Cells actually read by those queries, plus one per line index query answering them instead. */
+        BOARD_LOOKUPS("boardLookups"),
+        FOOD_REMOVED("foodRemoved"),
+        INSECTS_BLOCKED("insectsBlocked");
+
+        private final String key;
+
+        /**
+         * Constructs a counter.
+         *
+         * @param key The name the counter is reported under.
+         */
+        Counter(String key) {
+            this.key = key;
+        }
+
+        /**
+         * Gets the name the counter is reported under.
+         *
+         * @return The name of the counter.
+         */
+        String getKey() {
+            return key;
+        }
+    }
+
+    static {
+        if (ENABLED) {
+            boolean json = "json".equals(System.getProperty("insects.metrics"));
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> System.err.println(json ? toJson() : toKeyValue())));
+        }
+    }
+
+    private Metrics() {
+    }
+
+    /**
+     * Creates zeroed adders.
+     *
+     * @param count The number of adders.
+     * @return The adders.
+     */
+    private static LongAdder[] adders(int count) {
+        LongAdder[] adders = new LongAdder[count];
+        for (int i = 0; i < count; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    /**
+     * Starts timing a phase.
+     *
+     * @return The start time to pass to {@link #stop(Phase, long)}, or zero when metrics are off.
+     */
+    static long start() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Stops timing a phase and adds the elapsed time to it.
+     *
+     * @param phase The phase.
+     * @param start The time returned by {@link #start()}.
+     */
+    static void stop(Phase phase, long start) {
+        if (ENABLED) {
+            Tally tally = CAPTURED.get();
+            if (tally != null) {
+                tally.phaseNanos[phase.ordinal()] += System.nanoTime() - start;
+                tally.phaseCalls[phase.ordinal()]++;
+                return;
+            }
+            PHASE_NANOS[phase.ordinal()].add(System.nanoTime() - start);
+            PHASE_CALLS[phase.ordinal()].increment();
+        }
+    }
+
+    /**
+     * Adds to a counter.
+     *
+     * @param counter The counter.
+     * @param amount  The amount to add.
+     */
+    static void count(Counter counter, long amount) {
+        if (ENABLED) {
+            Tally tally = CAPTURED.get();
+            if (tally != null) {
+                tally.counters[counter.ordinal()] += amount;
+                return;
+            }
+            COUNTERS[counter.ordinal()].add(amount);
+        }
+    }
+
+    /**
+     * Starts holding back what the current thread records, until {@link #release()}.
+     *
+     * @return The tally receiving the metrics, or null when metrics are off.
+     */
+    static Tally capture() {
+        if (!ENABLED) {
+            return null;
+        }
+        Tally tally = new Tally();
+        CAPTURED.set(tally);
+        return tally;
+    }
+
+    /**
+     * Stops holding back what the current thread records; later metrics go to the totals again.
+     */
+    static void release() {
+        if (ENABLED) {
+            CAPTURED.remove();
+        }
+    }
+
+    /**
+     * Adds held back metrics to the totals.
+     *
+     * @param tally The tally returned by {@link #capture()}, or null when metrics are off.
+     */
+    static void commit(Tally tally) {
+        if (tally == null) {
+            return;
+        }
+        for (int i = 0; i < tally.phaseNanos.length; i++) {
+            PHASE_NANOS[i].add(tally.phaseNanos[i]);
+            PHASE_CALLS[i].add(tally.phaseCalls[i]);
+        }
+        for (int i = 0; i < tally.counters.length; i++) {
+            COUNTERS[i].add(tally.counters[i]);
+        }
+    }
+
+    /**
+     * Gets the total time spent in a phase.
+     *
+     * @param phase The phase.
+     * @return The time in nanoseconds.
+     */
+    static long nanos(Phase phase) {
+        return PHASE_NANOS[phase.ordinal()].sum();
+    }
+
+    /**
+     * Gets the number of times a phase was timed.
+     *
+     * @param phase The phase.
+     * @return The number of timed calls.
+     */
+    static long calls(Phase phase) {
+        return PHASE_CALLS[phase.ordinal()].sum();
+    }
+
+    /**
+     * Gets the value of a counter.
+     *
+     * @param counter The counter.
+     * @return The counted amount.
+     */
+    static long count(Counter counter) {
+        return COUNTERS[counter.ordinal()].sum();
+    }
+
+    /**
+     * Gets all metrics under their reported names: {@code <phase>.nanos} and {@code <phase>.calls}
+     * for every phase, then every counter.
+     *
+     * @return The current values, in a stable order.
+     */
+    static Map<String, Long> snapshot() {
+        Map<String, Long> values = new LinkedHashMap<>();
+        for (Phase phase : Phase.values()) {
+            values.put(phase.getKey() + ".nanos", nanos(phase));
+            values.put(phase.getKey() + ".calls", calls(phase));
+        }
+        for (Counter counter : Counter.values()) {
+            values.put(counter.getKey(), count(counter));
+        }
+        return values;
+    }
+
+    /**
+     * Resets every timer and counter to zero.
+     */
+    static void reset() {
+        for (LongAdder adder : PHASE_NANOS) {
+            adder.reset();
+        }
+        for (LongAdder adder : PHASE_CALLS) {
+            adder.reset();
+        }
+        for (LongAdder adder : COUNTERS) {
+            adder.reset();
+        }
+    }
+
+    /**
+     * Formats the metrics as one {@code key=value} line each.
+     *
+     * @return The formatted metrics.
+     */
+    static String toKeyValue() {
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, Long> entry : snapshot().entrySet()) {
+            text.append(entry.getKey()).append('=').append(entry.getValue()).append(System.lineSeparator());
+        }
+        return text.toString().trim();
+    }
+
+    /**
+     * Formats the metrics as a JSON object with the phases and the counters.
+     *
+     * @return The formatted metrics.
+     */
+    static String toJson() {
+        StringBuilder json = new StringBuilder("{\"phases\":{");
+        for (Phase phase : Phase.values()) {
+            if (phase.ordinal() > 0) {
+                json.append(',');
+            }
+            json.append('"').append(phase.getKey()).append("\":{\"nanos\":").append(nanos(phase))
+                    .append(",\"calls\":").append(calls(phase)).append('}');
+        }
+        json.append("},\"counters\":{");
+        for (Counter counter : Counter.values()) {
+            if (counter.ordinal() > 0) {
+                json.append(',');
+            }
+            json.append('"').append(counter.getKey()).append("\":").append(count(counter));
+        }
+        return json.append("}}").toString();
+    }
+}
+
+/**
+ * Entry point for the flight recorder events. Loading an event class initializes the recorder, which costs more
+ * than a whole small scenario, so the events are only touched once a recording has been started (from the
+ * command line or later through {@code jcmd JFR.start}).
+ */
+final class FlightEvents {
+    private FlightEvents() {
+    }
+
+    /**
+     * Checks if a flight recording has been started in this JVM.
+     *
+     * @return True if events may be recorded.
+     */
+    static boolean isRecording() {
+        return FlightRecorder.isInitialized();
+    }
+
+    /**
+     * Starts timing a move if a flight recording is running.
+     *
+     * @return The started event, or null if nothing is being recorded.
+     */
+    static InsectMoveEvent beginMove() {
+        if (!isRecording()) {
+            return null;
+        }
+        InsectMoveEvent event = new InsectMoveEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Fills in and commits an event started by {@link #beginMove()} once the move is known.
+     *
+     * @param event         The started event, or null if nothing is being recorded.
+     * @param insect        The insect that moved.
+     * @param x             The x-coordinate the insect started from.
+     * @param y             The y-coordinate the insect started from.
+     * @param direction     The chosen direction.
+     * @param foodCollected The food collected on the way.
+     */
+    static void endMove(InsectMoveEvent event, Insect insect, int x, int y, Direction direction, int foodCollected) {
+        if (event == null) {
+            return;
+        }
+        event.end();
+        commitMove(event, insect, x, y, direction, foodCollected);
+    }
+
+    /**
+     * Stops timing a move whose outcome is not final yet; {@link #commitMove} records it once it is.
+     *
+     * @param event The started event, or null if nothing is being recorded.
+     */
+    static void stopMove(InsectMoveEvent event) {
+        if (event != null) {
+            event.end();
+        }
+    }
+
+    /**
+     * Fills in and commits an event stopped by {@link #stopMove} once the move is applied.
+     *
+     * @param event         The stopped event, or null if nothing is being recorded.
+     * @param insect        The insect that moved.
+     * @param x             The x-coordinate the insect started from.
+     * @param y             The y-coordinate the insect started from.
+     * @param direction     The chosen direction.
+     * @param foodCollected The food collected on the way.
+     */
+    static void commitMove(InsectMoveEvent event, Insect insect, int x, int y, Direction direction,
+                           int foodCollected) {
+        if (event == null || !event.shouldCommit()) {
+            return;
+        }
+        event.insectType = insect.getSpecies().getName();
+        event.color = InsectColor.toString(insect.getColor());
+        event.x = x;
+        event.y = y;
+        event.direction = direction.getTextRepresentation();
+        StringBuilder scores = new StringBuilder();
+        int directions = insect.getMovingDirections();
+        for (int i = 0; i < Direction.COUNT; i++) {
+            Direction candidate = Direction.ofOrdinal(i);
+            if ((directions & candidate.mask()) != 0) {
+                if (scores.length() > 0) {
+                    scores.append(' ');
+                }
+                scores.append(candidate.getTextRepresentation()).append('=')
+                        .append(insect.getDirectionScore(candidate));
+            }
+        }
+        event.scores = scores.toString();
+        event.foodCollected = foodCollected;
+        event.commit();
+    }
+
+    /**
+     * Records a cell gaining or losing an entity if a flight recording is running.
+     *
+     * @param action The change, either "add" or "remove".
+     * @param insect The insect in the cell, or null if the cell holds food.
+     * @param x      The x-coordinate of the cell.
+     * @param y      The y-coordinate of the cell.
+     * @param food   The food in the cell.
+     */
+    static void boardMutation(String action, Insect insect, int x, int y, int food) {
+        if (!isRecording()) {
+            return;
+        }
+        BoardMutationEvent event = new BoardMutationEvent();
+        if (!event.shouldCommit()) {
+            return;
+        }
+        event.action = action;
+        if (insect != null) {
+            event.entity = insect.getSpecies().getName();
+            event.color = InsectColor.toString(insect.getColor());
+        } else {
+            event.entity = "Food";
+            event.food = food;
+        }
+        event.x = x;
+        event.y = y;
+        event.commit();
+    }
+}
+
+/**
+ * Flight recorder event for one insect decision: the scores of every candidate direction, the chosen one and
+ * the food it brought. The event spans scoring and travel, so its duration is the latency of the move.
+ */
+@Name("insects.InsectMove")
+@Label("Insect Move")
+@Category("Insects")
+final class InsectMoveEvent extends Event {
+    @Label("Insect Type")
+    String insectType;
+
+    @Label("Color")
+    String color;
+
+    @Label("X")
+    int x;
+
+    @Label("Y")
+    int y;
+
+    @Label("Direction")
+    String direction;
+
+    @Label("Direction Scores")
+    @Description("The visible food of every candidate direction, highest priority first")
+    String scores;
+
+    @Label("Food Collected")
+    int foodCollected;
+}
+
+/**
+ * Flight recorder event for a cell of the board gaining or losing an entity.
+ */
+@Name("insects.BoardMutation")
+@Label("Board Mutation")
+@Category("Insects")
+final class BoardMutationEvent extends Event {
+    @Label("Action")
+    @Description("Either add or remove")
+    String action;
+
+    @Label("Entity")
+    @Description("The insect type, or Food")
+    String entity;
+
+    @Label("Color")
+    String color;
+
+    @Label("X")
+    int x;
+
+    @Label("Y")
+    int y;
+
+    @Label("Food")
+    int food;
+}
+
+/**
+ * Streams one JSON line per resolved move to a file or pipe, enabled with {@code -Dinsects.events=<path>}.
+ * An event holds the scenario and round, the insect's color, type and starting cell, the scores of all its
+ * directions, the chosen direction, the cells passed, the food collected and whether an enemy blocked it.
+ * Simulation threads encode their events and hand them to a queue of {@code -Dinsects.eventsBuffer} events
+ * (1024 by default); a writer thread drains it, writing whatever has queued up in one go. When the reader of
+ * the stream falls behind and the queue is full, the simulation waits, so a slow consumer throttles the run
+ * instead of growing memory. Scenarios are numbered in the order they start.
+ */
+final class MoveEvents {
+    private static final String PATH = System.getProperty("insects.events");
+    private static final int CAPACITY = Integer.getInteger("insects.eventsBuffer", 1024);
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final byte[] END = new byte[0];
+    private static final MoveEvents STREAM = PATH == null ? null : open(Paths.get(PATH));
+    private static final AtomicInteger SCENARIOS = new AtomicInteger();
+    private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(Math.max(1, CAPACITY));
+    private final WritableByteChannel channel;
+    private final Thread writer;
+    private volatile boolean closed;
+
+    /**
+     * Constructs a stream and starts its writer thread.
+     *
+     * @param channel The channel receiving the events; it is closed with the stream.
+     */
+    private MoveEvents(WritableByteChannel channel) {
+        this.channel = channel;
+        this.writer = new Thread(this::drain, "move-events");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Opens the configured stream, to be closed when the JVM stops.
+     *
+     * @param path The file or pipe to write.
+     * @return The stream, or null if the file cannot be opened.
+     */
+    private static MoveEvents open(Path path) {
+        try {
+            MoveEvents stream = new MoveEvents(FileChannel.open(path, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE));
+            Runtime.getRuntime().addShutdownHook(new Thread(stream::close));
+            return stream;
+        } catch (IOException e) {
+            System.err.println("Failed to open move event stream: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Checks if move events are streamed.
+     *
+     * @return True if a stream is configured and open.
+     */
+    static boolean isEnabled() {
+        return STREAM != null;
+    }
+
+    /**
+     * Gets the number of the next scenario to start.
+     *
+     * @return The scenario number, counting from 0.
+     */
+    static int nextScenario() {
+        return SCENARIOS.getAndIncrement();
+    }
+
+    /**
+     * Streams a resolved move, waiting while the queue is full.
+     *
+     * @param scenario  The number of the scenario.
+     * @param round     The round the move belongs to, counting from 1.
+     * @param insect    The insect that moved, holding the scores of its last look.
+     * @param x         The x-coordinate the insect started from.
+     * @param y         The y-coordinate the insect started from.
+     * @param direction The chosen direction.
+     * @param cells     The number of cells passed.
+     * @param food      The food collected.
+     * @param blocked   True if an insect of another color ended the path.
+     */
+    static void emit(int scenario, int round, Insect insect, int x, int y, Direction direction, int cells,
+                     int food, boolean blocked) {
+        if (STREAM == null || STREAM.closed) {
+            return;
+        }
+        StringBuilder json = new StringBuilder(256);
+        json.append("{\"scenario\":").append(scenario).append(",\"round\":").append(round)
+                .append(",\"color\":\"").append(InsectColor.toString(insect.getColor()))
+                .append("\",\"type\":");
+        appendString(json, insect.getSpecies().getName());
+        json.append(",\"x\":").append(x).append(",\"y\":").append(y).append(",\"scores\":{");
+        int directions = insect.getMovingDirections();
+        for (int i = 0; i < Direction.COUNT; i++) {
+            Direction candidate = Direction.ofOrdinal(i);
+            if ((directions & candidate.mask()) != 0) {
+                if (json.charAt(json.length() - 1) != '{') {
+                    json.append(',');
+                }
+                json.append('"').append(candidate.getTextRepresentation()).append("\":")
+                        .append(insect.getDirectionScore(candidate));
+            }
+        }
+        json.append("},\"direction\":\"").append(direction.getTextRepresentation())
+                .append("\",\"cells\":").append(cells).append(",\"food\":").append(food)
+                .append(",\"blocked\":").append(blocked).append("}\n");
+        try {
+            STREAM.queue.put(json.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Appends a string as a JSON string literal. Names of species come from the species file, so quotes,
+     * backslashes and control characters are escaped.
+     *
+     * @param json The JSON being built.
+     * @param text The string.
+     */
+    private static void appendString(StringBuilder json, String text) {
+        json.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+
+    /**
+     * Writes queued events until the stream is closed. After a write fails, for instance because the reader
+     * of a pipe went away, events are still taken from the queue but dropped, so the simulation never stalls.
+     */
+    private void drain() {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        List<byte[]> batch = new ArrayList<>();
+        boolean failed = false;
+        try {
+            while (true) {
+                batch.add(queue.take());
+                queue.drainTo(batch);
+                boolean end = false;
+                for (byte[] event : batch) {
+                    if (event == END) {
+                        end = true;
+                        break;
+                    }
+                    if (failed) {
+                        continue;
+                    }
+                    if (buffer.remaining() < event.length) {
+                        failed = !flush(buffer);
+                    }
+                    if (event.length > buffer.capacity()) {
+                        // flush() flips its buffer, so the event is handed over as if just written
+                        ByteBuffer large = ByteBuffer.wrap(event);
+                        large.position(event.length);
+                        failed |= !flush(large);
+                    } else {
+                        buffer.put(event);
+                    }
+                }
+                batch.clear();
+                if (!failed) {
+                    failed = !flush(buffer);
+                }
+                if (end) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writes the buffered bytes to the channel.
+     *
+     * @param buffer The buffer, in write mode; it is empty afterwards.
+     * @return False if the channel failed.
+     */
+    private boolean flush(ByteBuffer buffer) {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            return true;
+        } catch (IOException e) {
+            System.err.println("Move event stream stopped: " + e.getMessage());
+            return false;
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Writes the events still queued and closes the channel. Events emitted afterwards are dropped.
+     */
+    private void close() {
+        closed = true;
+        try {
+            queue.put(END);
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Failed to close move event stream: " + e.getMessage());
+        }
+    }
+}
+
+/**
+ * Runs independent scenarios concurrently on a {@link ForkJoinPool}. Every scenario builds its own board,
+ * so the only shared state is the read-only lookup tables.
+ */
+class ScenarioExecutor implements AutoCloseable {
+    private final ForkJoinPool pool;
+    private final boolean binaryResults;
+
+    /**
+     * Constructs an executor running at most the given number of scenarios at once.
+     *
+     * @param parallelism   The number of worker threads.
+     * @param binaryResults True to encode results in the binary format; false for text.
+     */
+    ScenarioExecutor(int parallelism, boolean binaryResults) {
+        this.pool = new ForkJoinPool(parallelism);
+        this.binaryResults = binaryResults;
+    }
+
+    /**
+     * Checks if this executor encodes results in the binary format.
+     *
+     * @return True for binary results; false for text.
+     */
+    boolean isBinaryResults() {
+        return binaryResults;
+    }
+
+    /**
+     * Schedules a scenario whose result is kept in memory.
+     *
+     * @param source The source of the scenario lines.
+     * @return The future encoded result of the scenario.
+     */
+    Future<byte[]> submit(ScenarioSource source) {
+        return pool.submit(() -> {
+            ResultWriter writer = new ResultWriter(binaryResults);
+            Main.runScenario(source, writer);
+            return writer.toByteArray();
+        });
+    }
+
+    /**
+     * Schedules a scenario whose result is written to its own file.
+     *
+     * @param source     The source of the scenario lines.
+     * @param outputFile The file receiving the result.
+     * @return The future completion of the scenario.
+     */
+    Future<?> submit(ScenarioSource source, Path outputFile) {
+        return pool.submit(() -> {
+            try (ResultWriter writer = ResultWriter.open(outputFile, binaryResults)) {
+                Main.runScenario(source, writer);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Waits for a scheduled scenario, rethrowing its I/O failure.
+     *
+     * @param result The future of the scenario.
+     * @param <T>    The type of the result.
+     * @return The result of the scenario.
+     * @throws IOException if the scenario could not be read or written.
+     */
+    static <T> T await(Future<T> result) throws IOException {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Stops the worker threads once the scheduled scenarios are done.
+     */
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+}
+/**
+ * A long-running simulation service on the loopback interface. A scenario in the input format, or several
+ * separated by {@code ---} lines, is posted to {@value #PATH} and the response carries exactly the result
+ * that would have been written to the output file. Requests are served concurrently; every scenario gets its
+ * own {@code Main} instance and board, so requests never share simulation state.
+ */
+class SimulationServer implements AutoCloseable {
+    static final String PATH = "/simulate";
+    private final HttpServer server;
+    private final ExecutorService handlers;
+    private final ScenarioExecutor executor;
+
+    /**
+     * Constructs a server around a bound HTTP server.
+     *
+     * @param server   The HTTP server, not yet started.
+     * @param handlers The threads reading requests and writing responses.
+     * @param executor The executor running the scenarios.
+     */
+    private SimulationServer(HttpServer server, ExecutorService handlers, ScenarioExecutor executor) {
+        this.server = server;
+        this.handlers = handlers;
+        this.executor = executor;
+    }
+
+    /**
+     * Starts a server listening on the loopback interface.
+     *
+     * @param port          The port to listen on, or zero for any free port.
+     * @param parallelism   The number of scenarios simulated at once.
+     * @param binaryResults True to answer with binary results; false for text.
+     * @return The running server.
+     * @throws IOException if the port cannot be bound.
+     */
+    static SimulationServer start(int port, int parallelism, boolean binaryResults) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        ExecutorService handlers = Executors.newFixedThreadPool(parallelism);
+        SimulationServer simulation = new SimulationServer(server, handlers,
+                new ScenarioExecutor(parallelism, binaryResults));
+        server.createContext(PATH, simulation::handle);
+        server.setExecutor(handlers);
+        server.start();
+        return simulation;
+    }
+
+    /**
+     * Gets the address the server listens on.
+     *
+     * @return The bound address, with the actual port if zero was asked for.
+     */
+    InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    /**
+     * Answers one request: simulates the posted scenarios and sends their results. If any scenario cannot be
+     * read, the status is 400 and that scenario's result is a read error; the other results are still sent.
+     *
+     * @param exchange The request and its response.
+     * @throws IOException if the request cannot be read or the response cannot be sent.
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", "POST");
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body;
+            try (InputStream request = exchange.getRequestBody()) {
+                body = request.readAllBytes();
+            }
+            ResultWriter writer = new ResultWriter(executor.isBinaryResults());
+            int status = 200;
+            try {
+                if (Main.writeResults(Main.submitScenarios(ByteBuffer.wrap(body), executor), writer) > 0) {
+                    status = 400;
+                }
+            } catch (IOException | RuntimeException e) {
+                writer = new ResultWriter(false);
+                writer.write("Failed to read data file");
+                writer.writeLineSeparator();
+                status = 400;
+            }
+            byte[] response = writer.toByteArray();
+            exchange.getResponseHeaders().set("Content-Type", writer.isBinary()
+                    ? "application/octet-stream" : "text/plain; charset=" + Charset.defaultCharset().name());
+            exchange.sendResponseHeaders(status, response.length == 0 ? -1 : response.length);
+            if (response.length > 0) {
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(response);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops accepting requests, lets the ones in flight finish for up to a second, and stops the threads.
+     */
+    @Override
+    public void close() {
+        server.stop(1);
+        handlers.shutdown();
+        executor.close();
+    }
+}
+/**
+ * Resolves the moves of all insects of a scenario speculatively in parallel, with the same outcome as
+ * resolving them one by one in input order. Every insect first plans its move against the initial board;
+ * plans are then committed in order, and an insect whose scanned rays cross a cell changed by an earlier
+ * insect is planned again against the current board.
+ */
+class MoveScheduler {
+    private final Board board;
+    private final List<Insect> insects;
+    private final int scenario;
+
+    /**
+     * Constructs a scheduler for the insects of a board.
+     *
+     * @param board    The board the insects stand on.
+     * @param insects  The insects in input order.
+     * @param scenario The number of the scenario in {@link MoveEvents}.
+     */
+    MoveScheduler(Board board, List<Insect> insects, int scenario) {
+        this.board = board;
+        this.insects = insects;
+        this.scenario = scenario;
+    }
+
+    /**
+     * Checks if moves should be resolved in parallel, which only the {@code insects.parallelMoves} system
+     * property switches on. Scenarios hold at most {@code insects.maxInsects} insects, 16 by default, too few
+     * for the size of a scenario alone to make the planning threads worth starting.
+     *
+     * @return True if the scheduler should be used.
+     */
+    static boolean isEnabled() {
+        return Boolean.getBoolean("insects.parallelMoves");
+    }
+
+    /**
+     * Resolves the moves of all insects.
+     *
+     * @return The moves in input order.
+     */
+    Move[] resolve() {
+        Plan[] planned = new Plan[insects.size()];
+        IntStream.range(0, insects.size()).parallel().forEach(i -> planned[i] = plan(insects.get(i)));
+
+        ChangedCells changes = new ChangedCells(board.getSize());
+        Move[] moves = new Move[insects.size()];
+        for (int i = 0; i < insects.size(); i++) {
+            Insect insect = insects.get(i);
+            Plan plan = planned[i];
+            if (isStale(insect, changes)) {
+                plan = plan(insect);
+            }
+            Move move = plan.move;
+            EntityPosition position = insect.getEntityPosition();
+            Metrics.commit(plan.metrics);
+            FlightEvents.commitMove(plan.event, insect, position.getX(), position.getY(), move.getDirection(),
+                    move.getFoodCollected());
+            long start = Metrics.start();
+            boolean blocked = board.isBlocked(position.getX(), position.getY(), move.getDirection(), insect.step,
+                    move.getCellsTraversed());
+            if (blocked) {
+                Metrics.count(Metrics.Counter.INSECTS_BLOCKED, 1);
+            }
+            MoveEvents.emit(scenario, 1, insect, position.getX(), position.getY(), move.getDirection(),
+                    move.getCellsTraversed(), move.getFoodCollected(), blocked);
+            board.clearPath(position.getX(), position.getY(), move.getDirection(), insect.step,
+                    move.getCellsTraversed(), changes);
+            Metrics.stop(Metrics.Phase.TRAVEL, start);
+            moves[i] = move;
+        }
+        return moves;
+    }
+
+    /**
+     * A planned move with what planning it recorded, held back until the move is applied, since a plan that
+     * turns out stale is thrown away.
+     */
+    private static final class Plan {
+        private final Move move;
+        private final InsectMoveEvent event;
+        private final Metrics.Tally metrics;
+
+        /**
+         * Constructs a plan.
+         *
+         * @param move    The planned move.
+         * @param event   The stopped flight recorder event of the move, or null if nothing is being recorded.
+         * @param metrics The metrics of planning, or null when metrics are off.
+         */
+        private Plan(Move move, InsectMoveEvent event, Metrics.Tally metrics) {
+            this.move = move;
+            this.event = event;
+            this.metrics = metrics;
+        }
+    }
+
+    /**
+     * Plans the move of an insect against the current board without changing it. Nothing is recorded yet:
+     * the metrics and flight recorder event of the plan are kept with it for {@link #resolve()} to record.
+     *
+     * @param insect The insect to plan for.
+     * @return The planned move.
+     */
+    private Plan plan(Insect insect) {
+        EntityPosition position = insect.getEntityPosition();
+        Metrics.Tally metrics = Metrics.capture();
+        try {
+            InsectMoveEvent event = FlightEvents.beginMove();
+            long start = Metrics.start();
+            Direction direction = insect.getBestDirection(board.getBoardData(), board.getSize());
+            Metrics.stop(Metrics.Phase.SCORING, start);
+            start = Metrics.start();
+            int length = board.pathLength(position.getX(), position.getY(), direction, insect.step,
+                    insect.getBlockers());
+            int food = board.foodOnPath(position.getX(), position.getY(), direction, insect.step, length);
+            Metrics.stop(Metrics.Phase.TRAVEL, start);
+            FlightEvents.stopMove(event);
+            return new Plan(new Move(direction, food, length), event, metrics);
+        } finally {
+            Metrics.release();
+        }
+    }
+
+    /**
+     * Checks if any ray an insect scans crosses a cell changed since the plans were made.
+     *
+     * @param insect  The insect to check.
+     * @param changes The cells changed by the insects committed so far.
+     * @return True if the insect's plan may be out of date.
+     */
+    private boolean isStale(Insect insect, ChangedCells changes) {
+        EntityPosition position = insect.getEntityPosition();
+        for (int bits = insect.getMovingDirections(); bits != 0; bits &= bits - 1) {
+            Direction direction = Direction.ofOrdinal(Integer.numberOfTrailingZeros(bits));
+            if (changes.crossesRay(position.getX(), position.getY(), direction, insect.step)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
+
+/**
+ * Runs a scenario for several rounds instead of a single pass. In every round each insect still on the board,
+ * in input order, moves in its best direction and eats the food on its way like in a single pass. An insect
+ * stopped by an insect of another color dies; one reaching the border stays on the farthest free cell it passed
+ * and moves again next round. The run ends after the given number of rounds or once no food is left.
+ * Directions are scored from the board's {@link DirectionScoreCache}, which only adjusts the rays a move
+ * changed, so a round costs the moves themselves rather than a rescan of every ray.
+ * With a {@link Checkpoint} configured, the state between rounds is saved and an interrupted run resumes from it.
+ */
+class RoundEngine {
+    private Board board;
+    private final List<Insect> insects;
+    private final int rounds;
+    private final boolean[] alive;
+    private final Direction[] lastDirections;
+    private final int[] foodCollected;
+    private final int[] cellsTraversed;
+    private final int scenario;
+
+    /**
+     * Constructs an engine for the insects of a board.
+     *
+     * @param board    The board the insects stand on.
+     * @param insects  The insects in input order.
+     * @param rounds   The maximum number of rounds.
+     * @param scenario The number of the scenario in {@link MoveEvents}.
+     */
+    RoundEngine(Board board, List<Insect> insects, int rounds, int scenario) {
+        this.board = board;
+        this.insects = insects;
+        this.rounds = rounds;
+        this.scenario = scenario;
+        this.alive = new boolean[insects.size()];
+        this.lastDirections = new Direction[insects.size()];
+        this.foodCollected = new int[insects.size()];
+        this.cellsTraversed = new int[insects.size()];
+        Arrays.fill(alive, true);
+    }
+
+    /**
+     * Gets the number of rounds to run, set by the {@code insects.rounds} system property.
+     *
+     * @return The number of rounds; 1 for the classic single pass.
+     */
+    static int configuredRounds() {
+        return Integer.getInteger("insects.rounds", 1);
+    }
+
+    /**
+     * Checks if scenarios should run for several rounds.
+     *
+     * @return True if more than one round is configured.
+     */
+    static boolean isEnabled() {
+        return configuredRounds() > 1;
+    }
+
+    /**
+     * Runs the rounds, checkpointed if a checkpoint directory is configured. Runs the checkpoint format cannot
+     * hold, on boards above {@link BinaryFormat#MAX_SIZE} or with configured species, are run without one and
+     * reported on standard error.
+     *
+     * @return For every insect in input order, its last direction with the food collected and cells passed
+     *         over all rounds.
+     */
+    Move[] run() {
+        Checkpoint checkpoint = null;
+        if (Checkpoint.isEnabled()) {
+            if (board.getSize() > BinaryFormat.MAX_SIZE) {
+                System.err.println("Checkpoint skipped: board size " + board.getSize() + " is above "
+                        + BinaryFormat.MAX_SIZE);
+            } else if (!BinaryFormat.canEncode(insects)) {
+                System.err.println("Checkpoint skipped: configured species have no binary form");
+            } else {
+                try {
+                    checkpoint = Checkpoint.open(board, insects);
+                } catch (IOException e) {
+                    System.err.println("Checkpoint skipped: cannot create directory " + Checkpoint.getDirectory()
+                            + ": " + e);
+                }
+            }
+        }
+        return run(checkpoint);
+    }
+
+    /**
+     * Runs the rounds, resuming from and saving to the given checkpoint. A checkpoint that cannot be read,
+     * written or removed is reported on standard error and dropped; the rounds go on without it.
+     *
+     * @param checkpoint The checkpoint of this scenario, closed when the run ends, or null to run without one.
+     * @return For every insect in input order, its last direction with the food collected and cells passed
+     *         over all rounds.
+     */
+    Move[] run(Checkpoint checkpoint) {
+        try {
+            int round = 0;
+            if (checkpoint != null) {
+                try {
+                    ByteBuffer state = checkpoint.read();
+                    if (state != null) {
+                        round = Math.max(0, restore(state, checkpoint.getFingerprint()));
+                    }
+                } catch (IOException e) {
+                    checkpoint = drop(checkpoint, e);
+                }
+            }
+            for (; round < rounds && board.getFoodCount() > 0; round++) {
+                if (checkpoint != null && checkpoint.isDue(round)) {
+                    try {
+                        checkpoint.write(save(round, checkpoint.getFingerprint()));
+                    } catch (IOException e) {
+                        checkpoint = drop(checkpoint, e);
+                    }
+                }
+                boolean moved = false;
+                for (int i = 0; i < insects.size(); i++) {
+                    if (alive[i]) {
+                        move(i, round);
+                        moved = true;
+                    }
+                }
+                if (!moved) {
+                    break;
+                }
+            }
+            if (checkpoint != null) {
+                try {
+                    checkpoint.delete();
+                } catch (IOException e) {
+                    checkpoint = drop(checkpoint, e);
+                }
+            }
+        } finally {
+            if (checkpoint != null) {
+                checkpoint.close();
+            }
+        }
+        Move[] moves = new Move[insects.size()];
+        for (int i = 0; i < insects.size(); i++) {
+            moves[i] = new Move(lastDirections[i], foodCollected[i], cellsTraversed[i]);
+        }
+        return moves;
+    }
+
+    /**
+     * Reports a failed checkpoint on standard error and closes it, so the run goes on without it.
+     *
+     * @param checkpoint The checkpoint that failed.
+     * @param e          The failure.
+     * @return Null, to replace the checkpoint of the run.
+     */
+    private static Checkpoint drop(Checkpoint checkpoint, IOException e) {
+        System.err.println("Checkpoint stopped: " + e);
+        checkpoint.close();
+        return null;
+    }
+
+    /**
+     * Encodes the state between two rounds: the board size, the rounds done, every insect with its position,
+     * whether it is alive, its last direction and its totals, then every food point left.
+     *
+     * @param round       The number of rounds done.
+     * @param fingerprint The CRC of the initial board.
+     * @return The encoded state, with room for a CRC after its limit.
+     */
+    ByteBuffer save(int round, int fingerprint) {
+        int foodPoints = board.getFoodCount();
+        int length = Checkpoint.HEADER + insects.size() * Checkpoint.INSECT_RECORD
+                + foodPoints * BinaryFormat.FOOD_RECORD;
+        ByteBuffer state = ByteBuffer.allocate(length + Integer.BYTES);
+        state.putInt(Checkpoint.MAGIC).put(Checkpoint.VERSION).putInt(fingerprint);
+        state.putInt(board.getSize()).putInt(round).putInt(insects.size()).putInt(foodPoints);
+        for (int i = 0; i < insects.size(); i++) {
+            state.putInt(BinaryFormat.packInsect(insects.get(i)));
+            state.put((byte) (alive[i] ? 1 : 0));
+            state.put((byte) (lastDirections[i] == null ? -1 : lastDirections[i].ordinal()));
+            state.putInt(foodCollected[i]).putInt(cellsTraversed[i]);
+        }
+        for (long index = board.nextOccupied(0); index >= 0; index = board.nextOccupied(index + 1)) {
+            if (board.getOccupant(index) == Board.FOOD) {
+                state.putInt(board.getFood(index));
+                state.putShort((short) board.xOf(index));
+                state.putShort((short) board.yOf(index));
+            }
+        }
+        return state.flip();
+    }
+
+    /**
+     * Rebuilds the board and the totals from a saved state, in time proportional to the state, on fresh storage of
+     * the same kind as the current board. Nothing is changed unless the state belongs to this scenario and fits
+     * this run.
+     *
+     * @param state       The state, checked against its CRC.
+     * @param fingerprint The CRC of the initial board.
+     * @return The number of rounds done, or -1 if the state cannot be resumed.
+     */
+    private int restore(ByteBuffer state, int fingerprint) {
+        if (state.remaining() < Checkpoint.HEADER || state.getInt() != Checkpoint.MAGIC
+                || state.get() != Checkpoint.VERSION || state.getInt() != fingerprint) {
+            return -1;
+        }
+        int size = state.getInt();
+        int round = state.getInt();
+        int count = state.getInt();
+        int foodPoints = state.getInt();
+        if (size != board.getSize() || count != insects.size() || round < 0 || round > rounds || foodPoints < 0
+                || state.remaining() != (long) count * Checkpoint.INSECT_RECORD
+                        + (long) foodPoints * BinaryFormat.FOOD_RECORD) {
+            return -1;
+        }
+        for (int i = 0; i < count; i++) {
+            int insect = state.getInt(state.position() + i * Checkpoint.INSECT_RECORD);
+            if (BinaryFormat.colorOf(insect) != insects.get(i).getColor()
+                    || BinaryFormat.typeOf(insect) != insects.get(i).getSpecies().getCode()) {
+                return -1;
+            }
+        }
+        Board restored = board.blank();
+        try {
+            for (int i = 0; i < count; i++) {
+                int insect = state.getInt();
+                alive[i] = state.get() != 0;
+                byte direction = state.get();
+                lastDirections[i] = direction < 0 ? null : Direction.ofOrdinal(direction);
+                foodCollected[i] = state.getInt();
+                cellsTraversed[i] = state.getInt();
+                if (alive[i]) {
+                    restored.placeInsect(insects.get(i), BinaryFormat.xOf(insect), BinaryFormat.yOf(insect));
+                }
+            }
+            for (int i = 0; i < foodPoints; i++) {
+                int amount = state.getInt();
+                int x = state.getShort() & 0xFFFF;
+                int y = state.getShort() & 0xFFFF;
+                restored.addFood(x, y, amount);
+            }
+        } catch (TwoEntitiesOnSamePositionException e) {
+            throw new IllegalStateException("Checkpoint passed its CRC but does not fit its board", e);
+        }
+        board = restored;
+        return round;
+    }
+
+    /**
+     * Moves one insect.
+     *
+     * @param i     The index of the insect.
+     * @param round The number of rounds done before this one.
+     */
+    private void move(int i, int round) {
+        Insect insect = insects.get(i);
+        EntityPosition position = insect.getEntityPosition();
+        int x = position.getX();
+        int y = position.getY();
+        int step = insect.step;
+        InsectMoveEvent event = FlightEvents.beginMove();
+        long start = Metrics.start();
+        Direction direction = insect.getBestDirection(board.getBoardData(), board.getSize());
+        Metrics.stop(Metrics.Phase.SCORING, start);
+        start = Metrics.start();
+        int length = board.pathLength(x, y, direction, step, insect.getBlockers());
+        boolean blocked = board.isBlocked(x, y, direction, step, length);
+        int food = board.foodOnPath(x, y, direction, step, length);
+        foodCollected[i] += food;
+        cellsTraversed[i] += length;
+        lastDirections[i] = direction;
+        board.clearPath(x, y, direction, step, length, null);
+        FlightEvents.endMove(event, insect, x, y, direction, food);
+        MoveEvents.emit(scenario, round + 1, insect, x, y, direction, length, food, blocked);
+        if (blocked) {
+            Metrics.count(Metrics.Counter.INSECTS_BLOCKED, 1);
+            Metrics.stop(Metrics.Phase.TRAVEL, start);
+            alive[i] = false;
+            return;
+        }
+        int k = length;
+        while (k > 0 && board.getOccupant(board.indexOf(x + k * step * direction.getxShift(),
+                y + k * step * direction.getyShift())) != Board.EMPTY) {
+            k--;
+        }
+        board.placeInsect(insect, x + k * step * direction.getxShift(), y + k * step * direction.getyShift());
+        Metrics.stop(Metrics.Phase.TRAVEL, start);
+    }
+}
+
+/**
+ * The checkpoint file of a multi-round run, enabled with {@code -Dinsects.checkpoint=<directory>}.
+ * Every scenario gets its own file there, named after a CRC of its initial board, so a rerun of the same
+ * scenario picks up where an interrupted one stopped. Scenarios of one run that are on the same board at the
+ * same time each claim a numbered file of their own. Runs are deterministic, so a state saved by another process
+ * sharing the directory resumes the scenario just as well. The state is saved every
+ * {@code insects.checkpointEvery} rounds, and when the JVM is asked to stop, at the next round boundary. Files
+ * are written whole to a temporary file of their own through one channel write and moved into place, so a crash
+ * or a concurrent save leaves an intact checkpoint.
+ */
+class Checkpoint implements Closeable {
+    static final int MAGIC = 0x89494350;
+    static final byte VERSION = 1;
+    static final int HEADER = 25;
+    static final int INSECT_RECORD = 14;
+    private static final String DIRECTORY = System.getProperty("insects.checkpoint");
+    private static final int INTERVAL = Integer.getInteger("insects.checkpointEvery", 0);
+    private static final long SHUTDOWN_WAIT_MILLIS = 5000;
+    private static final Set<Checkpoint> ACTIVE = java.util.concurrent.ConcurrentHashMap.newKeySet();
+    private static final Set<Path> CLAIMED = java.util.concurrent.ConcurrentHashMap.newKeySet();
+    private final Path file;
+    private final int fingerprint;
+    private final int interval;
+    private boolean requested;
+    private boolean closed;
+    private long saves;
+
+    static {
+        if (DIRECTORY != null) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                for (Checkpoint checkpoint : ACTIVE) {
+                    checkpoint.requestAndAwait(SHUTDOWN_WAIT_MILLIS);
+                }
+            }));
+        }
+    }
+
+    /**
+     * Constructs the checkpoint of a scenario.
+     *
+     * @param file        The checkpoint file.
+     * @param fingerprint The CRC of the initial board.
+     * @param interval    The number of rounds between two saves, or 0 to only save when the JVM stops.
+     */
+    private Checkpoint(Path file, int fingerprint, int interval) {
+        this.file = file;
+        this.fingerprint = fingerprint;
+        this.interval = interval;
+    }
+
+    /**
+     * Checks if multi-round runs should be checkpointed.
+     *
+     * @return True if a checkpoint directory is configured.
+     */
+    static boolean isEnabled() {
+        return DIRECTORY != null;
+    }
+
+    /**
+     * Gets the configured checkpoint directory.
+     *
+     * @return The directory of the checkpoint files.
+     */
+    static Path getDirectory() {
+        return Paths.get(DIRECTORY);
+    }
+
+    /**
+     * Opens the checkpoint of a scenario that has not moved yet.
+     *
+     * @param board   The initial board.
+     * @param insects The insects in input order.
+     * @return The checkpoint, registered to be saved when the JVM stops.
+     * @throws IOException if the checkpoint directory cannot be created.
+     */
+    static Checkpoint open(Board board, List<Insect> insects) throws IOException {
+        return open(getDirectory(), INTERVAL, board, insects);
+    }
+
+    /**
+     * Opens the checkpoint of a scenario that has not moved yet in the given directory, creating the directory
+     * if it is missing. The file is the first one for the board that no open checkpoint holds.
+     *
+     * @param directory The directory of the checkpoint files.
+     * @param interval  The number of rounds between two saves, or 0 to only save when the JVM stops.
+     * @param board     The initial board.
+     * @param insects   The insects in input order.
+     * @return The checkpoint, registered to be saved when the JVM stops.
+     * @throws IOException if the directory cannot be created.
+     */
+    static Checkpoint open(Path directory, int interval, Board board, List<Insect> insects) throws IOException {
+        Files.createDirectories(directory);
+        CRC32 crc = new CRC32();
+        crc.update(BinaryFormat.encodeScenario(board, insects));
+        int fingerprint = (int) crc.getValue();
+        Path file = null;
+        for (int slot = 0; file == null; slot++) {
+            Path candidate = directory.resolve(slot == 0 ? String.format(Locale.ROOT, "%08x.checkpoint", fingerprint)
+                    : String.format(Locale.ROOT, "%08x-%d.checkpoint", fingerprint, slot)).toAbsolutePath().normalize();
+            if (CLAIMED.add(candidate)) {
+                file = candidate;
+            }
+        }
+        Checkpoint checkpoint = new Checkpoint(file, fingerprint, interval);
+        ACTIVE.add(checkpoint);
+        return checkpoint;
+    }
+
+    /**
+     * Gets the CRC of the initial board, which a saved state must carry to be resumed.
+     *
+     * @return The fingerprint of the scenario.
+     */
+    int getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Reads the saved state if there is an intact one.
+     *
+     * @return The state without its trailing CRC, or null if there is no file or it is damaged.
+     * @throws IOException if the file exists but cannot be read.
+     */
+    ByteBuffer read() throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        ByteBuffer input = ScenarioReader.readAll(file);
+        if (input.remaining() < HEADER + Integer.BYTES) {
+            return null;
+        }
+        int end = input.limit() - Integer.BYTES;
+        CRC32 crc = new CRC32();
+        crc.update(input.duplicate().limit(end));
+        if ((int) crc.getValue() != input.getInt(end)) {
+            return null;
+        }
+        return input.limit(end);
+    }
+
+    /**
+     * Checks if the state should be saved before a round.
+     *
+     * @param round The number of rounds done.
+     * @return True if the interval is reached or the JVM is stopping.
+     */
+    synchronized boolean isDue(int round) {
+        return requested || (interval > 0 && round > 0 && round % interval == 0);
+    }
+
+    /**
+     * Saves a state: appends its CRC, writes it to a new temporary file and moves that over the checkpoint.
+     *
+     * @param state The encoded state, with room for the CRC after its limit.
+     * @throws IOException if the file cannot be written.
+     */
+    void write(ByteBuffer state) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(state.duplicate());
+        state.limit(state.limit() + Integer.BYTES).putInt(state.limit() - Integer.BYTES, (int) crc.getValue());
+        Path temporary = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                while (state.hasRemaining()) {
+                    channel.write(state);
+                }
+                channel.force(false);
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+        synchronized (this) {
+            requested = false;
+            saves++;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Removes the checkpoint of a run that finished.
+     *
+     * @throws IOException if the file cannot be deleted.
+     */
+    void delete() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    /**
+     * Asks for a save at the next round boundary and waits for it.
+     *
+     * @param timeoutMillis The longest time to wait.
+     */
+    private synchronized void requestAndAwait(long timeoutMillis) {
+        long target = saves + 1;
+        requested = true;
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        long remaining = timeoutMillis;
+        while (saves < target && !closed && remaining > 0) {
+            try {
+                wait(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            remaining = deadline - System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Stops saving this checkpoint and releases anyone waiting for a save.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        ACTIVE.remove(this);
+        CLAIMED.remove(file);
+        notifyAll();
+    }
+}
+
+/**
+ * The cells changed while moves are committed, bucketed by the lines they lie on,
+ * so checking a ray only looks at the changes on its own line.
+ */
+class ChangedCells {
+    private final BoardLines lines;
+    private final int[][][] positions = new int[BoardLines.FAMILIES][][];
+    private final int[][] counts = new int[BoardLines.FAMILIES][];
+
+    /**
+     * Constructs an empty log for a board of the given size.
+     *
+     * @param size The size of the board.
+     */
+    ChangedCells(int size) {
+        this.lines = new BoardLines(size);
+        for (int family = 0; family < BoardLines.FAMILIES; family++) {
+            positions[family] = new int[lines.lineCount(family)][];
+            counts[family] = new int[lines.lineCount(family)];
+        }
+    }
+
+    /**
+     * Records a changed cell.
+     *
+     * @param x The x-coordinate of the cell.
+     * @param y The y-coordinate of the cell.
+     */
+    void add(int x, int y) {
+        for (int family = 0; family < BoardLines.FAMILIES; family++) {
+            int line = lines.lineOf(family, x, y);
+            int[] bucket = positions[family][line];
+            int count = counts[family][line];
+            if (bucket == null) {
+                bucket = new int[4];
+            } else if (count == bucket.length) {
+                bucket = Arrays.copyOf(bucket, 2 * count);
+            }
+            bucket[count] = lines.positionOf(family, x, y);
+            positions[family][line] = bucket;
+            counts[family][line] = count + 1;
+        }
+    }
+
+    /**
+     * Checks if a changed cell lies on the ray leaving a cell in the given direction.
+     *
+     * @param x    The x-coordinate of the observer.
+     * @param y    The y-coordinate of the observer.
+     * @param dir  The direction of the ray.
+     * @param step The distance between two visited cells.
+     * @return True if the ray visits a changed cell.
+     */
+    boolean crossesRay(int x, int y, Direction dir, int step) {
+        int family = BoardLines.familyOf(dir);
+        int line = lines.lineOf(family, x, y);
+        int[] bucket = positions[family][line];
+        if (bucket == null) {
+            return false;
+        }
+        int position = lines.positionOf(family, x, y);
+        boolean forward = BoardLines.isForward(dir);
+        for (int i = counts[family][line] - 1; i >= 0; i--) {
+            int distance = forward ? bucket[i] - position : position - bucket[i];
+            if (distance > 0 && distance % step == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
+
+/**
+ * The outcome of one insect's move: the chosen direction, the food it collected
+ * and the number of cells it passed.
+ */
+class Move {
+    private final Direction direction;
+    private final int foodCollected;
+    private final int cellsTraversed;
+
+    /**
+     * Constructs a move.
+     *
+     * @param direction      The chosen direction.
+     * @param foodCollected  The amount of food collected.
+     * @param cellsTraversed The number of cells passed.
+     */
+    Move(Direction direction, int foodCollected, int cellsTraversed) {
+        this.direction = direction;
+        this.foodCollected = foodCollected;
+        this.cellsTraversed = cellsTraversed;
+    }
+
+    /**
+     * Gets the chosen direction.
+     *
+     * @return The direction of the move.
+     */
+    public Direction getDirection() {
+        return direction;
+    }
+
+    /**
+     * Gets the food collected.
+     *
+     * @return The amount of food collected.
+     */
+    public int getFoodCollected() {
+        return foodCollected;
+    }
+
+    /**
+     * Gets the number of cells passed.
+     *
+     * @return The number of cells passed.
+     */
+    public int getCellsTraversed() {
+        return cellsTraversed;
+    }
+}
+/**
+ * Enum representing directions on the game board.
+ * Each direction has a text representation, priority, and corresponding shifts in the x and y axes.
+ */
+enum Direction {
+    N("North", 8, 0, -1),
+    E("East", 7, 1, 0),
+    S("South", 6, 0, 1),
+    W("West", 5, -1, 0),
+    NE("North-East", 4, 1, -1),
+    SE("South-East", 3, 1, 1),
+    SW("South-West", 2, -1, 1),
+    NW("North-West", 1, -1, -1);
+    static final int COUNT = 8;
+    private static final Direction[] VALUES = values();
+    private static final Direction[] BY_PRIORITY = values();
+    private final String textRepresentation;
+    private int priority;
+    private int xShift;
+    private int yShift;
+
+    /**
+     * Constructs a Direction with the given text representation, priority, and shifts.
+     *
+     * @param text      The text representation of the direction.
+     * @param priority  The priority of the direction.
+     * @param xShift    The shift in the x-axis.
+     * @param yShift    The shift in the y-axis.
+     */
+    private Direction(String text, int priority, int xShift, int yShift) {
+        textRepresentation = text;
+        this.priority = priority;
+        this.xShift = xShift;
+        this.yShift = yShift;
+    }
+
+    /**
+     * Gets the text representation of the direction.
+     *
+     * @return The text representation.
+     */
+    public String getTextRepresentation() {
+        return textRepresentation;
+    }
+    /**
+     * Gets the priority of the direction.
+     *
+     * @return The priority.
+     */
+    public int getPriority() {
+        return priority;
+    }
+    /**
+     * Gets the shift in the x-axis.
+     *
+     * @return The x-axis shift.
+     */
+    public int getxShift() {
+        return xShift;
+    }
+    /**
+     * Gets the shift in the y-axis.
      *
      * @return The y-axis shift.
      */
-    public int getyShift() {
-        return yShift;
+    public int getyShift() {
+        return yShift;
+    }
+
+    static {
+        // An insertion sort rather than a comparator lambda, which would start the lambda machinery on every run
+        for (int i = 1; i < BY_PRIORITY.length; i++) {
+            Direction direction = BY_PRIORITY[i];
+            int j = i;
+            for (; j > 0 && BY_PRIORITY[j - 1].priority < direction.priority; j--) {
+                BY_PRIORITY[j] = BY_PRIORITY[j - 1];
+            }
+            BY_PRIORITY[j] = direction;
+        }
+    }
+
+    /**
+     * Gets the direction with the given ordinal without copying {@link #values()}.
+     *
+     * @param ordinal The ordinal of the direction.
+     * @return The direction.
+     */
+    static Direction ofOrdinal(int ordinal) {
+        return VALUES[ordinal];
+    }
+
+    /**
+     * Gets the bit of this direction in a direction bit set.
+     *
+     * @return The bit at the position of the ordinal.
+     */
+    public int mask() {
+        return 1 << ordinal();
+    }
+
+    /**
+     * Picks the best of a set of scored directions in one pass: the highest score wins,
+     * and ties go to the direction of higher priority.
+     *
+     * @param scores     The scores indexed by direction ordinal.
+     * @param directions The directions to choose from, as a bit set.
+     * @return The winning direction, or null if the set is empty.
+     */
+    static Direction select(int[] scores, int directions) {
+        Direction best = null;
+        int bestScore = 0;
+        for (Direction direction : BY_PRIORITY) {
+            if ((directions & direction.mask()) != 0 && (best == null || scores[direction.ordinal()] > bestScore)) {
+                best = direction;
+                bestScore = scores[direction.ordinal()];
+            }
+        }
+        return best;
+    }
+}
+/**
+ * Enum representing colors of insects in the game.
+ * The enum provides methods to convert between String and InsectColor.
+ */
+enum InsectColor {
+    RED,
+    GREEN,
+    BLUE,
+    YELLOW;
+    /**
+     * Converts a String representation of color to InsectColor.
+     *
+     * @param color The String representation of color.
+     * @return The corresponding InsectColor.
+     * @throws InvalidInsectColorException If the provided color is invalid.
+     */
+    public static InsectColor toColor(String color) throws InvalidInsectColorException {
+        switch (color) {
+            case "Red":
+                return InsectColor.RED;
+            case "Green":
+                return InsectColor.GREEN;
+            case "Blue":
+                return InsectColor.BLUE;
+            case "Yellow":
+                return InsectColor.YELLOW;
+            default:
+                throw new InvalidInsectColorException();
+        }
+    }
+    /**
+     * Converts InsectColor to its String representation.
+     *
+     * @param color The InsectColor to convert.
+     * @return The String representation of the color.
+     */
+    public static String toString(InsectColor color) {
+        if (color == RED) {
+            return "Red";
+        }
+        if (color == GREEN) {
+            return "Green";
+        }
+        if (color == BLUE) {
+            return "Blue";
+        } else {
+            return "Yellow";
+        }
+    }
+}
+/**
+ * Represents the game board that holds entities such as insects and food points.
+ * The board manages the positions of entities and provides methods for interacting with them.
+ * Cells are stored densely in {@link BoardCells} indexed by {@code (y - 1) * size + (x - 1)}: a food amount
+ * and an occupant code per cell, so ray scans never build keys or box values.
+ *
+ * @throws InvalidBoardSizeException If an invalid board size is provided during instantiation.
+ */
+class Board {
+    static final byte EMPTY = 0;
+    static final byte FOOD = 1;
+    static final byte INSECT = 2;
+    /**
+     * The largest board size. Cell indexes are longs, so only the dense storages are limited further, to
+     * {@link BoardCells#DENSE_MAX_SIZE}.
+     */
+    static final int MAX_SIZE = 1 << 20;
+    private final int size;
+    private BoardCells cells;
+    private final Map<Long, Insect> insects = new HashMap<>();
+    private boolean sparse;
+    private final FoodLineIndex lineIndex;
+    private final InsectLineIndex insectLines;
+    private final BorderDistances borderDistances;
+    private final BoardDataView boardData = new BoardDataView(this);
+    private final DirectionScoreCache scoreCache;
+    private int entityCount;
+    private int foodCount;
+    /**
+     * Constructs a new game board with the specified size.
+     *
+     * @param size The size of the game board.
+     * @throws InvalidBoardSizeException If the provided board size is invalid.
+     */
+    public Board(Integer size) throws InvalidBoardSizeException {
+        this(size, cellsFor(size));
+    }
+    /**
+     * Constructs a new game board on the given cell storage.
+     *
+     * @param size  The size of the game board.
+     * @param cells The zeroed storage for the cells of the board.
+     */
+    Board(int size, BoardCells cells) {
+        this.size = size;
+        this.cells = cells;
+        this.sparse = cells.isSparse();
+        this.lineIndex = sparse ? null : new FoodLineIndex(size);
+        this.insectLines = sparse ? null : new InsectLineIndex(size);
+        this.borderDistances = BorderDistances.forSize(size);
+        this.scoreCache = new DirectionScoreCache(this, insects.values());
+    }
+    /**
+     * Creates the cell storage picked by {@link BoardCells#STORAGE} for a board.
+     *
+     * @param size The size of the game board.
+     * @return The storage.
+     * @throws InvalidBoardSizeException If the board is larger than {@link #MAX_SIZE}, or than
+     *                                   {@link BoardCells#DENSE_MAX_SIZE} on dense storage.
+     */
+    private static BoardCells cellsFor(int size) throws InvalidBoardSizeException {
+        if (size > MAX_SIZE || (size > BoardCells.DENSE_MAX_SIZE && !BoardCells.isTiled(size))) {
+            throw new InvalidBoardSizeException();
+        }
+        return BoardCells.create(size);
+    }
+    /**
+     * Constructs a fork of a board, sharing its cells and holding copies of its insects.
+     *
+     * @param base The board to fork, already on forkable cells.
+     */
+    private Board(Board base) {
+        this.size = base.size;
+        this.cells = base.cells.fork();
+        this.sparse = true;
+        this.lineIndex = null;
+        this.insectLines = null;
+        this.borderDistances = base.borderDistances;
+        this.scoreCache = new DirectionScoreCache(this, insects.values());
+        this.entityCount = base.entityCount;
+        this.foodCount = base.foodCount;
+        for (Map.Entry<Long, Insect> entry : base.insects.entrySet()) {
+            Insect insect = entry.getValue();
+            EntityPosition position = insect.getEntityPosition();
+            Insect copy = insect.getSpecies().create(new EntityPosition(position.getX(), position.getY()),
+                    insect.getColor());
+            insects.put(entry.getKey(), copy);
+            scoreCache.add(copy);
+        }
+    }
+    /**
+     * Creates an empty board of the same size on zeroed storage of the same kind as this board's.
+     *
+     * @return The empty board.
+     */
+    Board blank() {
+        return new Board(size, cells.blank());
+    }
+    /**
+     * Forks the board for what-if evaluations: the fork starts with the same food and copies of the insects,
+     * and both boards change independently afterwards. The cells are shared copy-on-write in tiles, so forking
+     * costs constant time plus the insects, and each board only pays for the tiles it changes. The first fork
+     * of a board on other storage moves its cells to {@link TiledCells}.
+     *
+     * @return The fork.
+     */
+    Board fork() {
+        if (!(cells instanceof TiledCells)) {
+            BoardCells tiled = new TiledCells(size);
+            for (long index = nextOccupied(0); index >= 0; index = nextOccupied(index + 1)) {
+                tiled.setOccupant(index, cells.getOccupant(index));
+                tiled.setFood(index, cells.getFood(index));
+            }
+            cells = tiled;
+            sparse = true;
+        }
+        return new Board(this);
+    }
+    /**
+     * Gets the size of the game board.
+     *
+     * @return The size of the game board.
+     */
+    public int getSize() {
+        return size;
+    }
+    /**
+     * Checks if the given coordinates lie on the board.
+     *
+     * @param x The x-coordinate.
+     * @param y The y-coordinate.
+     * @return True if the cell exists on the board; false otherwise.
+     */
+    public boolean contains(int x, int y) {
+        return x > 0 && x <= size && y > 0 && y <= size;
+    }
+    /**
+     * Gets the cell index of the given coordinates.
+     *
+     * @param x The x-coordinate.
+     * @param y The y-coordinate.
+     * @return The index of the cell in the board arrays.
+     */
+    public long indexOf(int x, int y) {
+        return (long) (y - 1) * size + (x - 1);
+    }
+    /**
+     * Gets the x-coordinate of a cell index.
+     *
+     * @param index The cell index.
+     * @return The x-coordinate.
+     */
+    int xOf(long index) {
+        return (int) (index % size) + 1;
+    }
+    /**
+     * Gets the y-coordinate of a cell index.
+     *
+     * @param index The cell index.
+     * @return The y-coordinate.
+     */
+    int yOf(long index) {
+        return (int) (index / size) + 1;
+    }
+    /**
+     * Gets the occupant code of a cell: {@link #EMPTY}, {@link #FOOD} or {@link #INSECT} plus the color ordinal.
+     *
+     * @param index The cell index.
+     * @return The occupant code of the cell.
+     */
+    public byte getOccupant(long index) {
+        return cells.getOccupant(index);
+    }
+    /**
+     * Gets the amount of food in a cell.
+     *
+     * @param index The cell index.
+     * @return The food amount, or zero if the cell holds no food.
+     */
+    public int getFood(long index) {
+        return cells.getFood(index);
+    }
+    /**
+     * Gets the insect standing in a cell.
+     *
+     * @param index The cell index.
+     * @return The insect, or null if the cell holds no insect.
+     */
+    public Insect getInsect(long index) {
+        return cells.getOccupant(index) >= INSECT ? insects.get(index) : null;
+    }
+    /**
+     * Adds a board entity to the game board.
+     *
+     * @param entity The board entity to be added.
+     * @throws DuplicateInsectException        If an attempt is made to add a duplicate insect.
+     * @throws TwoEntitiesOnSamePositionException If two entities are in the same position.
+     * @throws InvalidEntityPositionException  If the entity position is invalid.
+     */
+    public void addEntity(BoardEntity entity) throws
+            TwoEntitiesOnSamePositionException {
+        long index = indexOf(entity.getEntityPosition().getX(), entity.getEntityPosition().getY());
+        if (cells.getOccupant(index) != EMPTY) {
+            throw new TwoEntitiesOnSamePositionException();
+        }
+        if (entity instanceof FoodPoint) {
+            addFood(entity.getEntityPosition().getX(), entity.getEntityPosition().getY(), ((FoodPoint) entity).value);
+            return;
+        } else {
+            Insect insect = (Insect) entity;
+            cells.setOccupant(index, (byte) (INSECT + insect.getColor().ordinal()));
+            if (insectLines != null) {
+                insectLines.add(entity.getEntityPosition().getX(), entity.getEntityPosition().getY(),
+                        (byte) (INSECT + insect.getColor().ordinal()));
+            }
+            insects.put(index, insect);
+            scoreCache.add(insect);
+        }
+        entityCount++;
+        recordMutation("add", index);
+    }
+    /**
+     * Places food on the board without creating a {@link FoodPoint}.
+     *
+     * @param x      The x-coordinate of the food.
+     * @param y      The y-coordinate of the food.
+     * @param amount The amount of food.
+     * @throws TwoEntitiesOnSamePositionException If the cell is already occupied.
+     */
+    public void addFood(int x, int y, int amount) throws TwoEntitiesOnSamePositionException {
+        long index = indexOf(x, y);
+        if (cells.getOccupant(index) != EMPTY) {
+            throw new TwoEntitiesOnSamePositionException();
+        }
+        cells.setOccupant(index, FOOD);
+        cells.setFood(index, amount);
+        if (lineIndex != null) {
+            lineIndex.add(x, y, amount, 1);
+        }
+        scoreCache.foodChanged(x, y, amount);
+        entityCount++;
+        foodCount++;
+        recordMutation("add", index);
+    }
+    /**
+     * Puts an insect that is not on the board onto an empty cell, updating its position.
+     *
+     * @param insect The insect to place.
+     * @param x      The x-coordinate of the cell.
+     * @param y      The y-coordinate of the cell.
+     */
+    public void placeInsect(Insect insect, int x, int y) {
+        long index = indexOf(x, y);
+        insect.getEntityPosition().setX(x);
+        insect.getEntityPosition().setY(y);
+        cells.setOccupant(index, (byte) (INSECT + insect.getColor().ordinal()));
+        if (insectLines != null) {
+            insectLines.add(x, y, (byte) (INSECT + insect.getColor().ordinal()));
+        }
+        insects.put(index, insect);
+        scoreCache.add(insect);
+        entityCount++;
+        recordMutation("add", index);
+    }
+    /**
+     * Reports the current occupant of a cell to {@link FlightEvents#boardMutation}.
+     *
+     * @param action Either "add" or "remove".
+     * @param index  The cell index.
+     */
+    private void recordMutation(String action, long index) {
+        if (FlightEvents.isRecording()) {
+            FlightEvents.boardMutation(action, getInsect(index), xOf(index), yOf(index),
+                    cells.getFood(index));
+        }
+    }
+    /**
+     * Removes whatever entity occupies a cell.
+     *
+     * @param index The cell index.
+     */
+    public void removeEntity(long index) {
+        if (cells.getOccupant(index) == EMPTY) {
+            return;
+        }
+        recordMutation("remove", index);
+        if (cells.getOccupant(index) >= INSECT) {
+            if (insectLines != null) {
+                insectLines.remove(xOf(index), yOf(index));
+            }
+            scoreCache.remove(insects.remove(index));
+        } else {
+            int amount = cells.getFood(index);
+            if (lineIndex != null) {
+                lineIndex.add(xOf(index), yOf(index), -amount, -1);
+            }
+            if (amount != 0) {
+                scoreCache.foodChanged(xOf(index), yOf(index), -amount);
+            }
+            foodCount--;
+            Metrics.count(Metrics.Counter.FOOD_REMOVED, 1);
+        }
+        cells.setOccupant(index, EMPTY);
+        cells.setFood(index, 0);
+        entityCount--;
+    }
+    /**
+     * Gets the board entity at the specified position.
+     *
+     * @param position The position of the board entity.
+     * @return The board entity at the specified position.
+     * @throws InvalidEntityPositionException If the entity position is invalid.
+     */
+    public BoardEntity getEntity(EntityPosition position) throws InvalidEntityPositionException {
+        BoardEntity boardEntity = null;
+        if (contains(position.getX(), position.getY())) {
+            boardEntity = entityAt(position.getX(), position.getY());
+        }
+        if (boardEntity != null) {
+            return boardEntity;
+        } else {
+            throw new InvalidEntityPositionException();
+        }
+    }
+
+    /**
+     * Materializes the entity stored in a cell. Food points are created on demand,
+     * so this is only meant for the map view and other cold paths.
+     *
+     * @param x The x-coordinate.
+     * @param y The y-coordinate.
+     * @return The entity in the cell, or null if the cell is empty.
+     */
+    BoardEntity entityAt(int x, int y) {
+        Metrics.count(Metrics.Counter.BOARD_LOOKUPS, 1);
+        long index = indexOf(x, y);
+        byte occupant = cells.getOccupant(index);
+        if (occupant == FOOD) {
+            return new FoodPoint(new EntityPosition(x, y), cells.getFood(index));
+        }
+        if (occupant >= INSECT) {
+            return insects.get(index);
+        }
+        return null;
+    }
+
+    /**
+     * Finds the first occupied cell at or after an index, skipping empty regions of sparse boards whole.
+     *
+     * @param from The first cell index to look at.
+     * @return The index of the occupied cell, or -1 if there is none.
+     */
+    long nextOccupied(long from) {
+        return cells.nextOccupied(from, (long) size * size);
+    }
+
+    /**
+     * Sums the food visible from a cell along a direction, looking at every {@code step}-th cell up to the border.
+     * Steps covered by the line index are answered with a range sum; other steps walk the ray, skipping the
+     * stretches sparse storage knows to be empty.
+     *
+     * @param x    The x-coordinate of the observer.
+     * @param y    The y-coordinate of the observer.
+     * @param dir  The direction to look at.
+     * @param step The distance between two visited cells.
+     * @return The total amount of food on the ray.
+     */
+    public int visibleFood(int x, int y, Direction dir, int step) {
+        if (lineIndex != null && lineIndex.supportsStep(step)) {
+            Metrics.count(Metrics.Counter.BOARD_LOOKUPS, 1);
+            return lineIndex.visibleFood(x, y, dir, step);
+        }
+        long stride = strideOf(dir, step);
+        long index = indexOf(x, y);
+        int reach = borderDistances.get(dir, index) / step;
+        int foodPoints = 0;
+        int reads = 0;
+        for (int k = reach; k > 0; k--) {
+            if (sparse) {
+                int empty = cells.emptyCells(index, dir, step, k);
+                index += empty * stride;
+                k -= empty;
+                if (k == 0) {
+                    break;
+                }
+            }
+            index += stride;
+            foodPoints += cells.getFood(index);
+            reads++;
+        }
+        Metrics.count(Metrics.Counter.CELLS_SCANNED, reach);
+        Metrics.count(Metrics.Counter.BOARD_LOOKUPS, reads);
+        return foodPoints;
+    }
+
+    /**
+     * Gets the food an insect on this board sees in a direction. The scores of insects on the board are cached
+     * and adjusted as food is added and eaten, so asking again is nearly free.
+     *
+     * @param insect The insect looking.
+     * @param dir    The direction to look in.
+     * @return The total amount of food on the ray.
+     */
+    public int visibleScore(Insect insect, Direction dir) {
+        return scoreCache.score(insect, dir);
+    }
+
+    /**
+     * Gets the index offset between two visited cells of a ray.
+     *
+     * @param dir  The direction of the ray.
+     * @param step The distance between two visited cells.
+     * @return The difference between the indices of consecutive cells.
+     */
+    private long strideOf(Direction dir, int step) {
+        return step * ((long) dir.getyShift() * size + dir.getxShift());
+    }
+
+    /**
+     * Moves along a ray, eating every food point until the border or a blocking insect is reached.
+     * The travelling insect's own cell is cleared afterwards. With the line indexes the blocking insect is
+     * found with one lookup and the food before it is summed and removed without walking the empty cells.
+     *
+     * @param x        The x-coordinate of the travelling insect.
+     * @param y        The y-coordinate of the travelling insect.
+     * @param dir      The direction of travel.
+     * @param step     The distance between two visited cells.
+     * @param blockers The occupant codes that stop the insect, from {@link Insect#getBlockers()}.
+     * @return The total amount of food eaten.
+     */
+    public int travel(int x, int y, Direction dir, int step, int blockers) {
+        long stride = strideOf(dir, step);
+        long start = indexOf(x, y);
+        long index = start;
+        int foodPoints = 0;
+        int reach = borderDistances.get(dir, start) / step;
+        if (lineIndex != null && lineIndex.supportsStep(step)) {
+            int blocker = insectLines.firstBlocker(x, y, dir, step, blockers);
+            int length = blocker > 0 ? blocker - 1 : reach;
+            foodPoints = lineIndex.foodOnRay(x, y, dir, step, length);
+            Metrics.count(Metrics.Counter.BOARD_LOOKUPS, 2);
+            if (blocker > 0) {
+                Metrics.count(Metrics.Counter.INSECTS_BLOCKED, 1);
+                Metrics.count(Metrics.Counter.CELLS_SCANNED, 1);
+            }
+            clearPath(x, y, dir, step, length, null);
+            return foodPoints;
+        }
+        int k = reach;
+        int reads = 0;
+        for (; k > 0; k--) {
+            if (sparse) {
+                int empty = cells.emptyCells(index, dir, step, k);
+                index += empty * stride;
+                k -= empty;
+                if (k == 0) {
+                    break;
+                }
+            }
+            index += stride;
+            byte occupant = cells.getOccupant(index);
+            reads++;
+            if (occupant == FOOD) {
+                foodPoints += cells.getFood(index);
+                removeEntity(index);
+            } else if (occupant >= INSECT && (blockers & 1 << occupant) != 0) {
+                Metrics.count(Metrics.Counter.INSECTS_BLOCKED, 1);
+                break;
+            }
+        }
+        Metrics.count(Metrics.Counter.CELLS_SCANNED, reach - k + (k > 0 ? 1 : 0));
+        Metrics.count(Metrics.Counter.BOARD_LOOKUPS, reads);
+        removeEntity(start); // remove insect from board after death or reaching of the border
+        return foodPoints;
+    }
+
+    /**
+     * Counts the cells an insect passes on a ray before it reaches the border or a blocking insect.
+     * The board is only read, so several insects can plan their moves concurrently.
+     *
+     * @param x        The x-coordinate of the travelling insect.
+     * @param y        The y-coordinate of the travelling insect.
+     * @param dir      The direction of travel.
+     * @param step     The distance between two visited cells.
+     * @param blockers The occupant codes that stop the insect, from {@link Insect#getBlockers()}.
+     * @return The number of cells the insect passes.
+     */
+    public int pathLength(int x, int y, Direction dir, int step, int blockers) {
+        long stride = strideOf(dir, step);
+        long index = indexOf(x, y);
+        int length = 0;
+        if (insectLines != null) {
+            int blocker = insectLines.firstBlocker(x, y, dir, step, blockers);
+            length = blocker > 0 ? blocker - 1 : borderDistances.get(dir, index) / step;
+            Metrics.count(Metrics.Counter.CELLS_SCANNED, blocker > 0 ? length + 1 : length);
+            Metrics.count(Metrics.Counter.BOARD_LOOKUPS, 1);
+            return length;
+        }
+        int reads = 0;
+        for (int k = borderDistances.get(dir, index) / step; k > 0; k--) {
+            if (sparse) {
+                int empty = cells.emptyCells(index, dir, step, k);
+                index += empty * stride;
+                length += empty;
+                k -= empty;
+                if (k == 0) {
+                    break;
+                }
+            }
+            index += stride;
+            byte occupant = cells.getOccupant(index);
+            reads++;
+            if (occupant >= INSECT && (blockers & 1 << occupant) != 0) {
+                Metrics.count(Metrics.Counter.CELLS_SCANNED, 1);
+                break;
+            }
+            length++;
+        }
+        Metrics.count(Metrics.Counter.CELLS_SCANNED, length);
+        Metrics.count(Metrics.Counter.BOARD_LOOKUPS, reads);
+        return length;
+    }
+
+    /**
+     * Checks if a path measured by {@link #pathLength} ended at a blocking insect rather than the border.
+     *
+     * @param x      The x-coordinate of the travelling insect.
+     * @param y      The y-coordinate of the travelling insect.
+     * @param dir    The direction of travel.
+     * @param step   The distance between two visited cells.
+     * @param length The number of cells passed.
+     * @return True if the cell after the path is still on the board.
+     */
+    public boolean isBlocked(int x, int y, Direction dir, int step, int length) {
+        return contains(x + (length + 1) * step * dir.getxShift(), y + (length + 1) * step * dir.getyShift());
+    }
+
+    /**
+     * Sums the food on the first cells of a ray without eating it.
+     *
+     * @param x      The x-coordinate of the travelling insect.
+     * @param y      The y-coordinate of the travelling insect.
+     * @param dir    The direction of travel.
+     * @param step   The distance between two visited cells.
+     * @param length The number of cells passed.
+     * @return The total amount of food on those cells.
+     */
+    public int foodOnPath(int x, int y, Direction dir, int step, int length) {
+        if (lineIndex != null && lineIndex.supportsStep(step)) {
+            Metrics.count(Metrics.Counter.CELLS_SCANNED, length);
+            Metrics.count(Metrics.Counter.BOARD_LOOKUPS, 1);
+            return lineIndex.foodOnRay(x, y, dir, step, length);
+        }
+        long stride = strideOf(dir, step);
+        long index = indexOf(x, y);
+        int foodPoints = 0;
+        int reads = 0;
+        for (int k = length; k > 0; k--) {
+            if (sparse) {
+                int empty = cells.emptyCells(index, dir, step, k);
+                index += empty * stride;
+                k -= empty;
+                if (k == 0) {
+                    break;
+                }
+            }
+            index += stride;
+            foodPoints += cells.getFood(index);
+            reads++;
+        }
+        Metrics.count(Metrics.Counter.CELLS_SCANNED, length);
+        Metrics.count(Metrics.Counter.BOARD_LOOKUPS, reads);
+        return foodPoints;
+    }
+
+    /**
+     * Eats the food on the first cells of a ray and removes the travelling insect from its cell,
+     * recording every changed cell. With the line index only the cells holding food are visited.
+     *
+     * @param x       The x-coordinate of the travelling insect.
+     * @param y       The y-coordinate of the travelling insect.
+     * @param dir     The direction of travel.
+     * @param step    The distance between two visited cells.
+     * @param length  The number of cells passed.
+     * @param changes The log receiving the changed cells, or null if nobody needs them.
+     */
+    public void clearPath(int x, int y, Direction dir, int step, int length, ChangedCells changes) {
+        long stride = strideOf(dir, step);
+        long index = indexOf(x, y);
+        if (lineIndex != null && lineIndex.supportsStep(step)) {
+            // one lookup per food point found, and one for the search that finds no more
+            Metrics.count(Metrics.Counter.BOARD_LOOKUPS, 1);
+            for (int k = lineIndex.nextFood(x, y, dir, step, 1, length); k > 0;
+                    k = lineIndex.nextFood(x, y, dir, step, k + 1, length)) {
+                Metrics.count(Metrics.Counter.BOARD_LOOKUPS, 1);
+                removeEntity(index + k * stride);
+                if (changes != null) {
+                    changes.add(x + k * step * dir.getxShift(), y + k * step * dir.getyShift());
+                }
+            }
+        } else {
+            clearFood(x, y, dir, step, length, changes);
+        }
+        removeEntity(indexOf(x, y));
+        if (changes != null) {
+            changes.add(x, y);
+        }
+        Metrics.count(Metrics.Counter.CELLS_SCANNED, length);
+    }
+
+    /**
+     * Walks the first cells of a ray and eats the food on them, recording every changed cell.
+     *
+     * @param x       The x-coordinate of the travelling insect.
+     * @param y       The y-coordinate of the travelling insect.
+     * @param dir     The direction of travel.
+     * @param step    The distance between two visited cells.
+     * @param length  The number of cells passed.
+     * @param changes The log receiving the changed cells, or null if nobody needs them.
+     */
+    private void clearFood(int x, int y, Direction dir, int step, int length, ChangedCells changes) {
+        long stride = strideOf(dir, step);
+        long index = indexOf(x, y);
+        int reads = 0;
+        for (int k = 1; k <= length; k++) {
+            if (sparse) {
+                int empty = cells.emptyCells(index, dir, step, length - k + 1);
+                index += empty * stride;
+                k += empty;
+                if (k > length) {
+                    break;
+                }
+            }
+            index += stride;
+            reads++;
+            if (cells.getOccupant(index) == FOOD) {
+                removeEntity(index);
+                if (changes != null) {
+                    changes.add(x + k * step * dir.getxShift(), y + k * step * dir.getyShift());
+                }
+            }
+        }
+        Metrics.count(Metrics.Counter.BOARD_LOOKUPS, reads);
+    }
+
+    /**
+     * Gets the direction of movement for the given insect.
+     *
+     * @param insect The insect for which to determine the direction.
+     * @return The direction of movement for the insect.
+     */
+    public Direction getDirection(Insect insect) {
+        return null;
+    }
+
+    /**
+     * Gets the sum of directions for the given insect.
+     *
+     * @param insect The insect for which to calculate the sum of directions.
+     * @return The sum of directions for the insect.
+     */
+    public int getDirectionSum(Insect insect) {
+        return 0;
+    }
+
+    /**
+     * Gets the map representing the current state of the game board.
+     * The map is a live view keyed by {@code "x y"} strings and backed by the board arrays.
+     *
+     * @return The map containing entity positions and corresponding board entities.
+     */
+    public Map<String, BoardEntity> getBoardData() {
+        return boardData;
+    }
+
+    /**
+     * Gets the number of entities on the board.
+     *
+     * @return The number of occupied cells.
+     */
+    int getEntityCount() {
+        return entityCount;
+    }
+
+    /**
+     * Gets the number of food points left on the board.
+     *
+     * @return The number of cells holding food.
+     */
+    int getFoodCount() {
+        return foodCount;
+    }
+}
+
+/**
+ * The per-cell storage of a board: a food amount and an occupant code for every cell index.
+ * Boards keep their cells in Java arrays unless {@code -Dinsects.board} picks another storage:
+ * {@code offheap} for direct buffers, {@code mapped} (optionally {@code mapped:<directory>}) for a
+ * memory-mapped temporary file, so boards bigger than the heap only need disk space, or {@code tiled} for
+ * {@link TiledCells}, which only allocates the parts of the board that hold something. Without the property,
+ * boards above {@link #TILED_SIZE} cells a side are tiled and smaller ones use arrays.
+ */
+interface BoardCells {
+    /**
+     * The storage picked by {@code -Dinsects.board}: {@code heap}, {@code offheap}, {@code mapped[:<directory>]}
+     * or {@code tiled}; null to pick by board size.
+     */
+    String STORAGE = System.getProperty("insects.board");
+
+    /**
+     * The largest board side kept in dense arrays when no storage is picked.
+     */
+    int TILED_SIZE = 4096;
+
+    /**
+     * The largest board side the dense storages can hold, whose cells can all be numbered by an int.
+     */
+    int DENSE_MAX_SIZE = 46340;
+
+    /**
+     * Checks if a board gets {@link TiledCells}, the only storage for boards above {@link #DENSE_MAX_SIZE}.
+     *
+     * @param size The size of the board.
+     * @return True if {@link #create} picks tiled storage for the board.
+     */
+    static boolean isTiled(int size) {
+        return "tiled".equals(STORAGE) || (STORAGE == null && size > TILED_SIZE);
+    }
+
+    /**
+     * Creates zeroed storage for the cells of a board, of the kind picked by {@link #STORAGE}.
+     *
+     * @param size The size of the board, at most {@link #DENSE_MAX_SIZE} unless the storage is tiled.
+     * @return The storage.
+     * @throws UncheckedIOException if the file backing mapped storage cannot be created.
+     */
+    static BoardCells create(int size) {
+        if (isTiled(size)) {
+            return new TiledCells(size);
+        }
+        int cells = size * size;
+        if ("offheap".equals(STORAGE)) {
+            return new OffHeapCells(cells, null);
+        }
+        if (STORAGE != null && (STORAGE.equals("mapped") || STORAGE.startsWith("mapped:"))) {
+            Path directory = Paths.get(STORAGE.length() > "mapped:".length()
+                    ? STORAGE.substring("mapped:".length()) : System.getProperty("java.io.tmpdir"));
+            return new OffHeapCells(cells, directory);
+        }
+        return new HeapCells(cells);
+    }
+
+    /**
+     * Gets the amount of food in a cell.
+     *
+     * @param index The cell index.
+     * @return The food amount.
+     */
+    int getFood(long index);
+
+    /**
+     * Sets the amount of food in a cell.
+     *
+     * @param index  The cell index.
+     * @param amount The food amount.
+     */
+    void setFood(long index, int amount);
+
+    /**
+     * Gets the occupant code of a cell.
+     *
+     * @param index The cell index.
+     * @return The occupant code.
+     */
+    byte getOccupant(long index);
+
+    /**
+     * Sets the occupant code of a cell.
+     *
+     * @param index    The cell index.
+     * @param occupant The occupant code.
+     */
+    void setOccupant(long index, byte occupant);
+
+    /**
+     * Checks if whole regions of the board may be left unallocated, so scans should ask {@link #emptyCells}
+     * what they can skip.
+     *
+     * @return True for sparse storage; false if every cell is stored.
+     */
+    default boolean isSparse() {
+        return false;
+    }
+
+    /**
+     * Creates zeroed storage of the same kind and size, so a board rebuilt from saved state keeps the storage
+     * it was given.
+     *
+     * @return The new storage.
+     */
+    BoardCells blank();
+
+    /**
+     * Forks the storage: the fork starts with the same cells and both change independently afterwards.
+     *
+     * @return The fork.
+     * @throws UnsupportedOperationException if the storage cannot be forked.
+     */
+    default BoardCells fork() {
+        throw new UnsupportedOperationException("Only tiled board cells can be forked");
+    }
+
+    /**
+     * Counts the cells of a ray, from the cell after a given one, that are known to be empty without looking
+     * at them.
+     *
+     * @param index The cell index the ray leaves from.
+     * @param dir   The direction of the ray.
+     * @param step  The distance between two visited cells.
+     * @param limit The number of cells left on the ray.
+     * @return The number of cells that can be skipped, at most the limit.
+     */
+    default int emptyCells(long index, Direction dir, int step, int limit) {
+        return 0;
+    }
+
+    /**
+     * Finds the first occupied cell at or after an index.
+     *
+     * @param from  The first cell index to look at.
+     * @param cells The number of cells.
+     * @return The index of the occupied cell, or -1 if the rest of the board is empty.
+     */
+    default long nextOccupied(long from, long cells) {
+        for (long index = from; index < cells; index++) {
+            if (getOccupant(index) != Board.EMPTY) {
+                return index;
+            }
+        }
+        return -1;
+    }
+}
+
+/**
+ * Board cells held in Java arrays, for boards up to {@link BoardCells#DENSE_MAX_SIZE} a side.
+ */
+final class HeapCells implements BoardCells {
+    private final int[] food;
+    private final byte[] occupants;
+
+    /**
+     * Constructs zeroed cells.
+     *
+     * @param cells The number of cells.
+     */
+    HeapCells(int cells) {
+        this.food = new int[cells];
+        this.occupants = new byte[cells];
+    }
+
+    @Override
+    public BoardCells blank() {
+        return new HeapCells(occupants.length);
+    }
+
+    @Override
+    public int getFood(long index) {
+        return food[(int) index];
+    }
+
+    @Override
+    public void setFood(long index, int amount) {
+        food[(int) index] = amount;
+    }
+
+    @Override
+    public byte getOccupant(long index) {
+        return occupants[(int) index];
+    }
+
+    @Override
+    public void setOccupant(long index, byte occupant) {
+        occupants[(int) index] = occupant;
+    }
+}
+
+/**
+ * Board cells of a mostly empty board, split into square tiles of {@code 2^TILE_BITS} cells a side, which are
+ * grouped into pages of {@code 2^PAGE_BITS} tiles a side, which are grouped into directories of
+ * {@code 2^DIRECTORY_BITS} pages a side. A page or tile is only allocated once something is put on it and is
+ * dropped again when its last occupant leaves, so memory follows the number of entities rather than the area
+ * of the board, and rays skip empty tiles, pages and directories whole. A page holding few occupied cells keeps
+ * them in a sorted list, and spreads them into tiles past {@link #PAGE_LIST_MAX}; a tile does the same and
+ * turns into full cell arrays past {@link #TILE_LIST_MAX}, so scattered food costs a few bytes a point instead
+ * of a whole tile. The food of a cell is only kept while the cell is occupied. Cells are addressed by their
+ * coordinates, so boards up to {@link Board#MAX_SIZE} a side fit, with a root of at most 256 by 256 directories.
+ * Directories, pages and tiles are shared copy-on-write between forks: every node records the cells instance
+ * that owns it, {@link #fork()} hands both sides new owners in constant time, and a write copies the root,
+ * directory, page and tile on its path unless it already owns them. Forking is not thread-safe, but the forks
+ * can be used from different threads, since shared nodes are never written again.
+ */
+final class TiledCells implements BoardCells {
+    private static final int TILE_BITS = 4;
+    private static final int TILE_SIZE = 1 << TILE_BITS;
+    private static final int TILE_MASK = TILE_SIZE - 1;
+    private static final int TILE_CELLS = TILE_SIZE * TILE_SIZE;
+    private static final int TILE_LIST_MAX = 64;
+    private static final int PAGE_BITS = 4;
+    private static final int PAGE_TILES = 1 << 2 * PAGE_BITS;
+    private static final int PAGE_SHIFT = TILE_BITS + PAGE_BITS;
+    private static final int PAGE_MASK = (1 << PAGE_SHIFT) - 1;
+    private static final int PAGE_LIST_MAX = 256;
+    private static final int DIRECTORY_BITS = 4;
+    private static final int DIRECTORY_PAGES = 1 << 2 * DIRECTORY_BITS;
+    private static final int DIRECTORY_SHIFT = PAGE_SHIFT + DIRECTORY_BITS;
+    private static final int DIRECTORY_MASK = (1 << DIRECTORY_SHIFT) - 1;
+    private final int size;
+    private final int directoriesPerRow;
+    private Directory[] directories;
+    private boolean rootShared;
+    private Object owner = new Object();
+
+    /**
+     * The pages of a square group of pages.
+     */
+    private static final class Directory {
+        private final Object owner;
+        private final Page[] pages;
+
+        /**
+         * Constructs a directory.
+         *
+         * @param owner The cells instance allowed to write the directory.
+         * @param pages The pages, null where empty.
+         */
+        private Directory(Object owner, Page[] pages) {
+            this.owner = owner;
+            this.pages = pages;
+        }
+    }
+
+    /**
+     * A page or tile. While it is listed, its occupied cells are kept in a list sorted by key, with their
+     * occupant codes and food amounts at the same positions; a page keys a cell by its tile and its offset in
+     * the tile, a tile by its offset.
+     */
+    private static class Node {
+        final Object owner;
+        char[] keys;
+        int[] food;
+        byte[] occupants;
+        int count;
+
+        /**
+         * Constructs a node.
+         *
+         * @param owner     The cells instance allowed to write the node.
+         * @param keys      The sorted keys of the listed cells, or null if the node is not listed.
+         * @param food      The food amounts.
+         * @param occupants The occupant codes.
+         * @param count     The number of listed cells, or what the node counts once it is not listed.
+         */
+        Node(Object owner, char[] keys, int[] food, byte[] occupants, int count) {
+            this.owner = owner;
+            this.keys = keys;
+            this.food = food;
+            this.occupants = occupants;
+            this.count = count;
+        }
+
+        /**
+         * Finds a listed cell.
+         *
+         * @param key The key of the cell.
+         * @return The position of the cell in the list, or {@code -(insertion point) - 1} if it is not listed.
+         */
+        int find(int key) {
+            int low = 0;
+            int high = count - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int found = keys[middle];
+                if (found < key) {
+                    low = middle + 1;
+                } else if (found > key) {
+                    high = middle - 1;
+                } else {
+                    return middle;
+                }
+            }
+            return -low - 1;
+        }
+
+        /**
+         * Finds the first listed cell at or after a key.
+         *
+         * @param key The key to start at.
+         * @return The position of the cell, or the number of listed cells if there is none.
+         */
+        int ceiling(int key) {
+            int position = find(key);
+            return position < 0 ? -position - 1 : position;
+        }
+
+        /**
+         * Sets the occupant of a cell in the list, adding or removing the cell as it becomes occupied or empty.
+         *
+         * @param key      The key of the cell.
+         * @param occupant The occupant code.
+         */
+        void setListed(int key, byte occupant) {
+            int position = find(key);
+            if (position >= 0) {
+                if (occupant != Board.EMPTY) {
+                    occupants[position] = occupant;
+                    return;
+                }
+                count--;
+                System.arraycopy(keys, position + 1, keys, position, count - position);
+                System.arraycopy(food, position + 1, food, position, count - position);
+                System.arraycopy(occupants, position + 1, occupants, position, count - position);
+                return;
+            }
+            if (occupant == Board.EMPTY) {
+                return;
+            }
+            position = -position - 1;
+            if (count == keys.length) {
+                keys = Arrays.copyOf(keys, 2 * count);
+                food = Arrays.copyOf(food, 2 * count);
+                occupants = Arrays.copyOf(occupants, 2 * count);
+            }
+            System.arraycopy(keys, position, keys, position + 1, count - position);
+            System.arraycopy(food, position, food, position + 1, count - position);
+            System.arraycopy(occupants, position, occupants, position + 1, count - position);
+            keys[position] = (char) key;
+            food[position] = 0;
+            occupants[position] = occupant;
+            count++;
+        }
+    }
+
+    /**
+     * The cells of a square group of tiles: listed, or spread into its tiles, counting the tiles it has.
+     */
+    private static final class Page extends Node {
+        private Tile[] tiles;
+
+        /**
+         * Constructs a page.
+         *
+         * @param owner     The cells instance allowed to write the page.
+         * @param keys      The sorted keys of the listed cells, or null if the page is spread.
+         * @param food      The food amounts of the listed cells.
+         * @param occupants The occupant codes of the listed cells.
+         * @param count     The number of listed cells, or of tiles once spread.
+         * @param tiles     The tiles, null where empty, or null while the page is listed.
+         */
+        private Page(Object owner, char[] keys, int[] food, byte[] occupants, int count, Tile[] tiles) {
+            super(owner, keys, food, occupants, count);
+            this.tiles = tiles;
+        }
+
+        /**
+         * Copies the page for another owner; the tiles stay shared.
+         *
+         * @param owner The owner of the copy.
+         * @return The copy.
+         */
+        private Page copy(Object owner) {
+            return tiles == null ? new Page(owner, keys.clone(), food.clone(), occupants.clone(), count, null)
+                    : new Page(owner, null, null, null, count, tiles.clone());
+        }
+    }
+
+    /**
+     * The cells of one tile: listed, or in arrays of all its cells, counting the occupied ones.
+     */
+    private static final class Tile extends Node {
+        /**
+         * Constructs a tile.
+         *
+         * @param owner     The cells instance allowed to write the tile.
+         * @param keys      The sorted offsets of the listed cells, or null if the tile holds all its cells.
+         * @param food      The food amounts.
+         * @param occupants The occupant codes.
+         * @param count     The number of occupied cells.
+         */
+        private Tile(Object owner, char[] keys, int[] food, byte[] occupants, int count) {
+            super(owner, keys, food, occupants, count);
+        }
+
+        /**
+         * Copies the tile for another owner.
+         *
+         * @param owner The owner of the copy.
+         * @return The copy.
+         */
+        private Tile copy(Object owner) {
+            return new Tile(owner, keys == null ? null : keys.clone(), food.clone(), occupants.clone(), count);
+        }
+    }
+
+    /**
+     * Constructs empty cells.
+     *
+     * @param size The size of the board.
+     */
+    TiledCells(int size) {
+        this.size = size;
+        this.directoriesPerRow = (size + DIRECTORY_MASK) >>> DIRECTORY_SHIFT;
+        this.directories = new Directory[directoriesPerRow * directoriesPerRow];
+    }
+
+    /**
+     * Constructs a fork sharing the directories of other cells.
+     *
+     * @param base The cells to fork.
+     */
+    private TiledCells(TiledCells base) {
+        this.size = base.size;
+        this.directoriesPerRow = base.directoriesPerRow;
+        this.directories = base.directories;
+        this.rootShared = true;
+    }
+
+    /**
+     * Gets the position of a directory in the root.
+     *
+     * @param x The zero-based x-coordinate of a cell of the directory.
+     * @param y The zero-based y-coordinate of a cell of the directory.
+     * @return The index of the directory in the root.
+     */
+    private int directoryIndex(int x, int y) {
+        return (y >>> DIRECTORY_SHIFT) * directoriesPerRow + (x >>> DIRECTORY_SHIFT);
+    }
+
+    /**
+     * Gets the page holding a cell, for reading.
+     *
+     * @param x The zero-based x-coordinate of the cell.
+     * @param y The zero-based y-coordinate of the cell.
+     * @return The page, or null if the page is empty.
+     */
+    private Page pageAt(int x, int y) {
+        Directory directory = directories[directoryIndex(x, y)];
+        return directory == null ? null : directory.pages[pageInDirectory(x, y)];
+    }
+
+    /**
+     * Gets the position of a page within its directory.
+     *
+     * @param x The zero-based x-coordinate of a cell of the page.
+     * @param y The zero-based y-coordinate of a cell of the page.
+     * @return The index of the page in its directory.
+     */
+    private static int pageInDirectory(int x, int y) {
+        return (y & DIRECTORY_MASK) >>> PAGE_SHIFT << DIRECTORY_BITS | (x & DIRECTORY_MASK) >>> PAGE_SHIFT;
+    }
+
+    /**
+     * Gets the position of a tile within its page.
+     *
+     * @param x The zero-based x-coordinate of a cell of the tile.
+     * @param y The zero-based y-coordinate of a cell of the tile.
+     * @return The index of the tile in its page.
+     */
+    private static int tileInPage(int x, int y) {
+        return (y & PAGE_MASK) >>> TILE_BITS << PAGE_BITS | (x & PAGE_MASK) >>> TILE_BITS;
+    }
+
+    /**
+     * Gets the position of a cell within its tile.
+     *
+     * @param x The zero-based x-coordinate of the cell.
+     * @param y The zero-based y-coordinate of the cell.
+     * @return The offset of the cell in the tile arrays.
+     */
+    private static int offsetOf(int x, int y) {
+        return (y & TILE_MASK) << TILE_BITS | x & TILE_MASK;
+    }
+
+    /**
+     * Gets the key of a cell in the list of its page: its tile, then its offset in the tile, so the cells of
+     * one tile, and of one row of tiles, follow each other.
+     *
+     * @param tile   The index of the tile in its page.
+     * @param offset The offset of the cell in its tile.
+     * @return The key of the cell.
+     */
+    private static int pageKey(int tile, int offset) {
+        return tile << 2 * TILE_BITS | offset;
+    }
+
+    /**
+     * Gets the page holding a cell for writing, copying the nodes on its path that this instance does not own.
+     *
+     * @param x      The zero-based x-coordinate of the cell.
+     * @param y      The zero-based y-coordinate of the cell.
+     * @param create True to allocate an empty listed page; false to leave it missing.
+     * @return The page, or null if the page is empty and not created.
+     */
+    private Page writablePage(int x, int y, boolean create) {
+        Page page = pageAt(x, y);
+        if (page == null && !create) {
+            return null;
+        }
+        if (page != null && page.owner == owner) {
+            return page;
+        }
+        if (rootShared) {
+            directories = directories.clone();
+            rootShared = false;
+        }
+        int directoryIndex = directoryIndex(x, y);
+        Directory directory = directories[directoryIndex];
+        if (directory == null) {
+            directory = new Directory(owner, new Page[DIRECTORY_PAGES]);
+            directories[directoryIndex] = directory;
+        } else if (directory.owner != owner) {
+            directory = new Directory(owner, directory.pages.clone());
+            directories[directoryIndex] = directory;
+        }
+        page = page == null ? new Page(owner, new char[2], new int[2], new byte[2], 0, null) : page.copy(owner);
+        directory.pages[pageInDirectory(x, y)] = page;
+        return page;
+    }
+
+    /**
+     * Gets a tile of an owned, spread page for writing, copying it if this instance does not own it.
+     *
+     * @param page   The page, owned by this instance.
+     * @param tile   The index of the tile in the page.
+     * @param create True to allocate an empty listed tile; false to leave it missing.
+     * @return The tile, or null if the tile is empty and not created.
+     */
+    private Tile writableTile(Page page, int tile, boolean create) {
+        Tile found = page.tiles[tile];
+        if (found == null) {
+            if (!create) {
+                return null;
+            }
+            found = new Tile(owner, new char[2], new int[2], new byte[2], 0);
+            page.count++;
+        } else if (found.owner != owner) {
+            found = found.copy(owner);
+        } else {
+            return found;
+        }
+        page.tiles[tile] = found;
+        return found;
+    }
+
+    /**
+     * Spreads the listed cells of a page into listed tiles, spreading any tile that gets too many of them.
+     *
+     * @param page The page, owned by this instance.
+     */
+    private void spread(Page page) {
+        Tile[] tiles = new Tile[PAGE_TILES];
+        int tileCount = 0;
+        for (int start = 0; start < page.count; ) {
+            int tile = page.keys[start] >>> 2 * TILE_BITS;
+            int end = start;
+            while (end < page.count && page.keys[end] >>> 2 * TILE_BITS == tile) {
+                end++;
+            }
+            int cells = end - start;
+            char[] keys = new char[cells];
+            for (int i = 0; i < cells; i++) {
+                keys[i] = (char) (page.keys[start + i] & TILE_CELLS - 1);
+            }
+            Tile spread = new Tile(owner, keys, Arrays.copyOfRange(page.food, start, end),
+                    Arrays.copyOfRange(page.occupants, start, end), cells);
+            if (cells > TILE_LIST_MAX) {
+                spread(spread);
+            }
+            tiles[tile] = spread;
+            tileCount++;
+            start = end;
+        }
+        page.keys = null;
+        page.food = null;
+        page.occupants = null;
+        page.count = tileCount;
+        page.tiles = tiles;
+    }
+
+    /**
+     * Moves the listed cells of a tile into arrays of all its cells.
+     *
+     * @param tile The tile, owned by this instance.
+     */
+    private static void spread(Tile tile) {
+        int[] food = new int[TILE_CELLS];
+        byte[] occupants = new byte[TILE_CELLS];
+        for (int i = 0; i < tile.count; i++) {
+            food[tile.keys[i]] = tile.food[i];
+            occupants[tile.keys[i]] = tile.occupants[i];
+        }
+        tile.keys = null;
+        tile.food = food;
+        tile.occupants = occupants;
+    }
+
+    @Override
+    public int getFood(long index) {
+        int x = (int) (index % size);
+        int y = (int) (index / size);
+        Page page = pageAt(x, y);
+        if (page == null) {
+            return 0;
+        }
+        int offset = offsetOf(x, y);
+        if (page.tiles == null) {
+            int position = page.find(pageKey(tileInPage(x, y), offset));
+            return position < 0 ? 0 : page.food[position];
+        }
+        Tile tile = page.tiles[tileInPage(x, y)];
+        if (tile == null) {
+            return 0;
+        }
+        if (tile.keys == null) {
+            return tile.food[offset];
+        }
+        int position = tile.find(offset);
+        return position < 0 ? 0 : tile.food[position];
+    }
+
+    @Override
+    public void setFood(long index, int amount) {
+        int x = (int) (index % size);
+        int y = (int) (index / size);
+        Page page = writablePage(x, y, false);
+        if (page == null) {
+            return;
+        }
+        int offset = offsetOf(x, y);
+        Node node = page;
+        int key = pageKey(tileInPage(x, y), offset);
+        if (page.tiles != null) {
+            Tile tile = writableTile(page, tileInPage(x, y), false);
+            if (tile == null) {
+                return;
+            }
+            if (tile.keys == null) {
+                if (tile.occupants[offset] != Board.EMPTY) {
+                    tile.food[offset] = amount;
+                }
+                return;
+            }
+            node = tile;
+            key = offset;
+        }
+        int position = node.find(key);
+        if (position >= 0) {
+            node.food[position] = amount;
+        }
+    }
+
+    @Override
+    public byte getOccupant(long index) {
+        int x = (int) (index % size);
+        int y = (int) (index / size);
+        Page page = pageAt(x, y);
+        if (page == null) {
+            return Board.EMPTY;
+        }
+        int offset = offsetOf(x, y);
+        if (page.tiles == null) {
+            int position = page.find(pageKey(tileInPage(x, y), offset));
+            return position < 0 ? Board.EMPTY : page.occupants[position];
+        }
+        Tile tile = page.tiles[tileInPage(x, y)];
+        if (tile == null) {
+            return Board.EMPTY;
+        }
+        if (tile.keys == null) {
+            return tile.occupants[offset];
+        }
+        int position = tile.find(offset);
+        return position < 0 ? Board.EMPTY : tile.occupants[position];
+    }
+
+    @Override
+    public void setOccupant(long index, byte occupant) {
+        int x = (int) (index % size);
+        int y = (int) (index / size);
+        Page page = writablePage(x, y, occupant != Board.EMPTY);
+        if (page == null) {
+            return;
+        }
+        int offset = offsetOf(x, y);
+        int tileIndex = tileInPage(x, y);
+        if (page.tiles == null) {
+            page.setListed(pageKey(tileIndex, offset), occupant);
+            if (page.count > PAGE_LIST_MAX) {
+                spread(page);
+            }
+        } else {
+            Tile tile = writableTile(page, tileIndex, occupant != Board.EMPTY);
+            if (tile == null) {
+                return;
+            }
+            if (tile.keys != null) {
+                tile.setListed(offset, occupant);
+                if (tile.count > TILE_LIST_MAX) {
+                    spread(tile);
+                }
+            } else {
+                byte previous = tile.occupants[offset];
+                tile.occupants[offset] = occupant;
+                if (previous == Board.EMPTY && occupant != Board.EMPTY) {
+                    tile.count++;
+                } else if (previous != Board.EMPTY && occupant == Board.EMPTY) {
+                    tile.food[offset] = 0;
+                    tile.count--;
+                }
+            }
+            if (tile.count == 0) {
+                page.tiles[tileIndex] = null;
+                page.count--;
+            }
+        }
+        if (page.count == 0) {
+            // the directory is owned after writablePage
+            directories[directoryIndex(x, y)].pages[pageInDirectory(x, y)] = null;
+        }
+    }
+
+    @Override
+    public boolean isSparse() {
+        return true;
+    }
+
+    @Override
+    public BoardCells blank() {
+        return new TiledCells(size);
+    }
+
+    @Override
+    public BoardCells fork() {
+        owner = new Object();
+        rootShared = true;
+        return new TiledCells(this);
+    }
+
+    @Override
+    public int emptyCells(long index, Direction dir, int step, int limit) {
+        int xStep = step * dir.getxShift();
+        int yStep = step * dir.getyShift();
+        int x = (int) (index % size) + xStep;
+        int y = (int) (index / size) + yStep;
+        int count = 0;
+        while (count < limit) {
+            int mask = emptyMask(x, y);
+            if (mask == 0) {
+                break;
+            }
+            int cells = Math.min(cellsInBlock(x, xStep, mask), cellsInBlock(y, yStep, mask));
+            count += cells;
+            x += cells * xStep;
+            y += cells * yStep;
+        }
+        return Math.min(count, limit);
+    }
+
+    /**
+     * Gets the largest empty block around a cell.
+     *
+     * @param x The zero-based x-coordinate of the cell.
+     * @param y The zero-based y-coordinate of the cell.
+     * @return The coordinate mask of the empty directory, page or tile holding the cell, or 0 if its tile
+     *         has an occupied cell.
+     */
+    private int emptyMask(int x, int y) {
+        Directory directory = directories[directoryIndex(x, y)];
+        if (directory == null) {
+            return DIRECTORY_MASK;
+        }
+        Page page = directory.pages[pageInDirectory(x, y)];
+        if (page == null) {
+            return PAGE_MASK;
+        }
+        int tile = tileInPage(x, y);
+        if (page.tiles == null) {
+            int position = page.ceiling(pageKey(tile, 0));
+            return position < page.count && page.keys[position] < pageKey(tile + 1, 0) ? 0 : TILE_MASK;
+        }
+        return page.tiles[tile] == null ? TILE_MASK : 0;
+    }
+
+    /**
+     * Counts the visited cells of a ray that stay in the current block along one axis.
+     *
+     * @param coordinate The zero-based coordinate of the first visited cell.
+     * @param shift      The change of the coordinate between two visited cells.
+     * @param mask       The coordinate mask of the block: {@link #TILE_MASK}, {@link #PAGE_MASK} or
+     *                   {@link #DIRECTORY_MASK}.
+     * @return The number of visited cells up to and including the last one in the block.
+     */
+    private static int cellsInBlock(int coordinate, int shift, int mask) {
+        if (shift > 0) {
+            return ((coordinate | mask) - coordinate) / shift + 1;
+        }
+        if (shift < 0) {
+            return (coordinate - (coordinate & ~mask)) / -shift + 1;
+        }
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public long nextOccupied(long from, long cells) {
+        long index = from;
+        while (index < cells) {
+            int x = (int) (index % size);
+            int y = (int) (index / size);
+            if (x == 0) {
+                int mask = emptyRowsMask(y);
+                if (mask != 0) {
+                    index = (long) Math.min((y | mask) + 1, size) * size;
+                    continue;
+                }
+            }
+            int mask = emptyMask(x, y);
+            int end = Math.min(x | (mask == 0 ? TILE_MASK : mask), size - 1);
+            if (mask == 0) {
+                int found = firstOccupied(x, y, end);
+                if (found >= 0) {
+                    return index + found - x;
+                }
+            }
+            index += end - x + 1;
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the first occupied cell of a row segment inside one tile that has occupied cells.
+     *
+     * @param x   The zero-based x-coordinate of the first cell of the segment.
+     * @param y   The zero-based row of the segment.
+     * @param end The zero-based x-coordinate of the last cell of the segment, in the same tile.
+     * @return The x-coordinate of the occupied cell, or -1 if the segment is empty.
+     */
+    private int firstOccupied(int x, int y, int end) {
+        Page page = pageAt(x, y);
+        int offset = offsetOf(x, y);
+        int last = offsetOf(end, y);
+        Node node = page;
+        if (page.tiles == null) {
+            offset = pageKey(tileInPage(x, y), offset);
+            last = pageKey(tileInPage(x, y), last);
+        } else {
+            Tile tile = page.tiles[tileInPage(x, y)];
+            if (tile.keys == null) {
+                for (int found = offset; found <= last; found++) {
+                    if (tile.occupants[found] != Board.EMPTY) {
+                        return x + found - offset;
+                    }
+                }
+                return -1;
+            }
+            node = tile;
+        }
+        int position = node.ceiling(offset);
+        return position < node.count && node.keys[position] <= last ? x + node.keys[position] - offset : -1;
+    }
+
+    /**
+     * Gets the largest empty band of rows around a row, so a scan can skip all its rows at once.
+     *
+     * @param y The zero-based row.
+     * @return The coordinate mask of the empty row of directories, pages or tiles holding the row, or 0 if
+     *         the row of tiles holding it has an occupied cell.
+     */
+    private int emptyRowsMask(int y) {
+        int mask = DIRECTORY_MASK;
+        int pageRow = (y & DIRECTORY_MASK) >>> PAGE_SHIFT << DIRECTORY_BITS;
+        int tileRow = (y & PAGE_MASK) >>> TILE_BITS << PAGE_BITS;
+        for (int i = (y >>> DIRECTORY_SHIFT) * directoriesPerRow, end = i + directoriesPerRow; i < end; i++) {
+            Directory directory = directories[i];
+            if (directory == null) {
+                continue;
+            }
+            mask = Math.min(mask, PAGE_MASK);
+            for (int p = pageRow; p < pageRow + (1 << DIRECTORY_BITS); p++) {
+                Page page = directory.pages[p];
+                if (page == null) {
+                    continue;
+                }
+                mask = TILE_MASK;
+                if (page.tiles == null) {
+                    int position = page.ceiling(pageKey(tileRow, 0));
+                    if (position < page.count && page.keys[position] < pageKey(tileRow + (1 << PAGE_BITS), 0)) {
+                        return 0;
+                    }
+                    continue;
+                }
+                for (int t = tileRow; t < tileRow + (1 << PAGE_BITS); t++) {
+                    if (page.tiles[t] != null) {
+                        return 0;
+                    }
+                }
+            }
+        }
+        return mask;
+    }
+}
+
+/**
+ * Board cells held outside the heap, in direct buffers or in a memory-mapped file, for boards up to
+ * {@link BoardCells#DENSE_MAX_SIZE} a side. A single buffer cannot
+ * pass 2 GB, so the cells are split into chunks of {@code 2^CHUNK_BITS} cells with one food buffer and one
+ * occupant buffer each.
+ */
+final class OffHeapCells implements BoardCells {
+    private static final int CHUNK_BITS = 26;
+    private static final int CHUNK_MASK = (1 << CHUNK_BITS) - 1;
+    private final int cells;
+    private final Path directory;
+    private final ByteBuffer[] food;
+    private final ByteBuffer[] occupants;
+
+    /**
+     * Constructs zeroed cells.
+     *
+     * @param cells     The number of cells.
+     * @param directory The directory of the temporary file to map, or null for direct buffers.
+     * @throws UncheckedIOException if the temporary file cannot be created or mapped.
+     */
+    OffHeapCells(int cells, Path directory) {
+        this.cells = cells;
+        this.directory = directory;
+        int chunks = (int) (((long) cells + CHUNK_MASK) >>> CHUNK_BITS);
+        this.food = new ByteBuffer[chunks];
+        this.occupants = new ByteBuffer[chunks];
+        if (directory == null) {
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                int length = chunkLength(cells, chunk);
+                food[chunk] = ByteBuffer.allocateDirect(length * Integer.BYTES).order(ByteOrder.nativeOrder());
+                occupants[chunk] = ByteBuffer.allocateDirect(length);
+            }
+            return;
+        }
+        try {
+            // The file is gone once the channel closes; the mappings keep the pages until they are collected
+            Path file = Files.createTempFile(directory, "board", ".cells");
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                    StandardOpenOption.DELETE_ON_CLOSE)) {
+                long offset = 0;
+                for (int chunk = 0; chunk < chunks; chunk++) {
+                    int length = chunkLength(cells, chunk);
+                    food[chunk] = channel.map(FileChannel.MapMode.READ_WRITE, offset, (long) length * Integer.BYTES)
+                            .order(ByteOrder.nativeOrder());
+                    offset += (long) length * Integer.BYTES;
+                    occupants[chunk] = channel.map(FileChannel.MapMode.READ_WRITE, offset, length);
+                    offset += length;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Gets the number of cells in a chunk.
+     *
+     * @param cells The number of cells of the board.
+     * @param chunk The chunk.
+     * @return The cells of the chunk; only the last chunk may be short.
+     */
+    private static int chunkLength(int cells, int chunk) {
+        return (int) Math.min(1L << CHUNK_BITS, cells - ((long) chunk << CHUNK_BITS));
+    }
+
+    @Override
+    public BoardCells blank() {
+        return new OffHeapCells(cells, directory);
+    }
+
+    @Override
+    public int getFood(long index) {
+        return food[(int) index >>> CHUNK_BITS].getInt(((int) index & CHUNK_MASK) << 2);
+    }
+
+    @Override
+    public void setFood(long index, int amount) {
+        food[(int) index >>> CHUNK_BITS].putInt(((int) index & CHUNK_MASK) << 2, amount);
+    }
+
+    @Override
+    public byte getOccupant(long index) {
+        return occupants[(int) index >>> CHUNK_BITS].get((int) index & CHUNK_MASK);
+    }
+
+    @Override
+    public void setOccupant(long index, byte occupant) {
+        occupants[(int) index >>> CHUNK_BITS].put((int) index & CHUNK_MASK, occupant);
+    }
+}
+
+/**
+ * Per-cell, per-direction distances to the border of a board, so ray loops know their length up front
+ * and need no bounds checks. Distances are worked out from the cell coordinates on every query: one division
+ * per ray costs less than filling eight size-by-size tables, which took most of a one-off run on large boards.
+ */
+class BorderDistances {
+    private final int size;
+
+    /**
+     * Constructs the distances for a board of the given size.
+     *
+     * @param size The size of the board.
+     */
+    private BorderDistances(int size) {
+        this.size = size;
+    }
+
+    /**
+     * Gets the border distances for a board size.
+     *
+     * @param size The size of the board.
+     * @return The border distances of that size.
+     */
+    static BorderDistances forSize(int size) {
+        return new BorderDistances(size);
+    }
+
+    /**
+     * Gets the number of cells between a cell and the border in a direction.
+     *
+     * @param dir   The direction.
+     * @param index The cell index.
+     * @return The number of cells that can be visited before leaving the board.
+     */
+    int get(Direction dir, long index) {
+        return Math.min(axisDistance(dir.getxShift(), (int) (index % size) + 1),
+                axisDistance(dir.getyShift(), (int) (index / size) + 1));
+    }
+
+    /**
+     * Gets the distance to the border along one axis.
+     *
+     * @param shift      The shift of the direction on that axis.
+     * @param coordinate The coordinate of the cell on that axis.
+     * @return The number of cells before the border, unbounded if the axis does not move.
+     */
+    private int axisDistance(int shift, int coordinate) {
+        if (shift > 0) {
+            return size - coordinate;
+        }
+        if (shift < 0) {
+            return coordinate - 1;
+        }
+        return Integer.MAX_VALUE;
+    }
+}
+
+/**
+ * The geometry of the lines of a board: rows, columns, diagonals and anti-diagonals.
+ * Every cell lies on one line of each family and has a zero-based position along it;
+ * positions grow with x on rows and both diagonals, and with y on columns.
+ */
+class BoardLines {
+    static final int ROW = 0;
+    static final int COLUMN = 1;
+    static final int DIAGONAL = 2;
+    static final int ANTI_DIAGONAL = 3;
+    static final int FAMILIES = 4;
+    private final int size;
+
+    /**
+     * Constructs the line geometry of a board of the given size.
+     *
+     * @param size The size of the board.
+     */
+    BoardLines(int size) {
+        this.size = size;
+    }
+
+    /**
+     * Gets the number of lines of a family.
+     *
+     * @param family The line family.
+     * @return The number of lines.
+     */
+    int lineCount(int family) {
+        return family == ROW || family == COLUMN ? size : 2 * size - 1;
+    }
+
+    /**
+     * Gets the line family a direction travels along.
+     *
+     * @param dir The direction.
+     * @return The line family.
+     */
+    static int familyOf(Direction dir) {
+        if (dir.getyShift() == 0) {
+            return ROW;
+        }
+        if (dir.getxShift() == 0) {
+            return COLUMN;
+        }
+        return dir.getxShift() == dir.getyShift() ? DIAGONAL : ANTI_DIAGONAL;
+    }
+
+    /**
+     * Checks if a direction walks its line towards increasing positions.
+     *
+     * @param dir The direction.
+     * @return True if the direction moves forward along its line.
+     */
+    static boolean isForward(Direction dir) {
+        return dir.getxShift() == 0 ? dir.getyShift() > 0 : dir.getxShift() > 0;
+    }
+
+    /**
+     * Gets the line of a family a cell belongs to.
+     *
+     * @param family The line family.
+     * @param x      The x-coordinate of the cell.
+     * @param y      The y-coordinate of the cell.
+     * @return The line number within the family.
+     */
+    int lineOf(int family, int x, int y) {
+        switch (family) {
+            case ROW:
+                return y - 1;
+            case COLUMN:
+                return x - 1;
+            case DIAGONAL:
+                return x - y + size - 1;
+            default:
+                return x + y - 2;
+        }
+    }
+
+    /**
+     * Gets the position of a cell along its line of a family.
+     *
+     * @param family The line family.
+     * @param x      The x-coordinate of the cell.
+     * @param y      The y-coordinate of the cell.
+     * @return The zero-based position along the line.
+     */
+    int positionOf(int family, int x, int y) {
+        switch (family) {
+            case ROW:
+                return x - 1;
+            case COLUMN:
+                return y - 1;
+            case DIAGONAL:
+                return x - Math.max(1, x - y + 1);
+            default:
+                return x - Math.max(1, x + y - size);
+        }
+    }
+
+    /**
+     * Gets the number of cells on a line.
+     *
+     * @param family The line family.
+     * @param line   The line number within the family.
+     * @return The length of the line.
+     */
+    int lengthOf(int family, int line) {
+        if (family == ROW || family == COLUMN) {
+            return size;
+        }
+        return size - Math.abs(line - (size - 1));
+    }
+}
+
+/**
+ * Fenwick trees over every row, column, diagonal and anti-diagonal of a board, holding the food amounts.
+ * Each line is split by position parity, so rays with a step of one or two cells are both answered
+ * with range sums. A second tree per line counts the food points, so the food on a stretch of a ray can be
+ * found one point at a time without looking at the empty cells in between; amounts may be zero or negative,
+ * so the amount trees cannot serve for that. Trees are allocated lazily, the first time food lands on their line.
+ */
+class FoodLineIndex {
+    private final BoardLines lines;
+    private final int[][][] trees = new int[BoardLines.FAMILIES][][];
+    /**
+     * The number of food points per line and parity. Only boards on dense storage are indexed, so a node never
+     * counts more than half a line of {@link BoardCells#DENSE_MAX_SIZE} cells, which fits a short; the
+     * constructor rejects larger boards. Boards up to {@link Board#MAX_SIZE} are on tiled storage and walk their
+     * cells instead.
+     */
+    private final short[][][] counts = new short[BoardLines.FAMILIES][][];
+
+    /**
+     * Constructs an empty index for a board of the given size.
+     *
+     * @param size The size of the board, at most {@link BoardCells#DENSE_MAX_SIZE}.
+     * @throws IllegalArgumentException if the board is too large for the point counts.
+     */
+    FoodLineIndex(int size) {
+        if (size > BoardCells.DENSE_MAX_SIZE) {
+            throw new IllegalArgumentException("Line index needs a board size of at most "
+                    + BoardCells.DENSE_MAX_SIZE);
+        }
+        this.lines = new BoardLines(size);
+        for (int family = 0; family < BoardLines.FAMILIES; family++) {
+            trees[family] = new int[2 * lines.lineCount(family)][];
+            counts[family] = new short[2 * lines.lineCount(family)][];
+        }
+    }
+
+    /**
+     * Checks if rays with the given step can be answered by the index.
+     *
+     * @param step The distance between two visited cells.
+     * @return True if the step is one or two cells.
+     */
+    boolean supportsStep(int step) {
+        return step == 1 || step == 2;
+    }
+
+    /**
+     * Adds or removes a food point on all four lines of its cell.
+     *
+     * @param x      The x-coordinate of the cell.
+     * @param y      The y-coordinate of the cell.
+     * @param amount The amount to add, negative when food is removed.
+     * @param count  One when a food point is placed, minus one when it is removed.
+     */
+    void add(int x, int y, int amount, int count) {
+        for (int family = 0; family < BoardLines.FAMILIES; family++) {
+            int line = lines.lineOf(family, x, y);
+            int position = lines.positionOf(family, x, y);
+            int parity = position & 1;
+            int[] tree = trees[family][2 * line + parity];
+            short[] countTree = counts[family][2 * line + parity];
+            if (tree == null) {
+                int length = (lines.lengthOf(family, line) - parity + 1) / 2 + 1;
+                tree = new int[length];
+                countTree = new short[length];
+                trees[family][2 * line + parity] = tree;
+                counts[family][2 * line + parity] = countTree;
+            }
+            for (int i = (position >> 1) + 1; i < tree.length; i += i & -i) {
+                tree[i] += amount;
+                countTree[i] += count;
+            }
+        }
+    }
+
+    /**
+     * Sums the food on the ray leaving a cell in the given direction.
+     *
+     * @param x    The x-coordinate of the observer.
+     * @param y    The y-coordinate of the observer.
+     * @param dir  The direction of the ray.
+     * @param step The distance between two visited cells, one or two.
+     * @return The total amount of food on the ray.
+     */
+    int visibleFood(int x, int y, Direction dir, int step) {
+        int family = BoardLines.familyOf(dir);
+        int line = lines.lineOf(family, x, y);
+        int position = lines.positionOf(family, x, y);
+        int last = lines.lengthOf(family, line) - 1;
+        boolean forward = BoardLines.isForward(dir);
+        if (step == 2) {
+            int parity = position & 1;
+            int[] tree = trees[family][2 * line + parity];
+            int compressed = position >> 1;
+            return forward
+                    ? rangeSum(tree, compressed + 1, (last - parity) >> 1)
+                    : rangeSum(tree, 0, compressed - 1);
+        }
+        int from = forward ? position + 1 : 0;
+        int to = forward ? last : position - 1;
+        int foodPoints = 0;
+        for (int parity = 0; parity < 2; parity++) {
+            foodPoints += rangeSum(trees[family][2 * line + parity], (from - parity + 1) >> 1, (to - parity) >> 1);
+        }
+        return foodPoints;
+    }
+
+    /**
+     * Sums the food on the first cells of the ray leaving a cell in the given direction.
+     *
+     * @param x      The x-coordinate of the observer.
+     * @param y      The y-coordinate of the observer.
+     * @param dir    The direction of the ray.
+     * @param step   The distance between two visited cells, one or two.
+     * @param length The number of cells of the ray to sum, counted from the observer.
+     * @return The total amount of food on those cells.
+     */
+    int foodOnRay(int x, int y, Direction dir, int step, int length) {
+        int family = BoardLines.familyOf(dir);
+        int line = lines.lineOf(family, x, y);
+        int position = lines.positionOf(family, x, y);
+        int from = BoardLines.isForward(dir) ? position + step : position - step * length;
+        int to = BoardLines.isForward(dir) ? position + step * length : position - step;
+        int foodPoints = 0;
+        for (int parity = 0; parity < 2; parity++) {
+            if (step == 1 || parity == (position & 1)) {
+                foodPoints += rangeSum(trees[family][2 * line + parity], (from - parity + 1) >> 1,
+                        (to - parity) >> 1);
+            }
+        }
+        return foodPoints;
+    }
+
+    /**
+     * Finds the food point nearest to the observer on a stretch of the ray leaving a cell in the given direction.
+     *
+     * @param x     The x-coordinate of the observer.
+     * @param y     The y-coordinate of the observer.
+     * @param dir   The direction of the ray.
+     * @param step  The distance between two visited cells, one or two.
+     * @param first The number of the first ray cell to look at, counted from the observer.
+     * @param last  The number of the last ray cell to look at.
+     * @return The number of the ray cell holding the food point, or 0 if the stretch holds none.
+     */
+    int nextFood(int x, int y, Direction dir, int step, int first, int last) {
+        int family = BoardLines.familyOf(dir);
+        int line = lines.lineOf(family, x, y);
+        int position = lines.positionOf(family, x, y);
+        boolean forward = BoardLines.isForward(dir);
+        int from = forward ? position + step * first : position - step * last;
+        int to = forward ? position + step * last : position - step * first;
+        int nearest = 0;
+        for (int parity = 0; parity < 2; parity++) {
+            short[] tree = counts[family][2 * line + parity];
+            int low = (from - parity + 1) >> 1;
+            int high = (to - parity) >> 1;
+            if (tree == null || low > high || step == 2 && parity != (position & 1)) {
+                continue;
+            }
+            int before = prefixCount(tree, low - 1);
+            int through = prefixCount(tree, high);
+            if (before == through) {
+                continue;
+            }
+            int found = 2 * findRank(tree, forward ? before + 1 : through) + parity;
+            int cell = Math.abs(found - position) / step;
+            if (nearest == 0 || cell < nearest) {
+                nearest = cell;
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * Sums a range of compressed positions of a tree.
+     *
+     * @param tree The Fenwick tree, possibly not allocated yet.
+     * @param from The first compressed position, inclusive.
+     * @param to   The last compressed position, inclusive.
+     * @return The sum of the range, zero if it is empty.
+     */
+    private static int rangeSum(int[] tree, int from, int to) {
+        if (tree == null || from > to) {
+            return 0;
+        }
+        return prefixSum(tree, to) - prefixSum(tree, from - 1);
+    }
+
+    /**
+     * Sums the compressed positions from zero up to the given one.
+     *
+     * @param tree     The Fenwick tree.
+     * @param position The last compressed position, inclusive.
+     * @return The prefix sum.
+     */
+    private static int prefixSum(int[] tree, int position) {
+        int sum = 0;
+        for (int i = position + 1; i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+
+    /**
+     * Counts the food points from compressed position zero up to the given one.
+     *
+     * @param tree     The count tree.
+     * @param position The last compressed position, inclusive; -1 for none.
+     * @return The number of food points.
+     */
+    private static int prefixCount(short[] tree, int position) {
+        int count = 0;
+        for (int i = position + 1; i > 0; i -= i & -i) {
+            count += tree[i];
+        }
+        return count;
+    }
+
+    /**
+     * Finds the compressed position of the food point with the given rank by descending the count tree.
+     *
+     * @param tree The count tree.
+     * @param rank The one-based rank of the food point along the line, at most the number of points on it.
+     * @return The compressed position of the food point.
+     */
+    private static int findRank(short[] tree, int rank) {
+        int position = 0;
+        for (int bit = Integer.highestOneBit(tree.length - 1); bit > 0; bit >>= 1) {
+            if (position + bit < tree.length && tree[position + bit] < rank) {
+                position += bit;
+                rank -= tree[position];
+            }
+        }
+        return position;
+    }
+}
+
+/**
+ * The insects on every row, column, diagonal and anti-diagonal of a board. Each line is a sorted array of
+ * positions packed with the occupant codes of the insects on them, so the first insect that stops a ray is found
+ * with one binary search followed by a scan over the few insects beyond it. Lines are allocated lazily,
+ * the first time an insect lands on them.
+ */
+class InsectLineIndex {
+    private static final int CODE_BITS = 3;
+    private static final int CODE_MASK = (1 << CODE_BITS) - 1;
+    private final BoardLines lines;
+    private final int[][][] entries = new int[BoardLines.FAMILIES][][];
+    private final int[][] counts = new int[BoardLines.FAMILIES][];
+
+    /**
+     * Constructs an empty index for a board of the given size.
+     *
+     * @param size The size of the board.
+     */
+    InsectLineIndex(int size) {
+        this.lines = new BoardLines(size);
+        for (int family = 0; family < BoardLines.FAMILIES; family++) {
+            entries[family] = new int[lines.lineCount(family)][];
+            counts[family] = new int[lines.lineCount(family)];
+        }
+    }
+
+    /**
+     * Adds an insect to all four lines of its cell.
+     *
+     * @param x        The x-coordinate of the cell.
+     * @param y        The y-coordinate of the cell.
+     * @param occupant The occupant code of the insect.
+     */
+    void add(int x, int y, byte occupant) {
+        for (int family = 0; family < BoardLines.FAMILIES; family++) {
+            int line = lines.lineOf(family, x, y);
+            int position = lines.positionOf(family, x, y);
+            int[] entries = this.entries[family][line];
+            int count = counts[family][line];
+            if (entries == null) {
+                entries = new int[2];
+            } else if (count == entries.length) {
+                entries = Arrays.copyOf(entries, 2 * count);
+            }
+            int at = insertionPoint(entries, count, position);
+            System.arraycopy(entries, at, entries, at + 1, count - at);
+            entries[at] = position << CODE_BITS | occupant;
+            this.entries[family][line] = entries;
+            counts[family][line] = count + 1;
+        }
+    }
+
+    /**
+     * Removes the insect of a cell from all four of its lines.
+     *
+     * @param x The x-coordinate of the cell.
+     * @param y The y-coordinate of the cell.
+     */
+    void remove(int x, int y) {
+        for (int family = 0; family < BoardLines.FAMILIES; family++) {
+            int line = lines.lineOf(family, x, y);
+            int position = lines.positionOf(family, x, y);
+            int[] entries = this.entries[family][line];
+            int count = counts[family][line];
+            int at = entries == null ? count : insertionPoint(entries, count, position);
+            if (at < count && entries[at] >>> CODE_BITS == position) {
+                System.arraycopy(entries, at + 1, entries, at, count - at - 1);
+                counts[family][line] = count - 1;
+            }
+        }
+    }
+
+    /**
+     * Finds the first insect on a ray that stops the travelling insect. Only every {@code step}-th cell is
+     * looked at, so a grasshopper jumps over the insects on the other parity of its line.
+     *
+     * @param x        The x-coordinate of the travelling insect.
+     * @param y        The y-coordinate of the travelling insect.
+     * @param dir      The direction of travel.
+     * @param step     The distance between two visited cells.
+     * @param blockers The occupant codes that stop the insect, from {@link Insect#getBlockers()}.
+     * @return The number of the ray cell holding the blocking insect, or 0 if the ray is clear to the border.
+     */
+    int firstBlocker(int x, int y, Direction dir, int step, int blockers) {
+        int family = BoardLines.familyOf(dir);
+        int line = lines.lineOf(family, x, y);
+        int position = lines.positionOf(family, x, y);
+        int[] entries = this.entries[family][line];
+        if (entries == null) {
+            return 0;
+        }
+        int count = counts[family][line];
+        int at = insertionPoint(entries, count, position);
+        if (BoardLines.isForward(dir)) {
+            for (int i = at; i < count; i++) {
+                int distance = (entries[i] >>> CODE_BITS) - position;
+                if (distance > 0 && distance % step == 0 && (blockers & 1 << (entries[i] & CODE_MASK)) != 0) {
+                    return distance / step;
+                }
+            }
+        } else {
+            for (int i = at - 1; i >= 0; i--) {
+                int distance = position - (entries[i] >>> CODE_BITS);
+                if (distance % step == 0 && (blockers & 1 << (entries[i] & CODE_MASK)) != 0) {
+                    return distance / step;
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Finds where a position belongs in a sorted line. Occupant codes are never zero, so the search key
+     * sorts just before the entry of an insect at that position.
+     *
+     * @param entries  The packed entries of the line.
+     * @param count    The number of entries in use.
+     * @param position The position along the line.
+     * @return The index of the first entry at or after the position.
+     */
+    private static int insertionPoint(int[] entries, int count, int position) {
+        return -Arrays.binarySearch(entries, 0, count, position << CODE_BITS) - 1;
+    }
+}
+
+/**
+ * The visible food of every direction of every insect on a board, kept up to date as food comes and goes.
+ * The rays of the insects are indexed by the lines they run along, so a food change only visits the rays
+ * on the four lines through its cell and adjusts the scores of those that pass over it. The cache starts
+ * tracking once insects ask for more scores than they have directions, that is once they look again,
+ * so a single pass where every insect looks once pays nothing for it.
+ * Scores are only written while the board changes, so concurrent planners can read them freely. Planners may
+ * also be the ones to start tracking: the rays are indexed into a new map that is only published once complete.
+ */
+class DirectionScoreCache {
+    private final Board board;
+    private final Collection<Insect> insects;
+    private final BoardLines lines;
+    private final Ray[][][] rays = new Ray[BoardLines.FAMILIES][][];
+    private final int[][] counts = new int[BoardLines.FAMILIES][];
+    /**
+     * The rays of the tracked insects, or null until tracking starts. Planners read it without locking.
+     */
+    private volatile Map<Insect, Ray[]> raysByInsect;
+    private int directions;
+    private int misses;
+
+    /**
+     * The ray leaving an insect in one direction, with the food currently visible on it.
+     */
+    private static final class Ray {
+        private final int family;
+        private final int line;
+        private final int position;
+        private final int step;
+        private final boolean forward;
+        private int score;
+
+        /**
+         * Constructs a ray.
+         *
+         * @param family   The line family of the ray.
+         * @param line     The line the ray runs along.
+         * @param position The position of the insect on the line.
+         * @param step     The distance between two visited cells.
+         * @param forward  True if the ray runs towards increasing positions.
+         * @param score    The food visible on the ray.
+         */
+        private Ray(int family, int line, int position, int step, boolean forward, int score) {
+            this.family = family;
+            this.line = line;
+            this.position = position;
+            this.step = step;
+            this.forward = forward;
+            this.score = score;
+        }
+    }
+
+    /**
+     * Constructs an empty cache for a board.
+     *
+     * @param board   The board whose food the scores count.
+     * @param insects A live view of the insects on the board.
+     */
+    DirectionScoreCache(Board board, Collection<Insect> insects) {
+        this.board = board;
+        this.insects = insects;
+        this.lines = new BoardLines(board.getSize());
+    }
+
+    /**
+     * Starts tracking every insect on the board, unless another thread already did.
+     */
+    private synchronized void enable() {
+        if (raysByInsect != null) {
+            return;
+        }
+        for (int family = 0; family < BoardLines.FAMILIES; family++) {
+            rays[family] = new Ray[lines.lineCount(family)][];
+            counts[family] = new int[lines.lineCount(family)];
+        }
+        Map<Insect, Ray[]> tracked = new IdentityHashMap<>();
+        for (Insect insect : insects) {
+            track(tracked, insect);
+        }
+        raysByInsect = tracked;
+    }
+
+    /**
+     * Starts tracking the directions of an insect that was put on the board.
+     *
+     * @param insect The insect.
+     */
+    void add(Insect insect) {
+        Map<Insect, Ray[]> tracked = raysByInsect;
+        if (tracked != null) {
+            track(tracked, insect);
+        } else {
+            directions += Integer.bitCount(insect.getMovingDirections());
+        }
+    }
+
+    /**
+     * Indexes the rays of an insect and scores them.
+     *
+     * @param tracked The rays of the tracked insects, receiving those of the insect.
+     * @param insect  The insect.
+     */
+    private void track(Map<Insect, Ray[]> tracked, Insect insect) {
+        EntityPosition position = insect.getEntityPosition();
+        int x = position.getX();
+        int y = position.getY();
+        Ray[] insectRays = new Ray[Direction.COUNT];
+        for (int bits = insect.getMovingDirections(); bits != 0; bits &= bits - 1) {
+            Direction direction = Direction.ofOrdinal(Integer.numberOfTrailingZeros(bits));
+            int family = BoardLines.familyOf(direction);
+            Ray ray = new Ray(family, lines.lineOf(family, x, y), lines.positionOf(family, x, y), insect.step,
+                    BoardLines.isForward(direction), board.visibleFood(x, y, direction, insect.step));
+            insectRays[direction.ordinal()] = ray;
+            Ray[] bucket = rays[family][ray.line];
+            int count = counts[family][ray.line];
+            if (bucket == null) {
+                bucket = new Ray[4];
+            } else if (count == bucket.length) {
+                bucket = Arrays.copyOf(bucket, 2 * count);
+            }
+            bucket[count] = ray;
+            rays[family][ray.line] = bucket;
+            counts[family][ray.line] = count + 1;
+        }
+        tracked.put(insect, insectRays);
+    }
+
+    /**
+     * Stops tracking an insect that left the board.
+     *
+     * @param insect The insect.
+     */
+    void remove(Insect insect) {
+        Map<Insect, Ray[]> tracked = raysByInsect;
+        if (tracked == null) {
+            return;
+        }
+        Ray[] insectRays = tracked.remove(insect);
+        if (insectRays == null) {
+            return;
+        }
+        for (Ray ray : insectRays) {
+            if (ray == null) {
+                continue;
+            }
+            Ray[] bucket = rays[ray.family][ray.line];
+            int last = --counts[ray.family][ray.line];
+            for (int i = 0; i <= last; i++) {
+                if (bucket[i] == ray) {
+                    bucket[i] = bucket[last];
+                    bucket[last] = null;
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Adjusts the scores of the rays passing over a cell whose food changed.
+     *
+     * @param x      The x-coordinate of the cell.
+     * @param y      The y-coordinate of the cell.
+     * @param amount The change of the food amount, negative when food was eaten.
+     */
+    void foodChanged(int x, int y, int amount) {
+        Map<Insect, Ray[]> tracked = raysByInsect;
+        if (tracked == null || tracked.isEmpty()) {
+            return;
+        }
+        for (int family = 0; family < BoardLines.FAMILIES; family++) {
+            int line = lines.lineOf(family, x, y);
+            Ray[] bucket = rays[family][line];
+            if (bucket == null) {
+                continue;
+            }
+            int position = lines.positionOf(family, x, y);
+            for (int i = counts[family][line] - 1; i >= 0; i--) {
+                Ray ray = bucket[i];
+                int distance = ray.forward ? position - ray.position : ray.position - position;
+                if (distance > 0 && distance % ray.step == 0) {
+                    ray.score += amount;
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the food an insect sees in a direction, from the cache if the insect is tracked.
+     *
+     * @param insect    The insect.
+     * @param direction The direction.
+     * @return The total amount of food on the ray.
+     */
+    int score(Insect insect, Direction direction) {
+        Map<Insect, Ray[]> tracked = raysByInsect;
+        if (tracked == null && ++misses > directions) {
+            // concurrent planners may lose an increment, which only delays enabling
+            enable();
+            tracked = raysByInsect;
+        }
+        Ray[] insectRays = tracked == null ? null : tracked.get(insect);
+        if (insectRays != null && insectRays[direction.ordinal()] != null) {
+            return insectRays[direction.ordinal()].score;
+        }
+        EntityPosition position = insect.getEntityPosition();
+        return board.visibleFood(position.getX(), position.getY(), direction, insect.step);
     }
 }
+
 /**
- * Enum representing colors of insects in the game.
- * The enum provides methods to convert between String and InsectColor.
+ * A map view of a {@link Board} keyed by {@code "x y"} strings, as the insects' map-based API expects.
+ * Lookups parse the key and read the board arrays; insects recognise the view and scan the arrays directly.
  */
-enum InsectColor {
-    RED,
-    GREEN,
-    BLUE,
-    YELLOW;
+class BoardDataView extends AbstractMap<String, BoardEntity> {
+    private final Board board;
+
     /**
-     * Converts a String representation of color to InsectColor.
+     * Constructs a view of the given board.
      *
-     * @param color The String representation of color.
-     * @return The corresponding InsectColor.
-     * @throws InvalidInsectColorException If the provided color is invalid.
+     * @param board The board backing this view.
      */
-    public static InsectColor toColor(String color) throws InvalidInsectColorException {
-        switch (color) {
-            case "Red":
-                return InsectColor.RED;
-            case "Green":
-                return InsectColor.GREEN;
-            case "Blue":
-                return InsectColor.BLUE;
-            case "Yellow":
-                return InsectColor.YELLOW;
-            default:
-                throw new InvalidInsectColorException();
+    BoardDataView(Board board) {
+        this.board = board;
+    }
+
+    /**
+     * Gets the board backing this view.
+     *
+     * @return The backing board.
+     */
+    public Board getBoard() {
+        return board;
+    }
+
+    /**
+     * Parses a {@code "x y"} key into a cell index.
+     *
+     * @param key The key to parse.
+     * @return The cell index, or -1 if the key does not name a cell of the board.
+     */
+    private long indexOfKey(Object key) {
+        if (!(key instanceof String)) {
+            return -1;
+        }
+        String text = (String) key;
+        int space = text.indexOf(' ');
+        if (space < 0) {
+            return -1;
+        }
+        try {
+            int x = Integer.parseInt(text, 0, space, 10);
+            int y = Integer.parseInt(text, space + 1, text.length(), 10);
+            return board.contains(x, y) ? board.indexOf(x, y) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
         }
     }
+
     /**
-     * Converts InsectColor to its String representation.
+     * Materializes the entity of a cell index.
      *
-     * @param color The InsectColor to convert.
-     * @return The String representation of the color.
+     * @param index The cell index.
+     * @return The entity in the cell, or null if it is empty.
      */
-    public static String toString(InsectColor color) {
-        if (color == RED) {
-            return "Red";
+    private BoardEntity entityAt(long index) {
+        return board.entityAt(board.xOf(index), board.yOf(index));
+    }
+
+    @Override
+    public BoardEntity get(Object key) {
+        long index = indexOfKey(key);
+        return index < 0 ? null : entityAt(index);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        Metrics.count(Metrics.Counter.BOARD_LOOKUPS, 1);
+        long index = indexOfKey(key);
+        return index >= 0 && board.getOccupant(index) != Board.EMPTY;
+    }
+
+    @Override
+    public BoardEntity put(String key, BoardEntity value) {
+        long index = indexOfKey(key);
+        if (index < 0) {
+            throw new IllegalArgumentException("Position outside of the board: " + key);
         }
-        if (color == GREEN) {
-            return "Green";
+        BoardEntity previous = entityAt(index);
+        board.removeEntity(index);
+        value.setEntityPosition(new EntityPosition(board.xOf(index), board.yOf(index)));
+        try {
+            board.addEntity(value);
+        } catch (TwoEntitiesOnSamePositionException e) {
+            throw new IllegalStateException(e);
         }
-        if (color == BLUE) {
-            return "Blue";
-        } else {
-            return "Yellow";
+        return previous;
+    }
+
+    @Override
+    public BoardEntity remove(Object key) {
+        long index = indexOfKey(key);
+        if (index < 0) {
+            return null;
         }
+        BoardEntity previous = entityAt(index);
+        board.removeEntity(index);
+        return previous;
+    }
+
+    @Override
+    public int size() {
+        return board.getEntityCount();
+    }
+
+    @Override
+    public Set<Map.Entry<String, BoardEntity>> entrySet() {
+        return new AbstractSet<Map.Entry<String, BoardEntity>>() {
+            @Override
+            public Iterator<Map.Entry<String, BoardEntity>> iterator() {
+                return new Iterator<Map.Entry<String, BoardEntity>>() {
+                    private final long cells = (long) board.getSize() * board.getSize();
+                    private long next = advance(0);
+                    private long last = -1;
+
+                    private long advance(long from) {
+                        long index = board.nextOccupied(from);
+                        return index < 0 ? cells : index;
+                    }
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < cells;
+                    }
+
+                    @Override
+                    public Map.Entry<String, BoardEntity> next() {
+                        if (next >= cells) {
+                            throw new NoSuchElementException();
+                        }
+                        last = next;
+                        next = advance(next + 1);
+                        String key = board.xOf(last) + " " + board.yOf(last);
+                        return new AbstractMap.SimpleImmutableEntry<>(key, entityAt(last));
+                    }
+
+                    @Override
+                    public void remove() {
+                        if (last < 0) {
+                            throw new IllegalStateException();
+                        }
+                        board.removeEntity(last);
+                        last = -1;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return board.getEntityCount();
+            }
+        };
     }
 }
+
 /**
- * Represents the game board that holds entities such as insects and food points.
- * The board manages the positions of entities and provides methods for interacting with them.
- *
- * @throws InvalidBoardSizeException If an invalid board size is provided during instantiation.
+ * Represents an abstract board entity with a position on the game board.
  */
-class Board {
-    private static Map<String, BoardEntity> boardData = new HashMap<>();
-    private int size;
+abstract class BoardEntity {
+    protected EntityPosition entityPosition;
+
     /**
-     * Constructs a new game board with the specified size.
+     * Gets the position of the board entity.
      *
-     * @param size The size of the game board.
-     * @throws InvalidBoardSizeException If the provided board size is invalid.
+     * @return The position of the board entity.
      */
-    public Board(Integer size) throws InvalidBoardSizeException {
-        this.size = size;
+    public EntityPosition getEntityPosition() {
+        return entityPosition;
     }
+
     /**
-     * Gets the size of the game board.
+     * Sets the position of the board entity.
      *
-     * @return The size of the game board.
+     * @param entityPosition The new position of the board entity.
      */
-    public int getSize() {
-        return size;
+    public void setEntityPosition(EntityPosition entityPosition) {
+        this.entityPosition = entityPosition;
     }
+}
+
+/**
+ * Represents a position (coordinates) on the game board.
+ */
+class EntityPosition {
+    private int x;
+    private int y;
+
     /**
-     * Adds a board entity to the game board.
+     * Constructs a new entity position with the specified coordinates.
      *
-     * @param entity The board entity to be added.
-     * @throws DuplicateInsectException        If an attempt is made to add a duplicate insect.
-     * @throws TwoEntitiesOnSamePositionException If two entities are in the same position.
-     * @throws InvalidEntityPositionException  If the entity position is invalid.
+     * @param x The x-coordinate.
+     * @param y The y-coordinate.
      */
-    public void addEntity(BoardEntity entity) throws
-            TwoEntitiesOnSamePositionException {
-        String key = new StringBuilder()
-                .append(entity.entityPosition.getX())
-                .append(" ")
-                .append(entity.getEntityPosition().getY()).toString();
-        if (boardData.containsKey(key)) {
-            throw new TwoEntitiesOnSamePositionException();
-        } else {
-            boardData.put(key, entity);
-        }
+    public EntityPosition(int x, int y) {
+        this.x = x;
+        this.y = y;
+    }
 
+    /**
+     * Gets the x-coordinate of the entity position.
+     *
+     * @return The x-coordinate.
+     */
+    public int getX() {
+        return x;
     }
+
     /**
-     * Gets the board entity at the specified position.
+     * Sets the x-coordinate of the entity position.
      *
-     * @param position The position of the board entity.
-     * @return The board entity at the specified position.
-     * @throws InvalidEntityPositionException If the entity position is invalid.
+     * @param x The new x-coordinate.
      */
-    public BoardEntity getEntity(EntityPosition position) throws InvalidEntityPositionException {
-        String key = new StringBuilder()
-                .append(position.getY())
-                .append(" ")
-                .append(position.getX()).toString();
-        BoardEntity boardEntity = boardData.get(key);
-        if (boardEntity != null) {
-            return boardEntity;
-        } else {
-            throw new InvalidEntityPositionException();
+    public void setX(int x) {
+        this.x = x;
+    }
+
+    /**
+     * Gets the y-coordinate of the entity position.
+     *
+     * @return The y-coordinate.
+     */
+    public int getY() {
+        return y;
+    }
+
+    /**
+     * Sets the y-coordinate of the entity position.
+     *
+     * @param y The new y-coordinate.
+     */
+    public void setY(int y) {
+        this.y = y;
+    }
+
+    /**
+     * Checks if this entity position is equal to another object.
+     *
+     * @param o The object to compare with.
+     * @return True if the positions are equal; false otherwise.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
         }
+        EntityPosition that = (EntityPosition) o;
+        return x == that.x && y == that.y;
     }
 
     /**
-     * Gets the direction of movement for the given insect.
+     * Computes the hash code of the entity position.
      *
-     * @param insect The insect for which to determine the direction.
-     * @return The direction of movement for the insect.
+     * @return The hash code of the entity position.
      */
-    public Direction getDirection(Insect insect) {
-        return null;
+    @Override
+    public int hashCode() {
+        return Objects.hash(x, y);
     }
+}
+
+/**
+ * Represents a food point on the game board.
+ */
+class FoodPoint extends BoardEntity {
+    protected int value;
 
     /**
-     * Gets the sum of directions for the given insect.
+     * Constructs a new food point entity with the specified position and value.
      *
-     * @param insect The insect for which to calculate the sum of directions.
-     * @return The sum of directions for the insect.
+     * @param position The position of the food point on the game board.
+     * @param value    The value associated with the food point.
+     */
+    public FoodPoint(EntityPosition position, int value) {
+        setEntityPosition(position);
+        this.value = value;
+    }
+}
+
+/**
+ * Describes how a species of insect moves: the directions it scans, the distance between the cells it visits and
+ * the insects that stop it. Every insect is scored and moved by the same kernel in {@link Insect}, driven by its
+ * species, so a new species needs no code.
+ * <p>
+ * The four built-in species keep their binary type codes. More species are read at startup from the file named by
+ * {@code -Dinsects.species}, one per line: {@code <name> <directions> <step> [blocking]}, where the directions are
+ * {@code orthogonal}, {@code diagonal}, {@code all} or a comma separated list such as {@code N,NE,E}, and the
+ * blocking rule is one of {@code other-colors} (the default), {@code any-color} or {@code none}. Blank lines and
+ * lines starting with {@code #} are ignored.
+ */
+final class Species {
+    static final int ORTHOGONAL = Direction.E.mask() | Direction.W.mask() | Direction.N.mask() | Direction.S.mask();
+    static final int DIAGONAL = Direction.SW.mask() | Direction.SE.mask() | Direction.NW.mask() | Direction.NE.mask();
+    static final int ALL = ORTHOGONAL | DIAGONAL;
+
+    static final Species BUTTERFLY = new Species("Butterfly", ORTHOGONAL, 1, Blocking.OTHER_COLORS, 0);
+    static final Species ANT = new Species("Ant", ALL, 1, Blocking.OTHER_COLORS, 1);
+    static final Species SPIDER = new Species("Spider", DIAGONAL, 1, Blocking.OTHER_COLORS, 2);
+    static final Species GRASSHOPPER = new Species("Grasshopper", ORTHOGONAL, 2, Blocking.OTHER_COLORS, 3);
+
+    private static final String CONFIG = System.getProperty("insects.species");
+    private static final Species[] BUILT_IN = {BUTTERFLY, ANT, SPIDER, GRASSHOPPER};
+    private static final Map<String, Species> REGISTRY = load();
+
+    /**
+     * The insects that stop a travelling insect.
+     */
+    enum Blocking {
+        OTHER_COLORS("other-colors"),
+        ANY_COLOR("any-color"),
+        NONE("none");
+
+        private final String name;
+
+        Blocking(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Gets the blocking rule with the given name.
+         *
+         * @param name The name used in the species file.
+         * @return The blocking rule, or null if there is none with that name.
+         */
+        static Blocking of(String name) {
+            for (Blocking blocking : values()) {
+                if (blocking.name.equals(name)) {
+                    return blocking;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Gets the occupant codes that stop an insect of a color.
+         *
+         * @param color The color of the travelling insect.
+         * @return A bit set with bit {@code c} set if occupant code {@code c} stops the insect.
+         */
+        int blockers(InsectColor color) {
+            int all = 0;
+            for (InsectColor other : InsectColor.values()) {
+                all |= 1 << (Board.INSECT + other.ordinal());
+            }
+            switch (this) {
+                case OTHER_COLORS:
+                    return all & ~(1 << (Board.INSECT + color.ordinal()));
+                case ANY_COLOR:
+                    return all;
+                default:
+                    return 0;
+            }
+        }
+    }
+
+    private final String name;
+    private final int directions;
+    private final int step;
+    private final Blocking blocking;
+    private final int code;
+    private final byte[] token;
+
+    private Species(String name, int directions, int step, Blocking blocking, int code) {
+        this.name = name;
+        this.directions = directions;
+        this.step = step;
+        this.blocking = blocking;
+        this.code = code;
+        this.token = name.concat(" ").getBytes(Charset.defaultCharset());
+    }
+
+    /**
+     * Gets the name insects of this species have in scenario and result files.
+     *
+     * @return The name of the species.
      */
-    public int getDirectionSum(Insect insect) {
-        return 0;
+    String getName() {
+        return name;
     }
 
     /**
-     * Gets the map representing the current state of the game board.
+     * Gets the directions insects of this species scan and may travel in.
      *
-     * @return The map containing entity positions and corresponding board entities.
+     * @return The directions as a bit set of {@link Direction#mask()} bits.
      */
-    public static Map<String, BoardEntity> getBoardData() {
-        return boardData;
+    int getDirections() {
+        return directions;
     }
-}
-
-/**
- * Represents an abstract board entity with a position on the game board.
- */
-abstract class BoardEntity {
-    protected EntityPosition entityPosition;
 
     /**
-     * Gets the position of the board entity.
+     * Gets the distance between two cells visited by insects of this species.
      *
-     * @return The position of the board entity.
+     * @return The step.
      */
-    public EntityPosition getEntityPosition() {
-        return entityPosition;
+    int getStep() {
+        return step;
     }
 
     /**
-     * Sets the position of the board entity.
+     * Gets the rule deciding which insects stop insects of this species.
      *
-     * @param entityPosition The new position of the board entity.
+     * @return The blocking rule.
      */
-    public void setEntityPosition(EntityPosition entityPosition) {
-        this.entityPosition = entityPosition;
+    Blocking getBlocking() {
+        return blocking;
     }
-}
-
-/**
- * Represents a position (coordinates) on the game board.
- */
-class EntityPosition {
-    private int x;
-    private int y;
 
     /**
-     * Constructs a new entity position with the specified coordinates.
+     * Gets the type code of this species in the binary format.
      *
-     * @param x The x-coordinate.
-     * @param y The y-coordinate.
+     * @return The code, or -1 for a species read from the species file.
      */
-    public EntityPosition(int x, int y) {
-        this.x = x;
-        this.y = y;
+    int getCode() {
+        return code;
     }
 
     /**
-     * Gets the x-coordinate of the entity position.
+     * Gets the name of this species followed by a space, as written in text results.
      *
-     * @return The x-coordinate.
+     * @return The bytes of the token; must not be modified.
      */
-    public int getX() {
-        return x;
+    byte[] getToken() {
+        return token;
     }
 
     /**
-     * Sets the x-coordinate of the entity position.
+     * Creates an insect of this species.
      *
-     * @param x The new x-coordinate.
+     * @param position The position of the insect.
+     * @param color    The color of the insect.
+     * @return The new insect.
      */
-    public void setX(int x) {
-        this.x = x;
+    Insect create(EntityPosition position, InsectColor color) {
+        switch (code) {
+            case 0:
+                return new Butterfly(position, color);
+            case 1:
+                return new Ant(position, color);
+            case 2:
+                return new Spider(position, color);
+            case 3:
+                return new Grasshopper(position, color);
+            default:
+                return new ConfiguredInsect(position, color, this);
+        }
     }
 
     /**
-     * Gets the y-coordinate of the entity position.
+     * Gets the species with the given name.
      *
-     * @return The y-coordinate.
+     * @param name The name of the species.
+     * @return The species, or null if there is none with that name.
      */
-    public int getY() {
-        return y;
+    static Species forName(String name) {
+        return REGISTRY.get(name);
     }
 
     /**
-     * Sets the y-coordinate of the entity position.
+     * Gets the built-in species with the given binary type code.
      *
-     * @param y The new y-coordinate.
+     * @param code The type code, from 0 to 3.
+     * @return The species.
      */
-    public void setY(int y) {
-        this.y = y;
+    static Species ofCode(int code) {
+        return BUILT_IN[code];
     }
 
     /**
-     * Checks if this entity position is equal to another object.
+     * Builds the registry from the built-in species and the species file, if any. Lines that cannot be parsed or
+     * that redefine a known species are reported and skipped.
      *
-     * @param o The object to compare with.
-     * @return True if the positions are equal; false otherwise.
+     * @return The species by name.
      */
-    @Override
-    public boolean equals(Object o) {
-        if (this == o) {
-            return true;
+    private static Map<String, Species> load() {
+        Map<String, Species> registry = new HashMap<>();
+        for (Species species : BUILT_IN) {
+            registry.put(species.name, species);
         }
-        if (o == null || getClass() != o.getClass()) {
-            return false;
+        if (CONFIG == null) {
+            return registry;
         }
-        EntityPosition that = (EntityPosition) o;
-        return x == that.x && y == that.y;
+        try (ScenarioReader reader = ScenarioReader.open(Path.of(CONFIG))) {
+            for (int number = 1; reader.nextLine(); number++) {
+                String[] fields = reader.fields();
+                if (fields.length == 0 || fields[0].startsWith("#")) {
+                    continue;
+                }
+                Species species = parse(fields);
+                if (species == null) {
+                    System.err.println(CONFIG + ":" + number + ": invalid species: " + reader.line().trim());
+                } else if (registry.putIfAbsent(species.name, species) != null) {
+                    System.err.println(CONFIG + ":" + number + ": duplicate species: " + species.name);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Cannot read species file " + CONFIG + ": " + e);
+        }
+        return registry;
     }
 
     /**
-     * Computes the hash code of the entity position.
+     * Parses the fields of one line of the species file.
      *
-     * @return The hash code of the entity position.
+     * @param fields The name, directions, step and optional blocking rule.
+     * @return The species, or null if the fields are invalid.
      */
-    @Override
-    public int hashCode() {
-        return Objects.hash(x, y);
+    private static Species parse(String[] fields) {
+        if (fields.length < 3 || fields.length > 4) {
+            return null;
+        }
+        int directions = parseDirections(fields[1]);
+        int step;
+        try {
+            step = Integer.parseInt(fields[2]);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        Blocking blocking = fields.length == 4 ? Blocking.of(fields[3]) : Blocking.OTHER_COLORS;
+        if (directions == 0 || step < 1 || blocking == null) {
+            return null;
+        }
+        return new Species(fields[0], directions, step, blocking, -1);
     }
-}
-
-/**
- * Represents a food point on the game board.
- */
-class FoodPoint extends BoardEntity {
-    protected int value;
 
     /**
-     * Constructs a new food point entity with the specified position and value.
+     * Parses the directions of a species.
      *
-     * @param position The position of the food point on the game board.
-     * @param value    The value associated with the food point.
+     * @param text {@code orthogonal}, {@code diagonal}, {@code all} or a comma separated list of direction names.
+     * @return The directions as a bit set, or 0 if the text is invalid.
      */
-    public FoodPoint(EntityPosition position, int value) {
-        setEntityPosition(position);
-        this.value = value;
+    private static int parseDirections(String text) {
+        switch (text) {
+            case "orthogonal":
+                return ORTHOGONAL;
+            case "diagonal":
+                return DIAGONAL;
+            case "all":
+                return ALL;
+            default:
+                int directions = 0;
+                for (String name : text.split(",")) {
+                    try {
+                        directions |= Direction.valueOf(name).mask();
+                    } catch (IllegalArgumentException e) {
+                        return 0;
+                    }
+                }
+                return directions;
+        }
     }
 }
 
 abstract class Insect extends BoardEntity {
     protected InsectColor color;
-    protected int step = 1;
-    protected static Set<Direction> orthogonalDirections = new HashSet<>();
-
-    protected static Set<Direction> diagonalDirections = new HashSet<>();
+    protected final int step;
+    private final Species species;
 
     /**
-     * This comparator lambda takes two pairs of Direction-FoodScores
-     * and tells if one pair greater than second, in according to certain rules
+     * The occupant codes that stop this insect, as a bit set from {@link Species.Blocking#blockers}.
      */
+    private final int blockers;
 
-    protected static final Comparator<Map.Entry<Direction, Integer>> PATH_SCORES_COMPARATOR =
-            (e1, e2) -> {
-                int firstCompare = e2.getValue() - e1.getValue();
-                if (firstCompare != 0) {
-                    return firstCompare;
-                } else {
-                    return e2.getKey().getPriority() - e1.getKey().getPriority();
-                }
-            };
-
-    static {
-        orthogonalDirections.add(Direction.E);
-        orthogonalDirections.add(Direction.W);
-        orthogonalDirections.add(Direction.N);
-        orthogonalDirections.add(Direction.S);
-
-        diagonalDirections.add(Direction.SW);
-        diagonalDirections.add(Direction.SE);
-        diagonalDirections.add(Direction.NW);
-        diagonalDirections.add(Direction.NE);
-    }
+    /**
+     * The visible food of each direction, indexed by {@link Direction#ordinal()} and reused by every
+     * best-direction query of this insect.
+     */
+    private final int[] directionScores = new int[Direction.COUNT];
 
-    public Insect(EntityPosition position, InsectColor color) {
+    public Insect(EntityPosition position, InsectColor color, Species species) {
         this.color = color;
         this.entityPosition = position;
+        this.species = species;
+        this.step = species.getStep();
+        this.blockers = species.getBlocking().blockers(color);
     }
 
     public InsectColor getColor() {
         return color;
     }
 
-    public abstract Direction getBestDirection(Map<String, BoardEntity> boardData, int boardSize);
+    /**
+     * Gets the species that decides how this insect moves.
+     *
+     * @return The species of the insect.
+     */
+    public Species getSpecies() {
+        return species;
+    }
+
+    /**
+     * Gets the occupant codes that stop this insect.
+     *
+     * @return A bit set with bit {@code c} set if occupant code {@code c} stops the insect.
+     */
+    int getBlockers() {
+        return blockers;
+    }
+
+    /**
+     * Picks the direction with the most visible food among the directions of this insect's species.
+     *
+     * @param boardData The map containing the entities on the board.
+     * @param boardSize The size of the game board.
+     * @return The best direction.
+     */
+    public final Direction getBestDirection(Map<String, BoardEntity> boardData, int boardSize) {
+        return getBestDirection(species.getDirections(), boardData, boardSize);
+    }
+
+    /**
+     * Gets the directions this insect scans and may travel in.
+     *
+     * @return The directions of movement as a bit set of {@link Direction#mask()} bits.
+     */
+    public final int getMovingDirections() {
+        return species.getDirections();
+    }
+
+    /**
+     * Scores a set of directions and picks the best one without allocating: the scores go into a fixed
+     * array indexed by direction ordinal, and {@link Direction#select(int[], int)} finds the winner in one pass.
+     *
+     * @param directions The directions to score, as a bit set.
+     * @param boardData  The map containing the entities on the board.
+     * @param boardSize  The size of the game board.
+     * @return The direction with the most visible food, ties going to the higher priority.
+     */
+    protected final Direction getBestDirection(int directions, Map<String, BoardEntity> boardData, int boardSize) {
+        for (int bits = directions; bits != 0; bits &= bits - 1) {
+            Direction direction = Direction.ofOrdinal(Integer.numberOfTrailingZeros(bits));
+            directionScores[direction.ordinal()] = visibleFood(direction, entityPosition, boardData, boardSize);
+        }
+        return Direction.select(directionScores, directions);
+    }
+
+    /**
+     * Gets the score a direction received in the last best-direction query of this insect.
+     *
+     * @param direction The direction.
+     * @return The visible food of the direction, or a stale value if the direction was not scored.
+     */
+    int getDirectionScore(Direction direction) {
+        return directionScores[direction.ordinal()];
+    }
 
-    public abstract int travelDirection(Direction dir, Map<String, BoardEntity> boardData, int boardSize);
+    /**
+     * Travels in a direction, eating the food on the way until the border or a blocking insect is reached.
+     *
+     * @param dir       The direction of travel.
+     * @param boardData The map containing the entities on the board.
+     * @param boardSize The size of the game board.
+     * @return The total amount of food eaten.
+     */
+    public final int travelDirection(Direction dir, Map<String, BoardEntity> boardData, int boardSize) {
+        return travel(dir, entityPosition, boardData, boardSize);
+    }
 
     protected String getPositionString(EntityPosition entityPosition){
+        return getPositionString(entityPosition.getX(), entityPosition.getY());
+    }
+
+    protected String getPositionString(int x, int y) {
         return new StringBuilder()
-                .append(entityPosition.getX())
+                .append(x)
                 .append(" ")
-                .append(entityPosition.getY()).toString();
+                .append(y).toString();
     }
 
     public int getOrthogonalDirectionVisible(
@@ -620,13 +7155,62 @@ abstract class Insect extends BoardEntity {
             Map<String, BoardEntity> boardData,
             int boardSize
     ) {
+        return visibleFood(dir, entityPosition, boardData, boardSize);
+    }
+
+    public int travelOrthogonally(
+            Direction dir,
+            EntityPosition entityPosition,
+            InsectColor color,
+            Map<String, BoardEntity> boardData,
+            int boardSize
+    ) {
+        return travel(dir, entityPosition, boardData, boardSize);
+    }
+
+    public int getDiagonalDirectionVisible(
+            Direction dir,
+            EntityPosition entityPosition,
+            Map<String, BoardEntity> boardData,
+            int boardSize
+    ) {
+        return visibleFood(dir, entityPosition, boardData, boardSize);
+    }
+
+    public int travelDiagonally(
+            Direction dir,
+            EntityPosition position,
+            InsectColor color,
+            Map<String, BoardEntity> boardData,
+            int boardSize
+    ) {
+        return travel(dir, position, boardData, boardSize);
+    }
+
+    /**
+     * Sums the food visible from a position in a direction, every {@code step} cells up to the border.
+     *
+     * @param dir            The direction to look in.
+     * @param entityPosition The position to look from.
+     * @param boardData      The map containing the entities on the board.
+     * @param boardSize      The size of the game board.
+     * @return The total amount of visible food.
+     */
+    private int visibleFood(Direction dir, EntityPosition entityPosition, Map<String, BoardEntity> boardData,
+                            int boardSize) {
+        if (boardData instanceof BoardDataView) {
+            Board board = ((BoardDataView) boardData).getBoard();
+            if (entityPosition == this.entityPosition) {
+                return board.visibleScore(this, dir);
+            }
+            return board.visibleFood(entityPosition.getX(), entityPosition.getY(), dir, step);
+        }
         int newX = entityPosition.getX() + (step * dir.getxShift());
         int newY = entityPosition.getY() + (step * dir.getyShift());
 
         int foodPoints = 0;
         while (newX > 0 && newX <= boardSize && newY > 0 && newY <= boardSize) {
-            EntityPosition ep = new EntityPosition(newX, newY);
-            BoardEntity nextStepEntity = boardData.get(getPositionString(ep));
+            BoardEntity nextStepEntity = boardData.get(getPositionString(newX, newY));
             if (nextStepEntity instanceof FoodPoint) {
                 foodPoints += ((FoodPoint) nextStepEntity).value;
             }
@@ -636,13 +7220,22 @@ abstract class Insect extends BoardEntity {
         return foodPoints;
     }
 
-    public int travelOrthogonally(
-            Direction dir,
-            EntityPosition entityPosition,
-            InsectColor color,
-            Map<String, BoardEntity> boardData,
-            int boardSize
-    ) {
+    /**
+     * Moves from a position in a direction, eating every {@code step}-th cell's food until the border or an
+     * insect this insect's species is blocked by. The insect is removed from the board afterwards.
+     *
+     * @param dir            The direction of travel.
+     * @param entityPosition The position to travel from.
+     * @param boardData      The map containing the entities on the board.
+     * @param boardSize      The size of the game board.
+     * @return The total amount of food eaten.
+     */
+    private int travel(Direction dir, EntityPosition entityPosition, Map<String, BoardEntity> boardData,
+                       int boardSize) {
+        if (boardData instanceof BoardDataView) {
+            Board board = ((BoardDataView) boardData).getBoard();
+            return board.travel(entityPosition.getX(), entityPosition.getY(), dir, step, blockers);
+        }
         int newX = entityPosition.getX();
         int newY = entityPosition.getY();
 
@@ -650,15 +7243,15 @@ abstract class Insect extends BoardEntity {
         while (newX > 0 && newX <= boardSize && newY > 0 && newY <= boardSize) {
             newX = newX + (step * dir.getxShift());
             newY = newY + (step * dir.getyShift());
-            EntityPosition ep = new EntityPosition(newX, newY);
-            BoardEntity nextStepEntity = boardData.get(getPositionString(ep));
+            String key = getPositionString(newX, newY);
+            BoardEntity nextStepEntity = boardData.get(key);
             if (nextStepEntity instanceof FoodPoint) {
                 foodPoints += ((FoodPoint) nextStepEntity).value;
-                boardData.remove(getPositionString(ep));
+                boardData.remove(key);
             }
             if (nextStepEntity instanceof Insect) {
                 Insect meetInsect = (Insect) nextStepEntity;
-                if (meetInsect.color != this.color) {
+                if ((blockers & 1 << (Board.INSECT + meetInsect.color.ordinal())) != 0) {
                     break;
                 }
             }
@@ -669,182 +7262,40 @@ abstract class Insect extends BoardEntity {
         return foodPoints;
     }
 
-    public int getDiagonalDirectionVisible(
-            Direction dir,
-            EntityPosition entityPosition,
-            Map<String, BoardEntity> boardData,
-            int boardSize
-    ) {
-        return getOrthogonalDirectionVisible(dir, entityPosition, boardData, boardSize);
-    }
-
-    public int travelDiagonally(
-            Direction dir,
-            EntityPosition position,
-            InsectColor color,
-            Map<String, BoardEntity> boardData,
-            int boardSize
-    ) {
-        return travelOrthogonally(dir, position, color, boardData, boardSize);
-    }
-
 }
 
 class Butterfly extends Insect implements OrthogonalMoving {
-    public Butterfly(EntityPosition position, InsectColor color) throws InvalidInsectTypeException {
-        super(position, color);
-    }
-
-    @Override
-    public Direction getBestDirection(Map<String, BoardEntity> boardData, int boardSize) {
-        Map<Direction, Integer> pathsScores = new HashMap<>();
-
-
-        for (Direction direction : orthogonalDirections) {
-            pathsScores.put(direction, getOrthogonalDirectionVisible(
-                    direction,
-                    entityPosition,
-                    boardData,
-                    boardSize
-            ));
-        }
-
-
-        List<Map.Entry<Direction, Integer>> pathsScoresList = new ArrayList<>(pathsScores.entrySet());
-        Collections.sort(pathsScoresList, PATH_SCORES_COMPARATOR);
-
-        return pathsScoresList.get(0).getKey();
-    }
-
-    @Override
-    public int travelDirection(Direction dir, Map<String, BoardEntity> boardData, int boardSize) {
-        int scores = 0;
-
-        scores = travelOrthogonally(dir, entityPosition, color, boardData, boardSize);
-
-        return scores;
+    public Butterfly(EntityPosition position, InsectColor color) {
+        super(position, color, Species.BUTTERFLY);
     }
 }
 
 class Ant extends Insect implements DiagonalMoving, OrthogonalMoving {
 
-    public Ant(EntityPosition position, InsectColor color) throws InvalidInsectTypeException {
-        super(position, color);
-    }
-
-    @Override
-    public Direction getBestDirection(Map<String, BoardEntity> boardData, int boardSize) {
-        Map<Direction, Integer> pathsScores = new HashMap<>();
-
-        for (Direction direction : orthogonalDirections) {
-            pathsScores.put(direction, getOrthogonalDirectionVisible(
-                    direction,
-                    entityPosition,
-                    boardData,
-                    boardSize
-            ));
-        }
-
-        for (Direction direction : diagonalDirections) {
-            pathsScores.put(direction, getDiagonalDirectionVisible(
-                    direction,
-                    entityPosition,
-                    boardData,
-                    boardSize
-            ));
-        }
-
-
-        List<Map.Entry<Direction, Integer>> pathsScoresList = new ArrayList<>(pathsScores.entrySet());
-        Collections.sort(pathsScoresList, PATH_SCORES_COMPARATOR);
-
-        return pathsScoresList.get(0).getKey();
-    }
-
-    @Override
-    public int travelDirection(Direction dir, Map<String, BoardEntity> boardData, int boardSize) {
-        int scores = 0;
-        if (orthogonalDirections.contains(dir)) {
-            scores = travelOrthogonally(dir, entityPosition, color, boardData, boardSize);
-        }
-        if (diagonalDirections.contains(dir)) {
-            scores = travelDiagonally(dir, entityPosition, color, boardData, boardSize);
-        }
-        return scores;
+    public Ant(EntityPosition position, InsectColor color) {
+        super(position, color, Species.ANT);
     }
 }
 
 class Spider extends Insect implements DiagonalMoving {
-    public Spider(EntityPosition position, InsectColor color) throws InvalidInsectTypeException {
-        super(position, color);
-    }
-
-    @Override
-    public Direction getBestDirection(Map<String, BoardEntity> boardData, int boardSize) {
-        Map<Direction, Integer> pathsScores = new HashMap<>();
-        for (Direction direction : diagonalDirections) {
-            pathsScores.put(direction, getDiagonalDirectionVisible(
-                    direction,
-                    entityPosition,
-                    boardData,
-                    boardSize
-            ));
-        }
-
-
-        List<Map.Entry<Direction, Integer>> pathsScoresList = new ArrayList<>(pathsScores.entrySet());
-        Collections.sort(pathsScoresList, PATH_SCORES_COMPARATOR);
-
-        return pathsScoresList.get(0).getKey();
-    }
-
-    @Override
-    public int travelDirection(Direction dir, Map<String, BoardEntity> boardData, int boardSize) {
-        int scores = 0;
-
-        scores = travelDiagonally(dir, entityPosition, color, boardData, boardSize);
-
-        return scores;
+    public Spider(EntityPosition position, InsectColor color) {
+        super(position, color, Species.SPIDER);
     }
-
 }
 
 class Grasshopper extends Insect {
-    public Grasshopper(EntityPosition position, InsectColor color) throws InvalidInsectTypeException {
-        super(position, color);
-        this.step = 2;
+    public Grasshopper(EntityPosition position, InsectColor color) {
+        super(position, color, Species.GRASSHOPPER);
     }
+}
 
-    @Override
-    public Direction getBestDirection(Map<String, BoardEntity> boardData, int boardSize) {
-        Map<Direction, Integer> pathsScores = new HashMap<>();
-
-
-        for (Direction direction : orthogonalDirections) {
-            pathsScores.put(direction, getOrthogonalDirectionVisible(
-                    direction,
-                    entityPosition,
-                    boardData,
-                    boardSize
-            ));
-        }
-
-
-        List<Map.Entry<Direction, Integer>> pathsScoresList = new ArrayList<>(pathsScores.entrySet());
-        Collections.sort(pathsScoresList, PATH_SCORES_COMPARATOR);
-
-        return pathsScoresList.get(0).getKey();
-    }
-
-    @Override
-    public int travelDirection(Direction dir, Map<String, BoardEntity> boardData, int boardSize) {
-        int scores = 0;
-
-        scores = travelOrthogonally(dir, entityPosition, color, boardData, boardSize);
-
-        return scores;
+/**
+ * An insect of a species read from the species file.
+ */
+final class ConfiguredInsect extends Insect implements DiagonalMoving, OrthogonalMoving {
+    public ConfiguredInsect(EntityPosition position, InsectColor color, Species species) {
+        super(position, color, species);
     }
-
 }
 
 /**
@@ -861,7 +7312,7 @@ interface OrthogonalMoving {
      * @return The visibility in the specified orthogonal direction.
      */
     int getOrthogonalDirectionVisible(Direction dir, EntityPosition entityPosition,
-                                      Map<EntityPosition, BoardEntity> boardData, int boardSize);
+                                      Map<String, BoardEntity> boardData, int boardSize);
 
     /**
      * Moves the insect orthogonally in the specified direction on the game board.
@@ -874,7 +7325,7 @@ interface OrthogonalMoving {
      * @return The score obtained by moving in the specified orthogonal direction.
      */
     int travelOrthogonally(Direction dir, EntityPosition entityPosition, InsectColor color,
-                           Map<EntityPosition, BoardEntity> boardData, int boardSize);
+                           Map<String, BoardEntity> boardData, int boardSize);
 }
 
 /**
@@ -891,7 +7342,7 @@ interface DiagonalMoving {
      * @return The visibility in the specified diagonal direction.
      */
     int getDiagonalDirectionVisible(Direction dir, EntityPosition entityPosition,
-                                    Map<EntityPosition, BoardEntity> boardData, int boardSize);
+                                    Map<String, BoardEntity> boardData, int boardSize);
 
     /**
      * Moves the insect diagonally in the specified direction on the game board.
@@ -904,7 +7355,7 @@ interface DiagonalMoving {
      * @return The score obtained by moving in the specified diagonal direction.
      */
     int travelDiagonally(Direction dir, EntityPosition position, InsectColor color,
-                         Map<EntityPosition, BoardEntity> boardData, int boardSize);
+                         Map<String, BoardEntity> boardData, int boardSize);
 }
 
 /**
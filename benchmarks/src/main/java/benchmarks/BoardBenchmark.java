@@ -0,0 +1,53 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Board population: a new board filled with food through {@code Board.addEntity}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class BoardBenchmark {
+    @Param({"4", "16", "64", "256", "1000"})
+    public int boardSize;
+
+    @Param({"0.01", "0.1", "0.5"})
+    public double density;
+
+    private Object[] food;
+
+    @Setup(Level.Trial)
+    public void createFood() {
+        int[][] cells = Scenarios.cells(boardSize, Scenarios.foodCount(boardSize, density));
+        food = new Object[cells.length];
+        for (int i = 0; i < cells.length; i++) {
+            food[i] = Simulator.newFood(cells[i][0], cells[i][1], Scenarios.amount(i));
+        }
+    }
+
+    @Benchmark
+    public Object addEntity() {
+        Object board = Simulator.newBoard(boardSize);
+        for (Object foodPoint : food) {
+            Simulator.addEntity(board, foodPoint);
+        }
+        return board;
+    }
+}
@@ -0,0 +1,54 @@
+package benchmarks;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Direction scoring: {@code getBestDirection} of one insect standing in the centre of a food board.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class DirectionBenchmark {
+    @Param({"Ant", "Butterfly", "Spider", "Grasshopper"})
+    public String species;
+
+    @Param({"4", "16", "64", "256", "1000"})
+    public int boardSize;
+
+    @Param({"0.01", "0.1", "0.5"})
+    public double density;
+
+    private Object insect;
+    private Map<String, Object> boardData;
+
+    @Setup(Level.Trial)
+    public void createBoard() {
+        Object board = Scenarios.foodBoard(boardSize, density);
+        int centre = (boardSize + 1) / 2;
+        insect = Simulator.newInsect(species, centre, centre, "RED");
+        Simulator.addEntity(board, insect);
+        boardData = Simulator.boardData(board);
+    }
+
+    @Benchmark
+    public Object getBestDirection() {
+        return Simulator.bestDirection(insect, boardData, boardSize);
+    }
+}
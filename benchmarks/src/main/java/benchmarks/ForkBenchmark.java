@@ -0,0 +1,65 @@
+package benchmarks;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * What-if variants of one base scenario: the first insect choosing and travelling its best direction on a
+ * fork of the loaded board, against loading the scenario again for every variant.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ForkBenchmark {
+    @Param({"64", "256", "1000"})
+    public int boardSize;
+
+    @Param({"0.01", "0.1"})
+    public double density;
+
+    private ByteBuffer input;
+    private Object base;
+    private String insectKey;
+
+    @Setup(Level.Trial)
+    public void loadBase() {
+        input = ByteBuffer.wrap((String.join("\n", Scenarios.inputLines(boardSize, density)) + "\n")
+                .getBytes(StandardCharsets.US_ASCII));
+        base = Simulator.load(Simulator.reader(input.duplicate()));
+        insectKey = Simulator.positionKey(Simulator.insects(Simulator.boardData(base)).get(0));
+    }
+
+    @Benchmark
+    public int forkAndTravel() {
+        return travel(Simulator.boardData(Simulator.fork(base)));
+    }
+
+    @Benchmark
+    public int reloadAndTravel() {
+        return travel(Simulator.boardData(Simulator.load(Simulator.reader(input.duplicate()))));
+    }
+
+    private int travel(Map<String, Object> boardData) {
+        Object insect = boardData.get(insectKey);
+        Object direction = Simulator.bestDirection(insect, boardData, boardSize);
+        return Simulator.travelDirection(insect, direction, boardData, boardSize);
+    }
+}
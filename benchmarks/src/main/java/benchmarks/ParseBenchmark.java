@@ -0,0 +1,74 @@
+package benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Input ingest: opening the scenario file, then tokenizing and validating it onto a board,
+ * against loading the same scenario from the binary format.
+ * Food counts are capped by the input format's limit of 200 food points.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ParseBenchmark {
+    @Param({"4", "16", "64", "256", "1000"})
+    public int boardSize;
+
+    @Param({"0.01", "0.1", "0.5"})
+    public double density;
+
+    private File input;
+    private ByteBuffer content;
+    private ByteBuffer binary;
+
+    @Setup(Level.Trial)
+    public void writeInput() throws IOException {
+        String text = String.join("\n", Scenarios.inputLines(boardSize, density)) + "\n";
+        content = ByteBuffer.wrap(text.getBytes(StandardCharsets.US_ASCII));
+        input = File.createTempFile("scenario", ".txt");
+        Files.write(input.toPath(), content.array());
+        binary = Simulator.encodeBinary(Simulator.reader(content.duplicate()));
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteInput() {
+        input.delete();
+    }
+
+    @Benchmark
+    public Object parseFromMemory() {
+        return Simulator.load(Simulator.reader(content.duplicate()));
+    }
+
+    @Benchmark
+    public Object loadBinary() {
+        return Simulator.load(Simulator.reader(binary.duplicate()));
+    }
+
+    @Benchmark
+    public Object readAndParse() {
+        return Simulator.load(Simulator.open(input.toPath()));
+    }
+}
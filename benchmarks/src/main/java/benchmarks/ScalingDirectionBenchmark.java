@@ -0,0 +1,67 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Direction scoring at scale: {@code getBestDirection} of all sixteen insects of a scenario written by the
+ * simulator's {@code --generate} mode, across board sizes, food counts and clustering. Every invocation
+ * looks at a freshly loaded board, so the first look of each insect is measured rather than cached scores;
+ * loading is excluded from the measurement.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 20)
+@Measurement(iterations = 50)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g", "-Dinsects.maxBoardSize=16000", "-Dinsects.maxFoodPoints=100000"})
+public class ScalingDirectionBenchmark {
+    @Param({"1000", "4000", "16000"})
+    public int boardSize;
+
+    @Param({"1000", "10000", "100000"})
+    public int foodPoints;
+
+    @Param({"0", "8"})
+    public int clusters;
+
+    private ByteBuffer scenario;
+    private List<Object> insects;
+    private Map<String, Object> boardData;
+
+    @Setup(Level.Trial)
+    public void generateScenario() throws IOException {
+        scenario = Scenarios.generatedScenario(boardSize, foodPoints, clusters);
+    }
+
+    @Setup(Level.Invocation)
+    public void loadBoard() {
+        boardData = Simulator.boardData(Simulator.load(Simulator.reader(scenario.duplicate())));
+        insects = Simulator.insects(boardData);
+    }
+
+    @Benchmark
+    public Object getBestDirection() {
+        Object direction = null;
+        for (Object insect : insects) {
+            direction = Simulator.bestDirection(insect, boardData, boardSize);
+        }
+        return direction;
+    }
+}
@@ -0,0 +1,72 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Travel at scale: {@code travelDirection} of all sixteen insects of a scenario written by the simulator's
+ * {@code --generate} mode, each along its best direction, across board sizes, food counts and clustering.
+ * Travelling eats food and removes the insects, so every invocation gets a freshly loaded board;
+ * loading and choosing the directions are excluded from the measurement.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 20)
+@Measurement(iterations = 50)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g", "-Dinsects.maxBoardSize=16000", "-Dinsects.maxFoodPoints=100000"})
+public class ScalingTravelBenchmark {
+    @Param({"1000", "4000", "16000"})
+    public int boardSize;
+
+    @Param({"1000", "10000", "100000"})
+    public int foodPoints;
+
+    @Param({"0", "8"})
+    public int clusters;
+
+    private ByteBuffer scenario;
+    private List<Object> insects;
+    private Map<String, Object> boardData;
+    private Object[] directions;
+
+    @Setup(Level.Trial)
+    public void generateScenario() throws IOException {
+        scenario = Scenarios.generatedScenario(boardSize, foodPoints, clusters);
+    }
+
+    @Setup(Level.Invocation)
+    public void loadBoard() {
+        boardData = Simulator.boardData(Simulator.load(Simulator.reader(scenario.duplicate())));
+        insects = Simulator.insects(boardData);
+        directions = new Object[insects.size()];
+        for (int i = 0; i < directions.length; i++) {
+            directions[i] = Simulator.bestDirection(insects.get(i), boardData, boardSize);
+        }
+    }
+
+    @Benchmark
+    public int travelDirection() {
+        int food = 0;
+        for (int i = 0; i < directions.length; i++) {
+            food += Simulator.travelDirection(insects.get(i), directions[i], boardData, boardSize);
+        }
+        return food;
+    }
+}
@@ -0,0 +1,118 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Deterministic synthetic scenarios, so every release is measured on the same inputs.
+ */
+final class Scenarios {
+    static final String[] COLORS = {"Red", "Green", "Blue", "Yellow"};
+    static final String[] SPECIES = {"Ant", "Butterfly", "Spider", "Grasshopper"};
+    /** The input format accepts at most this many food points. */
+    static final int MAX_FOOD_POINTS = 200;
+    private static final long SEED = 20240501L;
+
+    private Scenarios() {
+    }
+
+    /**
+     * Picks distinct cells of a board in a fixed pseudo-random order.
+     *
+     * @return The chosen cells as {@code {x, y}} pairs.
+     */
+    static int[][] cells(int boardSize, int count) {
+        int total = boardSize * boardSize;
+        int[] order = new int[total];
+        for (int i = 0; i < total; i++) {
+            order[i] = i;
+        }
+        SplittableRandom random = new SplittableRandom(SEED + boardSize);
+        int[][] cells = new int[Math.min(count, total)][];
+        for (int i = 0; i < cells.length; i++) {
+            int j = i + random.nextInt(total - i);
+            int cell = order[j];
+            order[j] = order[i];
+            cells[i] = new int[]{cell % boardSize + 1, cell / boardSize + 1};
+        }
+        return cells;
+    }
+
+    /**
+     * Gets the number of food cells for a density, leaving the centre cell free for an insect.
+     */
+    static int foodCount(int boardSize, double density) {
+        return Math.max(1, (int) Math.min(boardSize * boardSize - 1L, Math.round(boardSize * boardSize * density)));
+    }
+
+    static int amount(int i) {
+        return 1 + (i * 7919) % 9;
+    }
+
+    /**
+     * Builds the input lines of a valid scenario with one insect of every species and color.
+     */
+    static List<String> inputLines(int boardSize, double density) {
+        int insects = COLORS.length * SPECIES.length;
+        int food = Math.min(MAX_FOOD_POINTS, foodCount(boardSize, density));
+        int[][] cells = cells(boardSize, insects + food);
+        insects = Math.min(insects, cells.length - 1);
+        food = cells.length - insects;
+        List<String> lines = new ArrayList<>();
+        lines.add(String.valueOf(boardSize));
+        lines.add(String.valueOf(insects));
+        lines.add(String.valueOf(food));
+        for (int i = 0; i < insects; i++) {
+            lines.add(COLORS[i % COLORS.length] + " " + SPECIES[i / COLORS.length] + " "
+                    + cells[i][1] + " " + cells[i][0]);
+        }
+        for (int i = 0; i < food; i++) {
+            int[] cell = cells[insects + i];
+            lines.add(amount(i) + " " + cell[1] + " " + cell[0]);
+        }
+        return lines;
+    }
+
+    /**
+     * Generates a scenario with the simulator's seeded generator, one insect of every species and color.
+     * Loading it needs the simulator limits raised to the board size and number of food points.
+     *
+     * @param clusters The number of food clusters, or 0 for evenly spread food.
+     * @return The scenario in the binary format, ready to be loaded any number of times through duplicates.
+     */
+    static ByteBuffer generatedScenario(int boardSize, int foodPoints, int clusters) throws IOException {
+        Path file = Files.createTempFile("scenario", ".txt");
+        try {
+            Simulator.runMain("--generate", file.toString(), "--seed", String.valueOf(SEED),
+                    "--size", String.valueOf(boardSize), "--food", String.valueOf(foodPoints),
+                    "--clusters", String.valueOf(clusters));
+            if (Files.size(file) == 0) {
+                throw new IllegalStateException("The generator rejected the scenario options");
+            }
+            return Simulator.encodeBinary(Simulator.open(file));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Builds a board holding food at the given density and nothing else.
+     */
+    static Object foodBoard(int boardSize, double density) {
+        Object board = Simulator.newBoard(boardSize);
+        int centre = (boardSize + 1) / 2;
+        int i = 0;
+        for (int[] cell : cells(boardSize, foodCount(boardSize, density) + 1)) {
+            if (cell[0] == centre && cell[1] == centre) {
+                continue;
+            }
+            Simulator.addEntity(board, Simulator.newFood(cell[0], cell[1], amount(i++)));
+        }
+        return board;
+    }
+}
@@ -0,0 +1,300 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bridge from the benchmarks to the simulator classes. The simulator lives in the default package,
+ * which named packages cannot import and JMH does not accept for benchmarks, so its members are
+ * reached through method handles held in static finals, which the JIT inlines like direct calls.
+ */
+final class Simulator {
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    private static final Class<?> MAIN = type("Main");
+    private static final Class<?> BOARD = type("Board");
+    private static final Class<?> INSECT = type("Insect");
+    private static final Class<?> POSITION = type("EntityPosition");
+    private static final Class<?> COLOR = type("InsectColor");
+    private static final Class<?> DIRECTION = type("Direction");
+
+    private static final MethodHandle NEW_MAIN = constructor(MAIN);
+    private static final MethodHandle MAIN_ENTRY = method(MAIN, "main", String[].class);
+    private static final Class<?> READER = type("ScenarioReader");
+    private static final MethodHandle OPEN = method(READER, "open", Path.class);
+    private static final MethodHandle NEW_READER = constructor(READER, ByteBuffer.class);
+    private static final MethodHandle LOAD = method(MAIN, "load", READER);
+    private static final MethodHandle GAME_BOARD = method(MAIN, "getGameBoard");
+    private static final MethodHandle ENCODE_SCENARIO =
+            method(type("BinaryFormat"), "encodeScenario", BOARD, List.class);
+    private static final MethodHandle NEW_BOARD = constructor(BOARD, Integer.class);
+    private static final MethodHandle ADD_ENTITY = method(BOARD, "addEntity", type("BoardEntity"));
+    private static final MethodHandle FORK = method(BOARD, "fork");
+    private static final MethodHandle ENTITY_POSITION = method(type("BoardEntity"), "getEntityPosition");
+    private static final MethodHandle POSITION_X = method(POSITION, "getX");
+    private static final MethodHandle POSITION_Y = method(POSITION, "getY");
+    private static final MethodHandle BOARD_DATA = method(BOARD, "getBoardData");
+    private static final MethodHandle NEW_POSITION = constructor(POSITION, int.class, int.class);
+    private static final MethodHandle NEW_FOOD = constructor(type("FoodPoint"), POSITION, int.class);
+    private static final MethodHandle BEST_DIRECTION = method(INSECT, "getBestDirection", Map.class, int.class);
+    private static final MethodHandle TRAVEL_DIRECTION =
+            method(INSECT, "travelDirection", DIRECTION, Map.class, int.class);
+
+    private Simulator() {
+    }
+
+    /**
+     * Runs the simulator's command line, such as {@code --generate}.
+     */
+    static void runMain(String... args) {
+        try {
+            MAIN_ENTRY.invoke((Object) args);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    /**
+     * Opens a scenario reader over a file.
+     */
+    static Object open(Path file) {
+        try {
+            return OPEN.invoke(file);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    /**
+     * Creates a scenario reader over input held in memory.
+     */
+    static Object reader(ByteBuffer input) {
+        try {
+            return NEW_READER.invoke(input);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    /**
+     * Parses a scenario and encodes it in the binary scenario format.
+     *
+     * @param reader A scenario reader positioned at the start of a valid scenario.
+     * @return The encoded scenario.
+     */
+    static ByteBuffer encodeBinary(Object reader) {
+        try {
+            Object main = NEW_MAIN.invoke();
+            Object insects = LOAD.invoke(main, reader);
+            return (ByteBuffer) ENCODE_SCENARIO.invoke(GAME_BOARD.invoke(main), insects);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    /**
+     * Parses a scenario onto a new board.
+     *
+     * @param reader A scenario reader positioned at the start of the scenario.
+     * @return The board the scenario was loaded into.
+     */
+    static Object load(Object reader) {
+        try {
+            Object main = NEW_MAIN.invoke();
+            LOAD.invoke(main, reader);
+            return GAME_BOARD.invoke(main);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static Object newBoard(int size) {
+        try {
+            return NEW_BOARD.invoke(size);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    /**
+     * Forks a board, sharing its cells copy-on-write.
+     */
+    static Object fork(Object board) {
+        try {
+            return FORK.invoke(board);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    /**
+     * Gets the key of an entity's cell in the board data map, such as {@code "3 7"}.
+     */
+    static String positionKey(Object entity) {
+        try {
+            Object position = ENTITY_POSITION.invoke(entity);
+            return (int) POSITION_X.invoke(position) + " " + (int) POSITION_Y.invoke(position);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static void addEntity(Object board, Object entity) {
+        try {
+            ADD_ENTITY.invoke(board, entity);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> boardData(Object board) {
+        try {
+            return (Map<String, Object>) BOARD_DATA.invoke(board);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    /**
+     * Collects the insects on a board from its data map.
+     */
+    static List<Object> insects(Map<String, Object> boardData) {
+        List<Object> insects = new ArrayList<>();
+        for (Object entity : boardData.values()) {
+            if (INSECT.isInstance(entity)) {
+                insects.add(entity);
+            }
+        }
+        return insects;
+    }
+
+    static Object newFood(int x, int y, int amount) {
+        try {
+            return NEW_FOOD.invoke(NEW_POSITION.invoke(x, y), amount);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    /**
+     * Creates an insect of one of the simulator's species.
+     *
+     * @param species The class name of the species, such as {@code Ant}.
+     * @param color   The color constant, such as {@code RED}.
+     */
+    static Object newInsect(String species, int x, int y, String color) {
+        try {
+            Object colorConstant = COLOR.getEnumConstants()[colorIndex(color)];
+            return constructor(type(species), POSITION, COLOR).invoke(NEW_POSITION.invoke(x, y), colorConstant);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    private static int colorIndex(String color) {
+        Object[] constants = COLOR.getEnumConstants();
+        for (int i = 0; i < constants.length; i++) {
+            if (((Enum<?>) constants[i]).name().equals(color)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown color: " + color);
+    }
+
+    static Object bestDirection(Object insect, Map<String, Object> boardData, int boardSize) {
+        try {
+            return BEST_DIRECTION.invoke(insect, boardData, boardSize);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static int travelDirection(Object insect, Object direction, Map<String, Object> boardData, int boardSize) {
+        try {
+            return (int) TRAVEL_DIRECTION.invoke(insect, direction, boardData, boardSize);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    private static Class<?> type(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Simulator class not on the class path: " + name, e);
+        }
+    }
+
+    private static MethodHandle constructor(Class<?> owner, Class<?>... parameters) {
+        try {
+            Constructor<?> constructor = owner.getDeclaredConstructor(parameters);
+            return LOOKUP.unreflectConstructor(accessible(constructor)).asType(
+                    MethodType.methodType(Object.class, erase(parameters)));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static MethodHandle method(Class<?> owner, String name, Class<?>... parameters) {
+        try {
+            Method method = findMethod(owner, name, parameters);
+            MethodHandle handle = LOOKUP.unreflect(accessible(method));
+            Class<?>[] erased = erase(parameters);
+            Class<?> result = method.getReturnType().isPrimitive() ? method.getReturnType() : Object.class;
+            if (java.lang.reflect.Modifier.isStatic(method.getModifiers())) {
+                return handle.asType(MethodType.methodType(result, erased));
+            }
+            return handle.asType(MethodType.methodType(result, Object.class, erased));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Method findMethod(Class<?> owner, String name, Class<?>... parameters)
+            throws NoSuchMethodException {
+        for (Class<?> type = owner; type != null; type = type.getSuperclass()) {
+            try {
+                return type.getDeclaredMethod(name, parameters);
+            } catch (NoSuchMethodException e) {
+                // keep looking in the superclass
+            }
+        }
+        throw new NoSuchMethodException(owner.getName() + "." + name);
+    }
+
+    private static <T extends AccessibleObject> T accessible(T member) {
+        member.setAccessible(true);
+        return member;
+    }
+
+    /**
+     * Replaces simulator types by {@code Object} so callers need no access to them.
+     */
+    private static Class<?>[] erase(Class<?>[] parameters) {
+        Class<?>[] erased = new Class<?>[parameters.length];
+        for (int i = 0; i < parameters.length; i++) {
+            boolean visible = parameters[i].isPrimitive() || parameters[i].getName().startsWith("java.");
+            erased[i] = visible ? parameters[i] : Object.class;
+        }
+        return erased;
+    }
+
+    private static RuntimeException rethrow(Throwable e) {
+        if (e instanceof RuntimeException) {
+            return (RuntimeException) e;
+        }
+        if (e instanceof Error) {
+            throw (Error) e;
+        }
+        return new IllegalStateException(e);
+    }
+}
@@ -0,0 +1,113 @@
+package benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cold start of a one-off {@code java Main} run: the time from launching a fresh JVM until the first byte of
+ * output.txt exists, with and without the class-data sharing archive built by {@code mvn -P cds package}.
+ * The simulator jar and archive are found through {@code -Dinsects.jar} and {@code -Dinsects.jsa},
+ * defaulting to the locations the build writes them to.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 20)
+@Fork(1)
+public class StartupBenchmark {
+    @Param({"16", "1000"})
+    public int boardSize;
+
+    @Param({"false", "true"})
+    public boolean classDataSharing;
+
+    private Path directory;
+    private Path output;
+    private List<String> command;
+    private Process process;
+
+    @Setup(Level.Trial)
+    public void writeInput() throws IOException {
+        Path jar = Paths.get(System.getProperty("insects.jar",
+                "simulator/target/insects-moving-game-1.0-SNAPSHOT.jar")).toAbsolutePath();
+        Path archive = Paths.get(System.getProperty("insects.jsa", "simulator/target/insects.jsa")).toAbsolutePath();
+        if (!Files.isRegularFile(jar)) {
+            throw new IllegalStateException("Simulator jar not found: " + jar);
+        }
+        if (classDataSharing && !Files.isRegularFile(archive)) {
+            throw new IllegalStateException("Class-data sharing archive not found, run mvn -P cds package: " + archive);
+        }
+        directory = Files.createTempDirectory("startup");
+        Files.write(directory.resolve("input.txt"),
+                (String.join("\n", Scenarios.inputLines(boardSize, 0.1)) + "\n").getBytes(StandardCharsets.US_ASCII));
+        output = directory.resolve("output.txt");
+        command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        if (classDataSharing) {
+            command.add("-XX:SharedArchiveFile=" + archive);
+        }
+        command.add("-cp");
+        command.add(jar.toString());
+        command.add("Main");
+    }
+
+    @Setup(Level.Invocation)
+    public void deleteOutput() throws IOException {
+        Files.deleteIfExists(output);
+    }
+
+    @TearDown(Level.Invocation)
+    public void awaitExit() throws InterruptedException {
+        if (process != null) {
+            process.waitFor();
+            process = null;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteDirectory() throws IOException {
+        Files.deleteIfExists(output);
+        Files.deleteIfExists(directory.resolve("input.txt"));
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public long timeToFirstOutputByte() throws IOException {
+        process = new ProcessBuilder(command)
+                .directory(directory.toFile())
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        File file = output.toFile();
+        long length;
+        while ((length = file.length()) == 0) {
+            if (!process.isAlive() && file.length() == 0) {
+                throw new IllegalStateException("The simulator exited without writing output.txt");
+            }
+            Thread.onSpinWait();
+        }
+        return length;
+    }
+}
@@ -0,0 +1,58 @@
+package benchmarks;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Travel: {@code travelDirection} of one insect along its best direction.
+ * Travelling eats food and removes the insect, so every invocation gets a freshly built board;
+ * the setup cost is excluded from the measurement.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 200)
+@Measurement(iterations = 200)
+@Fork(2)
+public class TravelBenchmark {
+    @Param({"Ant", "Butterfly", "Spider", "Grasshopper"})
+    public String species;
+
+    @Param({"4", "16", "64", "256", "1000"})
+    public int boardSize;
+
+    @Param({"0.01", "0.1", "0.5"})
+    public double density;
+
+    private Object insect;
+    private Object direction;
+    private Map<String, Object> boardData;
+
+    @Setup(Level.Invocation)
+    public void createBoard() {
+        Object board = Scenarios.foodBoard(boardSize, density);
+        int centre = (boardSize + 1) / 2;
+        insect = Simulator.newInsect(species, centre, centre, "RED");
+        Simulator.addEntity(board, insect);
+        boardData = Simulator.boardData(board);
+        direction = Simulator.bestDirection(insect, boardData, boardSize);
+    }
+
+    @Benchmark
+    public int travelDirection() {
+        return Simulator.travelDirection(insect, direction, boardData, boardSize);
+    }
+}
@@ -0,0 +1,36 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checks that a batch over a directory gives every input file its result file, even when some of them cannot
+ * be read.
+ */
+class BatchTest {
+    private static final String SCENARIO = "4\n1\n1\nRed Ant 1 1\n5 1 3\n";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void badFileKeepsTheOtherResults() throws IOException {
+        Path input = Files.createDirectory(directory.resolve("in"));
+        Path output = directory.resolve("out");
+        for (int i = 0; i < 20; i++) {
+            String scenario = i % 5 == 2 ? "4\n1\n1\nRed Ant 1 1\nx 2 2\n" : SCENARIO;
+            Files.write(input.resolve(String.format("%02d.txt", i)), scenario.getBytes(Charset.defaultCharset()));
+        }
+        Main.main(new String[] {"--batch", input.toString(), "--output", output.toString()});
+        String separator = System.lineSeparator();
+        for (int i = 0; i < 20; i++) {
+            String expected = i % 5 == 2 ? "Failed to read data file" + separator : "Red Ant East 5" + separator;
+            assertEquals(expected, new String(Files.readAllBytes(output.resolve(String.format("%02d.txt.out", i))),
+                    Charset.defaultCharset()), "file " + i);
+        }
+    }
+}
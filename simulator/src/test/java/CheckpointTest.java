@@ -0,0 +1,221 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checks that a multi-round run saved to a checkpoint and resumed by a fresh engine ends exactly like an
+ * uninterrupted run on every storage, that scenarios on the same board keep their own files, that states which do
+ * not belong to the scenario are ignored, and that a checkpoint which cannot be written never changes the result.
+ */
+class CheckpointTest {
+    private static final int SCENARIOS = 100;
+    private static final int ROUNDS = 8;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void resumedRunMatchesUninterruptedRun() throws IOException {
+        for (int seed = 0; seed < SCENARIOS; seed++) {
+            TestScenario scenario = new TestScenario(seed, 40);
+            List<int[]> expected = scenario.rounds(ROUNDS);
+            for (int saved = 0; saved <= ROUNDS; saved += 3) {
+                Checkpoint checkpoint = interruptedRun(scenario, saved, 0);
+                Move[] moves = resume(scenario, checkpoint);
+                for (int i = 0; i < moves.length; i++) {
+                    assertArrayEquals(expected.get(i), toArray(moves[i]),
+                            "seed " + seed + ", saved after " + saved + ", insect " + i);
+                }
+                assertFalse(hasFiles(), "checkpoint left after the run finished");
+            }
+        }
+    }
+
+    @Test
+    void resumesOnEveryStorage() throws IOException {
+        for (String backend : TestScenario.BACKENDS) {
+            for (int seed = 0; seed < 20; seed++) {
+                TestScenario scenario = new TestScenario(seed, 40);
+                List<int[]> expected = scenario.rounds(ROUNDS);
+                Checkpoint checkpoint = interruptedRun(scenario, backend, 3, 0);
+                Move[] moves = resume(scenario, backend, checkpoint);
+                for (int i = 0; i < moves.length; i++) {
+                    assertArrayEquals(expected.get(i), toArray(moves[i]),
+                            backend + ", seed " + seed + ", insect " + i);
+                }
+            }
+        }
+    }
+
+    @Test
+    void scenariosOnOneBoardKeepTheirOwnFiles() throws IOException {
+        TestScenario scenario = new TestScenario(7, 40);
+        List<int[]> expected = scenario.rounds(ROUNDS);
+        Checkpoint first = interruptedRun(scenario, 2, 0);
+        Checkpoint second = interruptedRun(scenario, 5, 0);
+        try (var files = Files.list(directory)) {
+            assertEquals(2, files.count(), "checkpoint files");
+        }
+        for (Checkpoint checkpoint : new Checkpoint[] {first, second}) {
+            Move[] moves = resume(scenario, checkpoint);
+            for (int i = 0; i < moves.length; i++) {
+                assertArrayEquals(expected.get(i), toArray(moves[i]), "insect " + i);
+            }
+        }
+        assertFalse(hasFiles(), "checkpoint left after the runs finished");
+    }
+
+    @Test
+    void periodicSavesDoNotChangeTheRun() throws IOException {
+        for (int seed = 0; seed < SCENARIOS; seed++) {
+            TestScenario scenario = new TestScenario(seed, 40);
+            List<Insect> insects = new ArrayList<>();
+            Board board = scenario.load("heap", null, insects);
+            Checkpoint checkpoint = Checkpoint.open(directory, 2, board, insects);
+            Move[] moves = new RoundEngine(board, insects, ROUNDS, 0).run(checkpoint);
+            List<int[]> expected = scenario.rounds(ROUNDS);
+            for (int i = 0; i < moves.length; i++) {
+                assertArrayEquals(expected.get(i), toArray(moves[i]), "seed " + seed + ", insect " + i);
+            }
+        }
+    }
+
+    @Test
+    void damagedOrForeignStateIsIgnored() throws IOException {
+        for (int seed = 0; seed < SCENARIOS; seed++) {
+            TestScenario scenario = new TestScenario(seed, 40);
+            List<int[]> expected = scenario.rounds(ROUNDS);
+
+            Checkpoint foreign = interruptedRun(scenario, 3, 1);
+            Move[] moves = resume(scenario, foreign);
+            for (int i = 0; i < moves.length; i++) {
+                assertArrayEquals(expected.get(i), toArray(moves[i]), "foreign, seed " + seed + ", insect " + i);
+            }
+
+            Checkpoint damaged = interruptedRun(scenario, 3, 0);
+            try (var files = Files.list(directory)) {
+                Path file = files.findFirst().orElseThrow();
+                byte[] bytes = Files.readAllBytes(file);
+                bytes[bytes.length / 2] ^= 1;
+                Files.write(file, bytes);
+            }
+            moves = resume(scenario, damaged);
+            for (int i = 0; i < moves.length; i++) {
+                assertArrayEquals(expected.get(i), toArray(moves[i]), "damaged, seed " + seed + ", insect " + i);
+            }
+        }
+    }
+
+    @Test
+    void missingDirectoryIsCreated() throws IOException {
+        TestScenario scenario = new TestScenario(7, 40);
+        List<Insect> insects = new ArrayList<>();
+        Board board = scenario.load("heap", null, insects);
+        Path missing = directory.resolve("missing").resolve("nested");
+        Checkpoint checkpoint = Checkpoint.open(missing, 1, board, insects);
+        assertTrue(Files.isDirectory(missing));
+        Move[] moves = new RoundEngine(board, insects, ROUNDS, 0).run(checkpoint);
+        List<int[]> expected = scenario.rounds(ROUNDS);
+        for (int i = 0; i < moves.length; i++) {
+            assertArrayEquals(expected.get(i), toArray(moves[i]), "insect " + i);
+        }
+    }
+
+    @Test
+    void failingCheckpointDoesNotStopTheRun() throws IOException {
+        for (int seed = 0; seed < SCENARIOS; seed++) {
+            TestScenario scenario = new TestScenario(seed, 40);
+            List<Insect> insects = new ArrayList<>();
+            Board board = scenario.load("heap", null, insects);
+            Path removed = directory.resolve("removed");
+            Checkpoint checkpoint = Checkpoint.open(removed, 1, board, insects);
+            Files.delete(removed);
+            Move[] moves = new RoundEngine(board, insects, ROUNDS, 0).run(checkpoint);
+            List<int[]> expected = scenario.rounds(ROUNDS);
+            for (int i = 0; i < moves.length; i++) {
+                assertArrayEquals(expected.get(i), toArray(moves[i]), "seed " + seed + ", insect " + i);
+            }
+        }
+    }
+
+    /**
+     * Runs a scenario for some rounds and saves its state to the checkpoint of a fresh load of the scenario.
+     *
+     * @param scenario The scenario.
+     * @param rounds   The rounds to run before saving.
+     * @param skew     Added to the fingerprint written into the state, to save a state of another scenario.
+     * @return The checkpoint, opened on the fresh load.
+     * @throws IOException if the state cannot be written.
+     */
+    private Checkpoint interruptedRun(TestScenario scenario, int rounds, int skew) throws IOException {
+        return interruptedRun(scenario, "heap", rounds, skew);
+    }
+
+    /**
+     * Runs a scenario on a backend for some rounds and saves its state to the checkpoint of a fresh load.
+     *
+     * @param scenario The scenario.
+     * @param backend  One of {@link TestScenario#BACKENDS}.
+     * @param rounds   The rounds to run before saving.
+     * @param skew     Added to the fingerprint written into the state, to save a state of another scenario.
+     * @return The checkpoint, opened on the fresh load.
+     * @throws IOException if the state cannot be written.
+     */
+    private Checkpoint interruptedRun(TestScenario scenario, String backend, int rounds, int skew)
+            throws IOException {
+        List<Insect> insects = new ArrayList<>();
+        Board board = scenario.load(backend, directory, insects);
+        Checkpoint checkpoint = Checkpoint.open(directory, 0, board, insects);
+        RoundEngine engine = new RoundEngine(board, insects, rounds, 0);
+        engine.run(null);
+        checkpoint.write(engine.save(rounds, checkpoint.getFingerprint() + skew));
+        return checkpoint;
+    }
+
+    /**
+     * Runs a fresh load of a scenario for all rounds, resuming from a checkpoint.
+     *
+     * @param scenario   The scenario.
+     * @param checkpoint The checkpoint of the scenario.
+     * @return The moves of the run.
+     * @throws IOException if the checkpoint cannot be read.
+     */
+    private Move[] resume(TestScenario scenario, Checkpoint checkpoint) throws IOException {
+        return resume(scenario, "heap", checkpoint);
+    }
+
+    /**
+     * Runs a fresh load of a scenario on a backend for all rounds, resuming from a checkpoint.
+     *
+     * @param scenario   The scenario.
+     * @param backend    One of {@link TestScenario#BACKENDS}.
+     * @param checkpoint The checkpoint of the scenario.
+     * @return The moves of the run.
+     * @throws IOException if the checkpoint cannot be read.
+     */
+    private Move[] resume(TestScenario scenario, String backend, Checkpoint checkpoint) throws IOException {
+        List<Insect> insects = new ArrayList<>();
+        Board board = scenario.load(backend, directory, insects);
+        return new RoundEngine(board, insects, ROUNDS, 0).run(checkpoint);
+    }
+
+    private boolean hasFiles() throws IOException {
+        try (var files = Files.list(directory)) {
+            return files.findAny().isPresent();
+        }
+    }
+
+    private static int[] toArray(Move move) {
+        return new int[] {move.getDirection() == null ? -1 : move.getDirection().ordinal(), move.getFoodCollected(),
+                move.getCellsTraversed()};
+    }
+}
@@ -0,0 +1,137 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that forks share nothing observable with their base: writes to a fork never show up in the board it
+ * was forked from, nor in its sibling or parent forks, and the base keeps playing as if it had never been forked.
+ */
+class ForkTest {
+    private static final int SCENARIOS = 200;
+
+    @Test
+    void writesToForkStayInFork() throws TwoEntitiesOnSamePositionException {
+        for (int seed = 0; seed < SCENARIOS; seed++) {
+            TestScenario scenario = new TestScenario(seed, 40);
+            Board base = scenario.load("heap", null, new ArrayList<>());
+            Board fork = base.fork();
+            String before = snapshot(base);
+            mutate(fork, new Random(seed));
+            assertEquals(before, snapshot(base), "seed " + seed);
+
+            Board sibling = base.fork();
+            assertEquals(before, snapshot(sibling), "seed " + seed);
+            String forked = snapshot(fork);
+            mutate(sibling, new Random(-seed - 1));
+            assertEquals(before, snapshot(base), "seed " + seed);
+            assertEquals(forked, snapshot(fork), "seed " + seed);
+        }
+    }
+
+    @Test
+    void writesToBaseStayOutOfFork() throws TwoEntitiesOnSamePositionException {
+        for (int seed = 0; seed < SCENARIOS; seed++) {
+            TestScenario scenario = new TestScenario(seed, 40);
+            Board base = scenario.load("tiled", null, new ArrayList<>());
+            Board fork = base.fork();
+            String before = snapshot(fork);
+            mutate(base, new Random(seed));
+            assertEquals(before, snapshot(fork), "seed " + seed);
+        }
+    }
+
+    @Test
+    void nestedForksAreIsolated() throws TwoEntitiesOnSamePositionException {
+        for (int seed = 0; seed < SCENARIOS; seed++) {
+            TestScenario scenario = new TestScenario(seed, 40);
+            Board base = scenario.load("heap", null, new ArrayList<>());
+            String initial = snapshot(base);
+            Board child = base.fork();
+            mutate(child, new Random(seed));
+            String changed = snapshot(child);
+            Board grandchild = child.fork();
+            mutate(grandchild, new Random(-seed - 1));
+            assertEquals(initial, snapshot(base), "seed " + seed);
+            assertEquals(changed, snapshot(child), "seed " + seed);
+        }
+    }
+
+    @Test
+    void basePlaysAsIfNeverForked() {
+        for (int seed = 0; seed < SCENARIOS; seed++) {
+            TestScenario scenario = new TestScenario(seed, 40);
+            List<Insect> insects = new ArrayList<>();
+            Board base = scenario.load("heap", null, insects);
+            Board fork = base.fork();
+            List<Insect> forkInsects = new ArrayList<>();
+            for (Insect insect : insects) {
+                forkInsects.add(fork.getInsect(fork.indexOf(insect.getEntityPosition().getX(),
+                        insect.getEntityPosition().getY())));
+            }
+            play(fork, forkInsects);
+            List<int[]> expected = scenario.singlePass();
+            List<int[]> actual = play(base, insects);
+            for (int i = 0; i < insects.size(); i++) {
+                assertEquals(expected.get(i)[0], actual.get(i)[0], "seed " + seed + ", insect " + i);
+                assertEquals(expected.get(i)[1], actual.get(i)[1], "seed " + seed + ", insect " + i);
+            }
+        }
+    }
+
+    /**
+     * Applies random writes to a board: food and insects added on empty cells, and paths travelled and cleared.
+     *
+     * @param board  The board to change.
+     * @param random The source of the writes.
+     * @throws TwoEntitiesOnSamePositionException never; only empty cells are written.
+     */
+    private static void mutate(Board board, Random random) throws TwoEntitiesOnSamePositionException {
+        int size = board.getSize();
+        for (int op = 0; op < 40; op++) {
+            int x = 1 + random.nextInt(size);
+            int y = 1 + random.nextInt(size);
+            Direction direction = Direction.ofOrdinal(random.nextInt(Direction.COUNT));
+            int step = 1 + random.nextInt(2);
+            boolean empty = board.getOccupant(board.indexOf(x, y)) == Board.EMPTY;
+            switch (random.nextInt(3)) {
+                case 0:
+                    if (empty) {
+                        board.addFood(x, y, random.nextInt(9) - 2);
+                    }
+                    break;
+                case 1:
+                    if (empty) {
+                        board.placeInsect(Species.ANT.create(new EntityPosition(x, y),
+                                InsectColor.values()[random.nextInt(InsectColor.values().length)]), x, y);
+                    }
+                    break;
+                default:
+                    int length = board.pathLength(x, y, direction, step, 0);
+                    board.clearPath(x, y, direction, step, length, null);
+                    break;
+            }
+        }
+    }
+
+    private static List<int[]> play(Board board, List<Insect> insects) {
+        List<int[]> results = new ArrayList<>();
+        for (Insect insect : insects) {
+            Direction direction = insect.getBestDirection(board.getBoardData(), board.getSize());
+            results.add(new int[] {direction.ordinal(),
+                    insect.travelDirection(direction, board.getBoardData(), board.getSize())});
+        }
+        return results;
+    }
+
+    private static String snapshot(Board board) {
+        StringBuilder snapshot = new StringBuilder();
+        for (long index = board.nextOccupied(0); index >= 0; index = board.nextOccupied(index + 1)) {
+            snapshot.append(index).append(':').append(board.getOccupant(index)).append('/')
+                    .append(board.getFood(index)).append(' ');
+        }
+        return snapshot.append(board.getEntityCount()).append(',').append(board.getFoodCount()).toString();
+    }
+}
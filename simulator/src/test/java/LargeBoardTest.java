@@ -0,0 +1,164 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks boards too large for an int cell index, which only tiled storage can hold, against a brute-force
+ * reference over their few occupied cells.
+ */
+class LargeBoardTest {
+    private static final int[] SIZES = {BoardCells.DENSE_MAX_SIZE + 1, 1_000_000, Board.MAX_SIZE};
+
+    @Test
+    void denseStorageIsLimited() {
+        assertThrows(InvalidBoardSizeException.class, () -> new Board(Board.MAX_SIZE + 1));
+    }
+
+    @Test
+    void raysMatchReference() throws InvalidBoardSizeException, TwoEntitiesOnSamePositionException {
+        for (int seed = 0; seed < 30; seed++) {
+            Random random = new Random(seed);
+            int size = SIZES[seed % SIZES.length];
+            Board board = new Board(size);
+            // cell index to food amount, or to null for an insect
+            TreeMap<Long, Integer> cells = new TreeMap<>();
+            List<Insect> insects = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                int x = coordinate(random, size);
+                int y = coordinate(random, size);
+                if (!cells.containsKey(board.indexOf(x, y))) {
+                    Insect insect = Species.ANT.create(new EntityPosition(x, y),
+                            InsectColor.values()[random.nextInt(InsectColor.values().length)]);
+                    board.addEntity(insect);
+                    insects.add(insect);
+                    cells.put(board.indexOf(x, y), null);
+                }
+            }
+            for (int i = 0; i < 400; i++) {
+                // most food goes on the lines of an insect, so rays see some of it
+                Insect insect = insects.get(random.nextInt(insects.size()));
+                Direction direction = Direction.ofOrdinal(random.nextInt(Direction.COUNT));
+                int distance = 1 + (random.nextBoolean() ? random.nextInt(40) : random.nextInt(size));
+                int x = i % 4 == 0 ? coordinate(random, size)
+                        : insect.getEntityPosition().getX() + distance * direction.getxShift();
+                int y = i % 4 == 0 ? coordinate(random, size)
+                        : insect.getEntityPosition().getY() + distance * direction.getyShift();
+                if (board.contains(x, y) && !cells.containsKey(board.indexOf(x, y))) {
+                    int amount = 1 + random.nextInt(9);
+                    board.addFood(x, y, amount);
+                    cells.put(board.indexOf(x, y), amount);
+                }
+            }
+
+            List<Long> occupied = new ArrayList<>();
+            for (long index = board.nextOccupied(0); index >= 0; index = board.nextOccupied(index + 1)) {
+                occupied.add(index);
+            }
+            assertEquals(new ArrayList<>(cells.keySet()), occupied, "seed " + seed);
+
+            for (Insect insect : insects) {
+                int x = insect.getEntityPosition().getX();
+                int y = insect.getEntityPosition().getY();
+                for (Direction direction : Direction.values()) {
+                    for (int step = 1; step <= 2; step++) {
+                        String where = "seed " + seed + ", " + direction + " step " + step;
+                        assertEquals(visibleFood(board, cells, x, y, direction, step),
+                                board.visibleFood(x, y, direction, step), where);
+                        assertEquals(pathLength(board, cells, x, y, direction, step, insect),
+                                board.pathLength(x, y, direction, step, insect.getBlockers()), where);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void millionClusteredFoodPointsFitTheHeap() throws InvalidBoardSizeException, TwoEntitiesOnSamePositionException {
+        int size = 1_000_000;
+        int points = 1_000_000;
+        Board board = new Board(size);
+        Random random = new Random(1);
+        double[] centres = new double[10];
+        for (int i = 0; i < centres.length; i++) {
+            centres[i] = random.nextDouble() * size;
+        }
+        // a few points to a page and almost never two to a tile, which a full tile per point cannot hold in 512 MB
+        int[] xs = new int[points];
+        int[] ys = new int[points];
+        for (int placed = 0; placed < points; ) {
+            int cluster = 2 * random.nextInt(centres.length / 2);
+            int x = (int) (centres[cluster] + random.nextGaussian() * size / 20.0) + 1;
+            int y = (int) (centres[cluster + 1] + random.nextGaussian() * size / 20.0) + 1;
+            if (board.contains(x, y) && board.getOccupant(board.indexOf(x, y)) == Board.EMPTY) {
+                board.addFood(x, y, 1 + placed % 9);
+                xs[placed] = x;
+                ys[placed] = y;
+                placed++;
+            }
+        }
+        assertEquals(points, board.getFoodCount());
+        for (int i = 0; i < points; i++) {
+            assertEquals(1 + i % 9, board.getFood(board.indexOf(xs[i], ys[i])), "point " + i);
+        }
+    }
+
+    /**
+     * Draws a coordinate, near a border half of the time, where the tiles, pages and directories end short.
+     */
+    private static int coordinate(Random random, int size) {
+        return random.nextBoolean() ? 1 + random.nextInt(size) : size - random.nextInt(64);
+    }
+
+    private static int visibleFood(Board board, TreeMap<Long, Integer> cells, int x, int y, Direction direction,
+                                   int step) {
+        int food = 0;
+        for (long index : cells.keySet()) {
+            int distance = distanceOnRay(board, index, x, y, direction, step);
+            if (distance > 0 && cells.get(index) != null) {
+                food += cells.get(index);
+            }
+        }
+        return food;
+    }
+
+    private static int pathLength(Board board, TreeMap<Long, Integer> cells, int x, int y, Direction direction,
+                                  int step, Insect insect) {
+        int reach = Integer.MAX_VALUE;
+        if (direction.getxShift() != 0) {
+            reach = Math.min(reach, direction.getxShift() > 0 ? board.getSize() - x : x - 1);
+        }
+        if (direction.getyShift() != 0) {
+            reach = Math.min(reach, direction.getyShift() > 0 ? board.getSize() - y : y - 1);
+        }
+        int length = reach / step;
+        for (long index : cells.keySet()) {
+            int distance = distanceOnRay(board, index, x, y, direction, step);
+            if (distance > 0 && cells.get(index) == null
+                    && (insect.getBlockers() & 1 << board.getOccupant(index)) != 0) {
+                length = Math.min(length, distance - 1);
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Gets the number of the visited cell a ray reaches a cell at.
+     *
+     * @return The number of steps to the cell, or 0 if the ray does not visit it.
+     */
+    private static int distanceOnRay(Board board, long index, int x, int y, Direction direction, int step) {
+        int dx = board.xOf(index) - x;
+        int dy = board.yOf(index) - y;
+        int distance = Math.max(Math.abs(dx), Math.abs(dy));
+        if (distance == 0 || distance % step != 0 || dx != distance * direction.getxShift()
+                || dy != distance * direction.getyShift()) {
+            return 0;
+        }
+        return distance / step;
+    }
+}
@@ -0,0 +1,114 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the per-line food and insect indexes of dense boards against a fork of the same board, which has no
+ * indexes and answers every query by walking its cells, and that the food index refuses boards too large for its
+ * point counts.
+ */
+class LineIndexTest {
+    private static final int SCENARIOS = 300;
+    private static final Species[] SPECIES = {Species.ANT, Species.BUTTERFLY, Species.SPIDER, Species.GRASSHOPPER};
+
+    @Test
+    void foodIndexOnlyTakesDenseBoards() {
+        new FoodLineIndex(BoardCells.DENSE_MAX_SIZE);
+        assertThrows(IllegalArgumentException.class, () -> new FoodLineIndex(BoardCells.DENSE_MAX_SIZE + 1));
+    }
+
+    @Test
+    void indexedQueriesMatchCellWalks() throws TwoEntitiesOnSamePositionException {
+        for (int seed = 1; seed <= SCENARIOS; seed++) {
+            Random random = new Random(seed);
+            int size = 1 + random.nextInt(seed % 5 == 0 ? 300 : 40);
+            Board indexed = new Board(size, new HeapCells(size * size));
+            for (int i = 0; i < 1 + random.nextInt(Math.min(12, size * size)); i++) {
+                int x = 1 + random.nextInt(size);
+                int y = 1 + random.nextInt(size);
+                if (indexed.getOccupant(indexed.indexOf(x, y)) == Board.EMPTY) {
+                    indexed.addEntity(SPECIES[random.nextInt(SPECIES.length)].create(new EntityPosition(x, y),
+                            InsectColor.values()[random.nextInt(InsectColor.values().length)]));
+                }
+            }
+            for (int i = random.nextInt(size * size / 2 + 2); i > 0; i--) {
+                int x = 1 + random.nextInt(size);
+                int y = 1 + random.nextInt(size);
+                if (indexed.getOccupant(indexed.indexOf(x, y)) == Board.EMPTY) {
+                    indexed.addFood(x, y, random.nextInt(7) - 2);
+                }
+            }
+            Board walked = new Board(size, new HeapCells(size * size)).fork();
+            copy(indexed, walked);
+
+            for (int op = 0; op < 200; op++) {
+                int x = 1 + random.nextInt(size);
+                int y = 1 + random.nextInt(size);
+                Direction direction = Direction.ofOrdinal(random.nextInt(Direction.COUNT));
+                int step = 1 + random.nextInt(3);
+                int blockers = random.nextInt(64) & ~3;
+                String where = "seed " + seed + ", op " + op;
+                switch (random.nextInt(3)) {
+                    case 0:
+                        assertEquals(walked.travel(x, y, direction, step, blockers),
+                                indexed.travel(x, y, direction, step, blockers), where);
+                        break;
+                    case 1:
+                        int length = walked.pathLength(x, y, direction, step, blockers);
+                        assertEquals(length, indexed.pathLength(x, y, direction, step, blockers), where);
+                        assertEquals(walked.foodOnPath(x, y, direction, step, length),
+                                indexed.foodOnPath(x, y, direction, step, length), where);
+                        indexed.clearPath(x, y, direction, step, length, new ChangedCells(size));
+                        walked.clearPath(x, y, direction, step, length, new ChangedCells(size));
+                        break;
+                    default:
+                        if (indexed.getOccupant(indexed.indexOf(x, y)) != Board.EMPTY) {
+                            break;
+                        }
+                        if (random.nextBoolean()) {
+                            int amount = random.nextInt(7) - 2;
+                            indexed.addFood(x, y, amount);
+                            walked.addFood(x, y, amount);
+                        } else {
+                            InsectColor color = InsectColor.values()[random.nextInt(InsectColor.values().length)];
+                            indexed.placeInsect(Species.ANT.create(new EntityPosition(x, y), color), x, y);
+                            walked.placeInsect(Species.ANT.create(new EntityPosition(x, y), color), x, y);
+                        }
+                        break;
+                }
+                for (Direction scanned : Direction.values()) {
+                    for (int scannedStep = 1; scannedStep <= 2; scannedStep++) {
+                        assertEquals(walked.visibleFood(x, y, scanned, scannedStep),
+                                indexed.visibleFood(x, y, scanned, scannedStep), where);
+                    }
+                }
+            }
+            for (int index = 0; index < size * size; index++) {
+                assertEquals(walked.getOccupant(index), indexed.getOccupant(index), "seed " + seed);
+                assertEquals(walked.getFood(index), indexed.getFood(index), "seed " + seed);
+            }
+        }
+    }
+
+    /**
+     * Copies the cells of a board onto an empty one.
+     *
+     * @param from The board to copy.
+     * @param to   The empty board receiving the cells.
+     * @throws TwoEntitiesOnSamePositionException never; the target is empty.
+     */
+    private static void copy(Board from, Board to) throws TwoEntitiesOnSamePositionException {
+        for (long index = from.nextOccupied(0); index >= 0; index = from.nextOccupied(index + 1)) {
+            int x = from.xOf(index);
+            int y = from.yOf(index);
+            Insect insect = from.getInsect(index);
+            if (insect == null) {
+                to.addFood(x, y, from.getFood(index));
+            } else {
+                to.placeInsect(insect.getSpecies().create(new EntityPosition(x, y), insect.getColor()), x, y);
+            }
+        }
+    }
+}
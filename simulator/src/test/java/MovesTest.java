@@ -0,0 +1,135 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * Checks every cell storage and every way of moving the insects against the plain sequential loops of
+ * {@link TestScenario}, which score and travel by walking each ray cell by cell.
+ */
+class MovesTest {
+    private static final int SCENARIOS = 150;
+    private static final int ROUNDS = 6;
+
+    @TempDir
+    Path directory;
+
+    @ParameterizedTest
+    @ValueSource(strings = {"heap", "offheap", "mapped", "tiled", "fork"})
+    void sequentialLoopMatchesReference(String backend) {
+        for (int seed = 0; seed < SCENARIOS; seed++) {
+            TestScenario scenario = new TestScenario(seed, 40);
+            List<Insect> insects = new ArrayList<>();
+            Board board = scenario.load(backend, directory, insects);
+            List<int[]> expected = scenario.singlePass();
+            for (int i = 0; i < insects.size(); i++) {
+                Insect insect = insects.get(i);
+                Direction direction = insect.getBestDirection(board.getBoardData(), board.getSize());
+                int food = insect.travelDirection(direction, board.getBoardData(), board.getSize());
+                assertArrayEquals(expected.get(i), new int[] {direction.ordinal(), food},
+                        "seed " + seed + ", insect " + i);
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"heap", "offheap", "mapped", "tiled", "fork"})
+    void schedulerMatchesReference(String backend) {
+        for (int seed = 0; seed < SCENARIOS; seed++) {
+            TestScenario scenario = new TestScenario(seed, 40);
+            List<Insect> insects = new ArrayList<>();
+            Board board = scenario.load(backend, directory, insects);
+            List<int[]> expected = scenario.singlePass();
+            Move[] moves = new MoveScheduler(board, insects, 0).resolve();
+            for (int i = 0; i < insects.size(); i++) {
+                assertArrayEquals(expected.get(i),
+                        new int[] {moves[i].getDirection().ordinal(), moves[i].getFoodCollected()},
+                        "seed " + seed + ", insect " + i);
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"heap", "offheap", "mapped", "tiled", "fork"})
+    void roundsMatchReference(String backend) throws IOException {
+        for (int seed = 0; seed < SCENARIOS; seed++) {
+            TestScenario scenario = new TestScenario(seed, 40);
+            List<Insect> insects = new ArrayList<>();
+            Board board = scenario.load(backend, directory, insects);
+            List<int[]> expected = scenario.rounds(ROUNDS);
+            Move[] moves = new RoundEngine(board, insects, ROUNDS, 0).run(null);
+            for (int i = 0; i < insects.size(); i++) {
+                assertArrayEquals(expected.get(i), toArray(moves[i]), "seed " + seed + ", insect " + i);
+            }
+        }
+    }
+
+    @Test
+    void scenarioResultsMatchReference() throws IOException {
+        for (int seed = 0; seed < SCENARIOS; seed++) {
+            TestScenario scenario = new TestScenario(seed, 60);
+            byte[] input = scenario.text().getBytes(Charset.defaultCharset());
+            ResultWriter writer = new ResultWriter(false);
+            Main.runScenario(() -> new ScenarioReader(ByteBuffer.wrap(input)), writer);
+            assertEquals(scenario.resultText(scenario.singlePass()),
+                    new String(writer.toByteArray(), Charset.defaultCharset()), "seed " + seed);
+        }
+    }
+
+    @Test
+    void schedulerRecordsEveryAppliedMoveOnce() throws IOException {
+        List<String> applied = new ArrayList<>();
+        Path file = directory.resolve("moves.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("insects.InsectMove").withoutThreshold();
+            recording.start();
+            for (int seed = 0; seed < SCENARIOS; seed++) {
+                TestScenario scenario = new TestScenario(seed, 40);
+                List<Insect> insects = new ArrayList<>();
+                Board board = scenario.load("heap", null, insects);
+                List<String> starts = new ArrayList<>();
+                for (Insect insect : insects) {
+                    starts.add(InsectColor.toString(insect.getColor()) + " " + insect.getSpecies().getName() + " "
+                            + insect.getEntityPosition().getX() + " " + insect.getEntityPosition().getY());
+                }
+                Move[] moves = new MoveScheduler(board, insects, 0).resolve();
+                for (int i = 0; i < insects.size(); i++) {
+                    applied.add(starts.get(i) + " " + moves[i].getDirection().getTextRepresentation() + " "
+                            + moves[i].getFoodCollected());
+                }
+            }
+            recording.stop();
+            recording.dump(file);
+        }
+        List<String> recorded = new ArrayList<>();
+        for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+            if (!"insects.InsectMove".equals(event.getEventType().getName())) {
+                continue;
+            }
+            recorded.add(event.getString("color") + " " + event.getString("insectType") + " " + event.getInt("x")
+                    + " " + event.getInt("y") + " " + event.getString("direction") + " "
+                    + event.getInt("foodCollected"));
+        }
+        Collections.sort(applied);
+        Collections.sort(recorded);
+        assertEquals(applied, recorded);
+    }
+
+    private static int[] toArray(Move move) {
+        return new int[] {move.getDirection() == null ? -1 : move.getDirection().ordinal(), move.getFoodCollected(),
+                move.getCellsTraversed()};
+    }
+}
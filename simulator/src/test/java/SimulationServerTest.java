@@ -0,0 +1,79 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.Charset;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * Checks the answers of the simulation service to good and bad scenarios.
+ */
+class SimulationServerTest {
+    private static final String SCENARIO = "4\n1\n1\nRed Ant 1 1\n5 1 3\n";
+    private static SimulationServer server;
+
+    @BeforeAll
+    static void start() throws IOException {
+        server = SimulationServer.start(0, 2, false);
+    }
+
+    @AfterAll
+    static void stop() {
+        server.close();
+    }
+
+    @Test
+    void validScenarioIsAnswered() throws IOException {
+        HttpURLConnection connection = post(SCENARIO);
+        assertEquals(200, connection.getResponseCode());
+        assertEquals("Red Ant East 5" + System.lineSeparator(), body(connection));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", "abc", "4\n1\n1\nRed Ant 1 1\nx 2 2\n", "99999999999\n1\n1\nRed Ant 1 1\n5 1 3\n"})
+    void unreadableInputIsBadRequest(String input) throws IOException {
+        HttpURLConnection connection = post(input);
+        assertEquals(400, connection.getResponseCode());
+        assertTrue(body(connection).startsWith("Failed to read data file"));
+    }
+
+    @Test
+    void badScenarioKeepsTheOtherResults() throws IOException {
+        HttpURLConnection connection = post(SCENARIO + "---\nzz\n");
+        assertEquals(400, connection.getResponseCode());
+        String separator = System.lineSeparator();
+        assertEquals("Red Ant East 5" + separator + "---" + separator + "Failed to read data file"
+                + separator, body(connection));
+    }
+
+    private static HttpURLConnection post(String input) throws IOException {
+        URL url = new URL("http", server.getAddress().getHostString(), server.getAddress().getPort(),
+                SimulationServer.PATH);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(input.getBytes(Charset.defaultCharset()));
+        }
+        return connection;
+    }
+
+    private static String body(HttpURLConnection connection) throws IOException {
+        InputStream stream = connection.getResponseCode() < 400 ? connection.getInputStream()
+                : connection.getErrorStream();
+        if (stream == null) {
+            return "";
+        }
+        try (InputStream in = stream) {
+            return new String(in.readAllBytes(), Charset.defaultCharset());
+        }
+    }
+}
@@ -0,0 +1,276 @@
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * A random scenario for the tests, with the boards it can be loaded into and the plain sequential loops the
+ * optimized paths are checked against. The reference loops only use the generic map fallback of {@link Insect},
+ * which walks every cell of a ray like the original simulator did.
+ */
+final class TestScenario {
+    /**
+     * The cell storages and ways of getting a board the tests run every scenario on.
+     */
+    static final String[] BACKENDS = {"heap", "offheap", "mapped", "tiled", "fork"};
+    private static final Species[] SPECIES = {Species.ANT, Species.BUTTERFLY, Species.SPIDER, Species.GRASSHOPPER};
+
+    final int size;
+    final List<int[]> insects = new ArrayList<>();
+    final List<int[]> food = new ArrayList<>();
+
+    /**
+     * Creates a random scenario. Insects are {@code {color, species, x, y}}, food points {@code {amount, x, y}};
+     * amounts may be zero or negative, which the input format allows.
+     *
+     * @param seed    The seed of the random choices.
+     * @param maxSize The largest board size.
+     */
+    TestScenario(long seed, int maxSize) {
+        Random random = new Random(seed);
+        size = 4 + random.nextInt(maxSize - 3);
+        Set<Integer> taken = new HashSet<>();
+        Set<Integer> kinds = new HashSet<>();
+        int insectCount = 1 + random.nextInt(Math.min(16, size * size / 2));
+        for (int i = 0; i < insectCount; i++) {
+            int color = random.nextInt(InsectColor.values().length);
+            int species = random.nextInt(SPECIES.length);
+            int x = 1 + random.nextInt(size);
+            int y = 1 + random.nextInt(size);
+            if (kinds.add(color * SPECIES.length + species) && taken.add(y * size + x)) {
+                insects.add(new int[] {color, species, x, y});
+            }
+        }
+        int foodCount = 1 + random.nextInt(Math.min(size * size / 3, 200));
+        for (int i = 0; i < foodCount || food.isEmpty(); i++) {
+            int x = 1 + random.nextInt(size);
+            int y = 1 + random.nextInt(size);
+            if (taken.add(y * size + x)) {
+                food.add(new int[] {random.nextInt(12) - 2, x, y});
+            }
+        }
+    }
+
+    /**
+     * Gets the scenario in the text input format.
+     *
+     * @return The scenario text.
+     */
+    String text() {
+        StringBuilder text = new StringBuilder();
+        text.append(size).append('\n').append(insects.size()).append('\n').append(food.size()).append('\n');
+        for (int[] insect : insects) {
+            text.append(InsectColor.toString(InsectColor.values()[insect[0]])).append(' ')
+                    .append(SPECIES[insect[1]].getName()).append(' ')
+                    .append(insect[3]).append(' ').append(insect[2]).append('\n');
+        }
+        for (int[] point : food) {
+            text.append(point[0]).append(' ').append(point[2]).append(' ').append(point[1]).append('\n');
+        }
+        return text.toString();
+    }
+
+    /**
+     * Creates fresh insect objects for the scenario, in input order.
+     *
+     * @return The insects.
+     */
+    List<Insect> newInsects() {
+        List<Insect> created = new ArrayList<>();
+        for (int[] insect : insects) {
+            created.add(SPECIES[insect[1]].create(new EntityPosition(insect[2], insect[3]),
+                    InsectColor.values()[insect[0]]));
+        }
+        return created;
+    }
+
+    /**
+     * Creates empty cell storage of a backend.
+     *
+     * @param backend   One of {@link #BACKENDS} other than {@code fork}.
+     * @param size      The size of the board.
+     * @param directory The directory for memory-mapped cells.
+     * @return The storage.
+     */
+    static BoardCells newCells(String backend, int size, Path directory) {
+        switch (backend) {
+            case "heap":
+                return new HeapCells(size * size);
+            case "offheap":
+                return new OffHeapCells(size * size, null);
+            case "mapped":
+                return new OffHeapCells(size * size, directory);
+            case "tiled":
+                return new TiledCells(size);
+            default:
+                throw new IllegalArgumentException(backend);
+        }
+    }
+
+    /**
+     * Loads the scenario into a board of a backend. For {@code fork} the scenario is loaded into a heap board
+     * and the returned board is a fork of it, holding its own copies of the insects.
+     *
+     * @param backend   One of {@link #BACKENDS}.
+     * @param directory The directory for memory-mapped cells.
+     * @param insects   Receives the insects on the returned board, in input order.
+     * @return The board.
+     */
+    Board load(String backend, Path directory, List<Insect> insects) {
+        Board board = new Board(size, newCells("fork".equals(backend) ? "heap" : backend, size, directory));
+        List<Insect> created = newInsects();
+        try {
+            for (Insect insect : created) {
+                board.addEntity(insect);
+            }
+            for (int[] point : food) {
+                board.addFood(point[1], point[2], point[0]);
+            }
+        } catch (TwoEntitiesOnSamePositionException e) {
+            throw new AssertionError(e);
+        }
+        if (!"fork".equals(backend)) {
+            insects.addAll(created);
+            return board;
+        }
+        Board fork = board.fork();
+        for (int[] insect : this.insects) {
+            insects.add(fork.getInsect(fork.indexOf(insect[2], insect[3])));
+        }
+        return fork;
+    }
+
+    /**
+     * Loads the scenario into a plain map keyed by {@code "x y"}, the way the original simulator held its board.
+     *
+     * @param insects Receives the insects on the map, in input order.
+     * @return The map.
+     */
+    Map<String, BoardEntity> loadMap(List<Insect> insects) {
+        Map<String, BoardEntity> map = new HashMap<>();
+        for (Insect insect : newInsects()) {
+            map.put(key(insect.getEntityPosition().getX(), insect.getEntityPosition().getY()), insect);
+            insects.add(insect);
+        }
+        for (int[] point : food) {
+            map.put(key(point[1], point[2]), new FoodPoint(new EntityPosition(point[1], point[2]), point[0]));
+        }
+        return map;
+    }
+
+    /**
+     * Runs the classic single pass with the plain sequential loop: every insect in input order picks its best
+     * direction and travels it, eating the food on its way.
+     *
+     * @return The direction and the food of every insect, as {@code {direction ordinal, food}}.
+     */
+    List<int[]> singlePass() {
+        List<Insect> insects = new ArrayList<>();
+        Map<String, BoardEntity> map = loadMap(insects);
+        List<int[]> results = new ArrayList<>();
+        for (Insect insect : insects) {
+            Direction direction = insect.getBestDirection(map, size);
+            results.add(new int[] {direction.ordinal(), insect.travelDirection(direction, map, size)});
+        }
+        return results;
+    }
+
+    /**
+     * Runs several rounds with the plain sequential loop, following the rules of {@link RoundEngine}: an insect
+     * stopped by a blocking insect dies; one reaching the border stays on the farthest free cell it passed.
+     *
+     * @param rounds The maximum number of rounds.
+     * @return The last direction, the food and the cells passed of every insect, as
+     *         {@code {direction ordinal or -1, food, cells}}.
+     */
+    List<int[]> rounds(int rounds) {
+        List<Insect> insects = new ArrayList<>();
+        Map<String, BoardEntity> map = loadMap(insects);
+        int[][] results = new int[insects.size()][];
+        boolean[] alive = new boolean[insects.size()];
+        for (int i = 0; i < insects.size(); i++) {
+            results[i] = new int[] {-1, 0, 0};
+            alive[i] = true;
+        }
+        for (int round = 0; round < rounds && map.values().stream().anyMatch(e -> e instanceof FoodPoint); round++) {
+            boolean moved = false;
+            for (int i = 0; i < insects.size(); i++) {
+                if (!alive[i]) {
+                    continue;
+                }
+                moved = true;
+                Insect insect = insects.get(i);
+                int x = insect.getEntityPosition().getX();
+                int y = insect.getEntityPosition().getY();
+                int step = insect.getSpecies().getStep();
+                Direction direction = insect.getBestDirection(map, size);
+                int dx = step * direction.getxShift();
+                int dy = step * direction.getyShift();
+                int length = 0;
+                boolean blocked = false;
+                for (int k = 1; inside(x + k * dx, y + k * dy); k++) {
+                    BoardEntity entity = map.get(key(x + k * dx, y + k * dy));
+                    if (entity instanceof Insect && (insect.getBlockers()
+                            & 1 << (Board.INSECT + ((Insect) entity).getColor().ordinal())) != 0) {
+                        blocked = true;
+                        break;
+                    }
+                    if (entity instanceof FoodPoint) {
+                        results[i][1] += ((FoodPoint) entity).value;
+                        map.remove(key(x + k * dx, y + k * dy));
+                    }
+                    length++;
+                }
+                results[i][0] = direction.ordinal();
+                results[i][2] += length;
+                map.remove(key(x, y));
+                if (blocked) {
+                    alive[i] = false;
+                    continue;
+                }
+                int k = length;
+                while (k > 0 && map.containsKey(key(x + k * dx, y + k * dy))) {
+                    k--;
+                }
+                insect.getEntityPosition().setX(x + k * dx);
+                insect.getEntityPosition().setY(y + k * dy);
+                map.put(key(x + k * dx, y + k * dy), insect);
+            }
+            if (!moved) {
+                break;
+            }
+        }
+        return List.of(results);
+    }
+
+    /**
+     * Formats results the way the simulator writes them.
+     *
+     * @param results The results of {@link #singlePass()} or {@link #rounds(int)}.
+     * @return The result text.
+     */
+    String resultText(List<int[]> results) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < insects.size(); i++) {
+            int[] insect = insects.get(i);
+            int[] result = results.get(i);
+            text.append(InsectColor.toString(InsectColor.values()[insect[0]])).append(' ')
+                    .append(SPECIES[insect[1]].getName()).append(' ')
+                    .append(Direction.ofOrdinal(result[0]).getTextRepresentation()).append(' ')
+                    .append(result[1]).append(System.lineSeparator());
+        }
+        return text.toString();
+    }
+
+    private boolean inside(int x, int y) {
+        return x > 0 && x <= size && y > 0 && y <= size;
+    }
+
+    private static String key(int x, int y) {
+        return x + " " + y;
+    }
+}